@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openntf.xsp.nosql.communication.driver.proton.impl.ProtonDocumentCollectionManager;
+import org.openntf.xsp.nosql.communication.driver.proton.impl.ProtonDriverOptions;
+
+/**
+ * Base for benchmarks that run a {@link ProtonDocumentCollectionManager}
+ * against a {@link FakeDatabase}.
+ *
+ * <p>The run configuration is fixed here rather than left to the command line,
+ * so that results from different commits are comparable.</p>
+ *
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public abstract class AbstractManagerBenchmark {
+	/** The simulated latency of each Proton call in microseconds */
+	@Param({ "0", "500" })
+	public long latencyMicros;
+
+	protected FakeDatabase database;
+	protected ProtonDocumentCollectionManager manager;
+
+	/**
+	 * Creates the database and manager. Subclasses call this from their own
+	 * trial-level setup before seeding data.
+	 */
+	protected void setUpManager() {
+		database = new FakeDatabase(latencyMicros);
+		manager = BenchmarkFixtures.newManager(database, createOptions());
+	}
+
+	/**
+	 * @return the driver options for the benchmark, by default the driver's
+	 *         defaults
+	 */
+	protected ProtonDriverOptions createOptions() {
+		return new ProtonDriverOptions();
+	}
+
+	@TearDown
+	public void tearDownManager() {
+		if(manager != null) {
+			manager.close();
+		}
+		if(database != null) {
+			database.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jnosql.mapping.reflection.ClassMapping;
+import org.openntf.xsp.nosql.communication.driver.proton.impl.ProtonDocumentCollectionManager;
+import org.openntf.xsp.nosql.communication.driver.proton.impl.ProtonDriverOptions;
+
+import jakarta.nosql.document.Document;
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Builds the managers and deterministic entities shared by the benchmarks.
+ *
+ * @since 1.0.0
+ */
+final class BenchmarkFixtures {
+	public static final String ENTITY_NAME = "BenchmarkEntity"; //$NON-NLS-1$
+	public static final String OTHER_ENTITY_NAME = "OtherEntity"; //$NON-NLS-1$
+	/** A numeric item present on every generated entity, holding its index */
+	public static final String INDEX_ITEM = "Index"; //$NON-NLS-1$
+
+	private static final LocalDate BASE_DATE = LocalDate.of(2022, 1, 1);
+	private static final ZonedDateTime BASE_DATE_TIME = ZonedDateTime.of(2022, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * Creates a manager for the fake database. Entities are handled without
+	 * class mappings, so no CDI container is needed, but reads then only
+	 * return the items named in a query's projection.
+	 *
+	 * @see #itemNames(int)
+	 */
+	public static ProtonDocumentCollectionManager newManager(FakeDatabase database, ProtonDriverOptions options) {
+		return new ProtonDocumentCollectionManager(database.getSupplier(), () -> null, options) {
+			@Override
+			protected ClassMapping getClassMapping(String entityName) {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Creates an entity whose content depends only on the parameters, so that
+	 * runs on different commits store identical data.
+	 *
+	 * @param entityName the entity type
+	 * @param index the index of the entity, stored in {@link #INDEX_ITEM}
+	 * @param itemCount the number of items besides {@link #INDEX_ITEM}, cycling
+	 *        through text, number, date and date/time values
+	 * @param valuesPerItem the number of values in each item, where values
+	 *        above {@code 1} produce multi-value items
+	 * @return a new entity
+	 */
+	public static DocumentEntity newEntity(String entityName, int index, int itemCount, int valuesPerItem) {
+		DocumentEntity entity = DocumentEntity.of(entityName);
+		entity.add(Document.of(INDEX_ITEM, index));
+		for(int i = 0; i < itemCount; i++) {
+			String name = "Item" + i; //$NON-NLS-1$
+			if(valuesPerItem == 1) {
+				entity.add(Document.of(name, value(i, index)));
+			} else {
+				List<Object> values = new ArrayList<>(valuesPerItem);
+				for(int j = 0; j < valuesPerItem; j++) {
+					values.add(value(i, index + j));
+				}
+				entity.add(Document.of(name, values));
+			}
+		}
+		return entity;
+	}
+
+	/**
+	 * @param itemCount the number of items passed to {@link #newEntity}
+	 * @return the names of all items of an entity with that many items, for
+	 *         use as a query projection
+	 */
+	public static String[] itemNames(int itemCount) {
+		String[] result = new String[itemCount + 1];
+		result[0] = INDEX_ITEM;
+		for(int i = 0; i < itemCount; i++) {
+			result[i + 1] = "Item" + i; //$NON-NLS-1$
+		}
+		return result;
+	}
+
+	public static List<DocumentEntity> newEntities(String entityName, int count, int itemCount, int valuesPerItem) {
+		List<DocumentEntity> result = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			result.add(newEntity(entityName, i, itemCount, valuesPerItem));
+		}
+		return result;
+	}
+
+	private static Object value(int item, int seed) {
+		switch(item % 4) {
+		case 0:
+			return "Value " + item + "-" + seed; //$NON-NLS-1$ //$NON-NLS-2$
+		case 1:
+			return seed * 1.5;
+		case 2:
+			return BASE_DATE.plusDays(seed);
+		default:
+			return BASE_DATE_TIME.plusMinutes(seed);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openntf.xsp.nosql.communication.driver.proton.impl.ProtonEntityConverter;
+
+import com.hcl.domino.db.model.Document;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Measures {@link ProtonEntityConverter} on its own for wide and multi-value
+ * entities, in both directions.
+ *
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ConversionBenchmark {
+	@Param({ "10", "100", "500" })
+	public int itemCount;
+
+	@Param({ "1", "20" })
+	public int valuesPerItem;
+
+	private ProtonEntityConverter converter;
+	private DocumentEntity entity;
+	private Document document;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		converter = new ProtonEntityConverter();
+		entity = BenchmarkFixtures.newEntity(BenchmarkFixtures.ENTITY_NAME, 0, itemCount, valuesPerItem);
+		try(FakeDatabase database = new FakeDatabase()) {
+			String unid = database.put(converter.convertNoSQLEntity(entity, true, null).getItems());
+			document = database.get(unid);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		converter.close();
+	}
+
+	@Benchmark
+	public Document toDocument() {
+		return converter.convertNoSQLEntity(entity, true, null);
+	}
+
+	@Benchmark
+	public List<jakarta.nosql.document.Document> fromDocument() {
+		// Materialize the lazily-converted items
+		return converter.convertDocument(BenchmarkFixtures.ENTITY_NAME, document, null).getDocuments();
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openntf.xsp.nosql.communication.driver.proton.impl.ProtonDriverOptions;
+
+/**
+ * Measures counting the documents of an entity type, with the count cache
+ * disabled so that every invocation pages through the documents.
+ *
+ * @since 1.0.0
+ */
+public class CountBenchmark extends AbstractManagerBenchmark {
+	@Param({ "100", "10000" })
+	public int documentCount;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		setUpManager();
+		manager.insert(BenchmarkFixtures.newEntities(BenchmarkFixtures.ENTITY_NAME, documentCount, 5, 1));
+		manager.insert(BenchmarkFixtures.newEntities(BenchmarkFixtures.OTHER_ENTITY_NAME, documentCount, 5, 1));
+	}
+
+	@Override
+	protected ProtonDriverOptions createOptions() {
+		ProtonDriverOptions options = super.createOptions();
+		options.setCountCacheTtl(0);
+		return options;
+	}
+
+	@Benchmark
+	public long count() {
+		return manager.count(BenchmarkFixtures.ENTITY_NAME);
+	}
+}
@@ -0,0 +1,542 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+
+import com.hcl.domino.db.model.BulkOperationException;
+import com.hcl.domino.db.model.Database;
+import com.hcl.domino.db.model.Document;
+import com.hcl.domino.db.model.Item;
+import com.hcl.domino.db.model.OptionalArg;
+import com.hcl.domino.db.model.OptionalCount;
+import com.hcl.domino.db.model.OptionalItemNames;
+import com.hcl.domino.db.model.OptionalStart;
+
+/**
+ * In-process stand-in for a Proton {@link Database} that keeps documents in
+ * memory and evaluates the subset of DQL described in {@link FakeDql}.
+ *
+ * <p>Only the operations used by the driver are implemented; others throw
+ * {@link UnsupportedOperationException}. Each call completes after the
+ * configured simulated latency, measured from the time of the call, so that
+ * the driver's overlapping of requests is reflected in the results.</p>
+ *
+ * <p>As with Proton, a read returns only the items it names, so a read that
+ * names no items returns documents with only their UNIDs.</p>
+ *
+ * <p>Proton does not offer a way to create its model objects with the values
+ * it assigns, so UNIDs, {@link OptionalArg} values and
+ * {@link BulkOperationException}s are handled reflectively. This targets the
+ * classes of domino-db 1.6.5 and may need adjusting for other versions.</p>
+ *
+ * @since 1.0.0
+ */
+public class FakeDatabase implements AutoCloseable {
+	/**
+	 * Future that rethrows {@link BulkOperationException}s directly, as the
+	 * futures returned by Proton do.
+	 */
+	private static class ProtonFuture<T> extends CompletableFuture<T> {
+		@Override
+		public T get() throws InterruptedException, ExecutionException {
+			try {
+				return super.get();
+			} catch(ExecutionException e) {
+				throw unwrap(e);
+			}
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			try {
+				return super.get(timeout, unit);
+			} catch(ExecutionException e) {
+				throw unwrap(e);
+			}
+		}
+
+		private static ExecutionException unwrap(ExecutionException e) {
+			if(e.getCause() instanceof BulkOperationException) {
+				throw (BulkOperationException)e.getCause();
+			}
+			return e;
+		}
+	}
+
+	private static final Field UNID_FIELD = findUnidField();
+	private static final Map<Class<?>, Method> ARG_ACCESSORS = new ConcurrentHashMap<>();
+
+	private final Map<String, List<Item<?>>> documents = new LinkedHashMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, FakeDql.Matcher> queries = new ConcurrentHashMap<>();
+	private final long unidPrefix = ThreadLocalRandom.current().nextLong();
+	private final AtomicLong unidCounter = new AtomicLong();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "fake-proton-latency"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Database database;
+	private volatile long latencyMicros;
+
+	public FakeDatabase() {
+		this(0);
+	}
+
+	/**
+	 * @param latencyMicros the simulated latency of each call in microseconds
+	 */
+	public FakeDatabase(long latencyMicros) {
+		setLatency(latencyMicros);
+		this.database = (Database)Proxy.newProxyInstance(Database.class.getClassLoader(), new Class<?>[] { Database.class }, new Handler());
+	}
+
+	public Database getDatabase() {
+		return database;
+	}
+
+	public DatabaseSupplier getSupplier() {
+		return () -> database;
+	}
+
+	public long getLatency() {
+		return latencyMicros;
+	}
+
+	public void setLatency(long latencyMicros) {
+		if(latencyMicros < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("latencyMicros must not be negative; got {0}", latencyMicros));
+		}
+		this.latencyMicros = latencyMicros;
+	}
+
+	/**
+	 * Stores a document directly, bypassing the simulated latency.
+	 *
+	 * @param items the items of the new document
+	 * @return the UNID of the new document
+	 */
+	public String put(List<Item<?>> items) {
+		String unid = newUnid();
+		lock.writeLock().lock();
+		try {
+			documents.put(unid, new ArrayList<>(items));
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return unid;
+	}
+
+	/**
+	 * Reads a stored document directly with all of its items, bypassing the
+	 * simulated latency.
+	 *
+	 * @param unid the UNID of the document
+	 * @return the document
+	 * @throws IllegalArgumentException if no document has the provided UNID
+	 */
+	public Document get(String unid) {
+		lock.readLock().lock();
+		try {
+			List<Item<?>> items = documents.get(unid);
+			if(items == null) {
+				throw new IllegalArgumentException(MessageFormat.format("No document exists with UNID {0}", unid));
+			}
+			return newDocument(unid, new ArrayList<>(items));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the UNIDs of all stored documents, in creation order
+	 */
+	public List<String> getUnids() {
+		lock.readLock().lock();
+		try {
+			return new ArrayList<>(documents.keySet());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			documents.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	// *******************************************************************************
+	// * Database operations
+	// *******************************************************************************
+
+	private class Handler implements InvocationHandler {
+		@SuppressWarnings("unchecked")
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if(method.getDeclaringClass() == Object.class) {
+				switch(method.getName()) {
+				case "equals": //$NON-NLS-1$
+					return proxy == args[0];
+				case "hashCode": //$NON-NLS-1$
+					return System.identityHashCode(proxy);
+				default:
+					return "FakeDatabase"; //$NON-NLS-1$
+				}
+			}
+
+			OptionalArg[] options = args != null && args.length > 0 && args[args.length - 1] instanceof OptionalArg[]
+				? (OptionalArg[])args[args.length - 1]
+				: new OptionalArg[0];
+			Object result;
+			try {
+				switch(method.getName()) {
+				case "readDocuments": //$NON-NLS-1$
+					result = readDocuments((String)args[0], options);
+					break;
+				case "readDocumentByUnid": //$NON-NLS-1$
+					result = readDocumentByUnid((String)args[0], (List<String>)args[1]);
+					break;
+				case "createDocument": //$NON-NLS-1$
+					result = createDocument((Document)args[0]);
+					break;
+				case "createDocuments": //$NON-NLS-1$
+					List<Document> created = new ArrayList<>();
+					for(Document doc : (Collection<Document>)args[0]) {
+						created.add(createDocument(doc));
+					}
+					result = created;
+					break;
+				case "replaceItemsByUnid": //$NON-NLS-1$
+					result = replaceItemsByUnid((String)args[0], (Document)args[1]);
+					break;
+				case "deleteDocumentsByUnid": //$NON-NLS-1$
+					result = deleteDocuments(unid -> ((Collection<String>)args[0]).contains(unid));
+					break;
+				case "deleteDocuments": //$NON-NLS-1$
+					FakeDql.Matcher matcher = compile((String)args[0]);
+					result = deleteDocuments(unid -> matches(matcher, unid));
+					break;
+				default:
+					throw new UnsupportedOperationException(MessageFormat.format("FakeDatabase does not implement {0}", method.getName()));
+				}
+			} catch(UnsupportedOperationException e) {
+				throw e;
+			} catch(RuntimeException e) {
+				return complete(method, null, e);
+			}
+			return complete(method, result, null);
+		}
+	}
+
+	private List<Document> readDocuments(String dql, OptionalArg[] options) {
+		FakeDql.Matcher matcher = compile(dql);
+		Set<String> itemNames = null;
+		int start = 0;
+		int count = Integer.MAX_VALUE;
+		for(OptionalArg option : options) {
+			if(option instanceof OptionalItemNames) {
+				itemNames = normalizeNames((Collection<?>)argValue(option, type -> Collection.class.isAssignableFrom(type)));
+			} else if(option instanceof OptionalStart) {
+				start = ((Number)argValue(option, FakeDatabase::isInt)).intValue();
+			} else if(option instanceof OptionalCount) {
+				count = ((Number)argValue(option, FakeDatabase::isInt)).intValue();
+			}
+		}
+
+		List<Document> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			int matched = 0;
+			for(Map.Entry<String, List<Item<?>>> entry : documents.entrySet()) {
+				if(result.size() >= count) {
+					break;
+				}
+				if(matcher.test(entry.getKey(), entry.getValue()) && matched++ >= start) {
+					result.add(newDocument(entry.getKey(), project(entry.getValue(), itemNames)));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	private Document readDocumentByUnid(String unid, List<String> itemNames) {
+		lock.readLock().lock();
+		try {
+			List<Item<?>> items = documents.get(unid);
+			if(items == null) {
+				throw notFound(unid);
+			}
+			return newDocument(unid, project(items, normalizeNames(itemNames)));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private Document createDocument(Document doc) {
+		String unid = put(doc.getItems());
+		return newDocument(unid, doc.getItems());
+	}
+
+	private Document replaceItemsByUnid(String unid, Document doc) {
+		lock.writeLock().lock();
+		try {
+			List<Item<?>> items = documents.get(unid);
+			if(items == null) {
+				throw notFound(unid);
+			}
+			for(Item<?> replacement : doc.getItems()) {
+				items.removeIf(item -> replacement.getName().equalsIgnoreCase(item.getName()));
+				items.add(replacement);
+			}
+			return newDocument(unid, new ArrayList<>(items));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private List<Document> deleteDocuments(Predicate<String> filter) {
+		List<Document> result = new ArrayList<>();
+		lock.writeLock().lock();
+		try {
+			Iterator<Map.Entry<String, List<Item<?>>>> iter = documents.entrySet().iterator();
+			while(iter.hasNext()) {
+				Map.Entry<String, List<Item<?>>> entry = iter.next();
+				if(filter.test(entry.getKey())) {
+					result.add(newDocument(entry.getKey(), Collections.emptyList()));
+					iter.remove();
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private FakeDql.Matcher compile(String dql) {
+		return queries.computeIfAbsent(dql, FakeDql::compile);
+	}
+
+	/**
+	 * Must be called while holding the read or write lock.
+	 */
+	private boolean matches(FakeDql.Matcher matcher, String unid) {
+		return matcher.test(unid, documents.get(unid));
+	}
+
+	/**
+	 * Completes a future with the result adapted to the declared type of the
+	 * operation, after the simulated latency.
+	 */
+	private Object complete(Method method, Object result, RuntimeException failure) {
+		Object value = adapt(method, result);
+		ProtonFuture<Object> future = new ProtonFuture<>();
+		Runnable completion = () -> {
+			if(failure != null) {
+				future.completeExceptionally(failure);
+			} else {
+				future.complete(value);
+			}
+		};
+		long latency = latencyMicros;
+		if(latency == 0) {
+			completion.run();
+		} else {
+			scheduler.schedule(completion, latency, TimeUnit.MICROSECONDS);
+		}
+		return future;
+	}
+
+	private static Object adapt(Method method, Object result) {
+		Type returnType = method.getGenericReturnType();
+		Type valueType = returnType instanceof ParameterizedType ? ((ParameterizedType)returnType).getActualTypeArguments()[0] : Object.class;
+		Class<?> valueClass = valueType instanceof ParameterizedType
+			? (Class<?>)((ParameterizedType)valueType).getRawType()
+			: valueType instanceof Class ? (Class<?>)valueType : Object.class;
+		if(result == null || valueClass.isInstance(result)) {
+			return result;
+		} else if(List.class.isAssignableFrom(valueClass) && result instanceof Document) {
+			return Collections.singletonList(result);
+		} else if(valueClass == Document.class && result instanceof List) {
+			List<?> list = (List<?>)result;
+			return list.isEmpty() ? null : list.get(0);
+		}
+		return null;
+	}
+
+	private static List<Item<?>> project(List<Item<?>> items, Set<String> itemNames) {
+		List<Item<?>> result = new ArrayList<>(items.size());
+		for(Item<?> item : items) {
+			if(itemNames != null && itemNames.contains(item.getName().toLowerCase(Locale.ENGLISH))) {
+				result.add(item);
+			}
+		}
+		return result;
+	}
+
+	private static Set<String> normalizeNames(Collection<?> itemNames) {
+		if(itemNames == null) {
+			return null;
+		}
+		Set<String> result = new HashSet<>();
+		for(Object name : itemNames) {
+			result.add(String.valueOf(name).toLowerCase(Locale.ENGLISH));
+		}
+		return result;
+	}
+
+	private String newUnid() {
+		return String.format("%016X%016X", unidPrefix, unidCounter.incrementAndGet()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Creates a document with the provided UNID. Proton only assigns UNIDs to
+	 * the documents it returns, so the field is set reflectively.
+	 */
+	private static Document newDocument(String unid, List<Item<?>> items) {
+		Document doc = new Document(items);
+		try {
+			UNID_FIELD.set(doc, unid);
+		} catch(IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return doc;
+	}
+
+	private static Field findUnidField() {
+		for(Class<?> c = Document.class; c != null; c = c.getSuperclass()) {
+			for(Field field : c.getDeclaredFields()) {
+				if("unid".equalsIgnoreCase(field.getName()) && field.getType() == String.class) { //$NON-NLS-1$
+					field.setAccessible(true);
+					return field;
+				}
+			}
+		}
+		throw new IllegalStateException(MessageFormat.format("Unable to locate the UNID field of {0}", Document.class.getName()));
+	}
+
+	/**
+	 * Reads the value of an optional argument through its single accessor of
+	 * the matching type.
+	 */
+	private static Object argValue(OptionalArg arg, Predicate<Class<?>> type) {
+		Method accessor = ARG_ACCESSORS.computeIfAbsent(arg.getClass(), c -> {
+			for(Method method : c.getMethods()) {
+				if(method.getParameterCount() == 0 && method.getDeclaringClass() != Object.class && type.test(method.getReturnType())) {
+					return method;
+				}
+			}
+			throw new UnsupportedOperationException(MessageFormat.format("Unable to read the value of {0}", c.getName()));
+		});
+		try {
+			return accessor.invoke(arg);
+		} catch(ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean isInt(Class<?> type) {
+		return type == int.class || type == Integer.class;
+	}
+
+	/**
+	 * Creates the exception Proton reports for a missing document, falling back
+	 * to an {@link IllegalStateException} when no compatible constructor exists.
+	 */
+	private static RuntimeException notFound(String unid) {
+		String message = MessageFormat.format("Document not found: {0}", unid);
+		for(Constructor<?> constructor : BulkOperationException.class.getConstructors()) {
+			Class<?>[] types = constructor.getParameterTypes();
+			Object[] params = new Object[types.length];
+			for(int i = 0; i < types.length; i++) {
+				if(types[i] == String.class) {
+					params[i] = message;
+				} else if(types[i] == List.class || types[i] == Collection.class) {
+					params[i] = Collections.emptyList();
+				} else if(types[i] == Map.class) {
+					params[i] = Collections.emptyMap();
+				} else if(types[i] == int.class) {
+					params[i] = 0;
+				} else if(types[i] == long.class) {
+					params[i] = 0L;
+				} else if(types[i] == boolean.class) {
+					params[i] = false;
+				}
+			}
+			try {
+				return (RuntimeException)constructor.newInstance(params);
+			} catch(ReflectiveOperationException | RuntimeException e) {
+				// Try the next constructor
+			}
+		}
+		return new IllegalStateException(message);
+	}
+}
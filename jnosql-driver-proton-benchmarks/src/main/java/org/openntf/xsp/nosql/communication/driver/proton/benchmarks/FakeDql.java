@@ -0,0 +1,364 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+import com.hcl.domino.db.model.Item;
+
+/**
+ * Evaluates the subset of DQL that the driver generates against in-memory
+ * documents.
+ *
+ * <p>Supported are comparisons ({@code =}, {@code <>}, {@code !=}, {@code <},
+ * {@code <=}, {@code >}, {@code >=}), {@code in (...)}, {@code and},
+ * {@code or}, {@code not} and parentheses, with string, numeric and
+ * {@code @dt('...')} literals. Item names are case-insensitive, and
+ * {@code @DocumentUniqueID} refers to the document's UNID. As in Domino, a
+ * multi-value item matches when any of its values does.</p>
+ *
+ * @since 1.0.0
+ */
+class FakeDql {
+	/** A compiled query, tested against a document's UNID and items */
+	interface Matcher extends BiPredicate<String, List<Item<?>>> {
+	}
+
+	private static final String UNID_ITEM = "@DocumentUniqueID"; //$NON-NLS-1$
+
+	private enum TokenType {
+		NAME, STRING, NUMBER, OPERATOR, OPEN, CLOSE, COMMA, END
+	}
+
+	private static class Token {
+		private final TokenType type;
+		private final String text;
+
+		Token(TokenType type, String text) {
+			this.type = type;
+			this.text = text;
+		}
+
+		boolean isKeyword(String keyword) {
+			return type == TokenType.NAME && keyword.equalsIgnoreCase(text);
+		}
+	}
+
+	private final String dql;
+	private final List<Token> tokens;
+	private int pos;
+
+	private FakeDql(String dql) {
+		this.dql = dql;
+		this.tokens = tokenize(dql);
+	}
+
+	/**
+	 * Compiles the provided DQL query.
+	 *
+	 * @param dql the query to compile
+	 * @return a matcher for the query
+	 * @throws UnsupportedOperationException if the query uses syntax outside
+	 *         the supported subset
+	 */
+	public static Matcher compile(String dql) {
+		FakeDql parser = new FakeDql(dql);
+		Matcher result = parser.parseOr();
+		parser.expect(TokenType.END);
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Parsing
+	// *******************************************************************************
+
+	private Matcher parseOr() {
+		Matcher left = parseAnd();
+		while(peek().isKeyword("or")) { //$NON-NLS-1$
+			pos++;
+			Matcher a = left;
+			Matcher b = parseAnd();
+			left = (unid, items) -> a.test(unid, items) || b.test(unid, items);
+		}
+		return left;
+	}
+
+	private Matcher parseAnd() {
+		Matcher left = parseUnary();
+		while(peek().isKeyword("and")) { //$NON-NLS-1$
+			pos++;
+			Matcher a = left;
+			Matcher b = parseUnary();
+			left = (unid, items) -> a.test(unid, items) && b.test(unid, items);
+		}
+		return left;
+	}
+
+	private Matcher parseUnary() {
+		if(peek().isKeyword("not")) { //$NON-NLS-1$
+			pos++;
+			Matcher inner = parseUnary();
+			return (unid, items) -> !inner.test(unid, items);
+		} else if(peek().type == TokenType.OPEN) {
+			pos++;
+			Matcher inner = parseOr();
+			expect(TokenType.CLOSE);
+			return inner;
+		}
+		return parseTerm();
+	}
+
+	private Matcher parseTerm() {
+		String name = expect(TokenType.NAME).text;
+		if(peek().isKeyword("in")) { //$NON-NLS-1$
+			pos++;
+			expect(TokenType.OPEN);
+			List<Object> literals = new ArrayList<>();
+			literals.add(parseLiteral());
+			while(peek().type == TokenType.COMMA) {
+				pos++;
+				literals.add(parseLiteral());
+			}
+			expect(TokenType.CLOSE);
+			return (unid, items) -> {
+				for(Object value : values(name, unid, items)) {
+					for(Object literal : literals) {
+						Integer result = compare(value, literal);
+						if(result != null && result == 0) {
+							return true;
+						}
+					}
+				}
+				return false;
+			};
+		}
+
+		String op = expect(TokenType.OPERATOR).text;
+		Object literal = parseLiteral();
+		return (unid, items) -> {
+			for(Object value : values(name, unid, items)) {
+				Integer result = compare(value, literal);
+				if(result != null && matches(op, result)) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	private Object parseLiteral() {
+		Token token = next();
+		switch(token.type) {
+		case STRING:
+			return token.text;
+		case NUMBER:
+			return Double.valueOf(token.text);
+		case NAME:
+			if("@dt".equalsIgnoreCase(token.text)) { //$NON-NLS-1$
+				expect(TokenType.OPEN);
+				String value = expect(TokenType.STRING).text;
+				expect(TokenType.CLOSE);
+				return parseDate(value);
+			}
+			// Fall through
+		default:
+			throw unsupported(MessageFormat.format("expected a literal but found \"{0}\"", token.text));
+		}
+	}
+
+	private Token peek() {
+		return tokens.get(pos);
+	}
+
+	private Token next() {
+		Token token = tokens.get(pos);
+		if(token.type != TokenType.END) {
+			pos++;
+		}
+		return token;
+	}
+
+	private Token expect(TokenType type) {
+		Token token = next();
+		if(token.type != type) {
+			throw unsupported(MessageFormat.format("expected {0} but found \"{1}\"", type, token.text));
+		}
+		return token;
+	}
+
+	private UnsupportedOperationException unsupported(String detail) {
+		return new UnsupportedOperationException(MessageFormat.format("Unsupported DQL \"{0}\": {1}", dql, detail));
+	}
+
+	private List<Token> tokenize(String dql) {
+		List<Token> result = new ArrayList<>();
+		int i = 0;
+		while(i < dql.length()) {
+			char c = dql.charAt(i);
+			if(Character.isWhitespace(c)) {
+				i++;
+			} else if(c == '\'') {
+				StringBuilder value = new StringBuilder();
+				i++;
+				while(true) {
+					if(i >= dql.length()) {
+						throw unsupported("unterminated string");
+					}
+					char s = dql.charAt(i++);
+					if(s == '\'') {
+						if(i < dql.length() && dql.charAt(i) == '\'') {
+							value.append('\'');
+							i++;
+						} else {
+							break;
+						}
+					} else {
+						value.append(s);
+					}
+				}
+				result.add(new Token(TokenType.STRING, value.toString()));
+			} else if(c == '(') {
+				result.add(new Token(TokenType.OPEN, "(")); //$NON-NLS-1$
+				i++;
+			} else if(c == ')') {
+				result.add(new Token(TokenType.CLOSE, ")")); //$NON-NLS-1$
+				i++;
+			} else if(c == ',') {
+				result.add(new Token(TokenType.COMMA, ",")); //$NON-NLS-1$
+				i++;
+			} else if(c == '=' || c == '<' || c == '>' || c == '!') {
+				int start = i++;
+				if(i < dql.length() && (dql.charAt(i) == '=' || (c == '<' && dql.charAt(i) == '>'))) {
+					i++;
+				}
+				String op = dql.substring(start, i);
+				if("!".equals(op)) { //$NON-NLS-1$
+					throw unsupported("unexpected \"!\"");
+				}
+				result.add(new Token(TokenType.OPERATOR, op));
+			} else if(Character.isDigit(c) || (c == '-' && i + 1 < dql.length() && Character.isDigit(dql.charAt(i + 1)))) {
+				int start = i++;
+				while(i < dql.length() && (Character.isDigit(dql.charAt(i)) || dql.charAt(i) == '.' || dql.charAt(i) == 'E' || dql.charAt(i) == 'e')) {
+					i++;
+				}
+				result.add(new Token(TokenType.NUMBER, dql.substring(start, i)));
+			} else if(Character.isLetter(c) || c == '@' || c == '$' || c == '_') {
+				int start = i++;
+				while(i < dql.length() && (Character.isLetterOrDigit(dql.charAt(i)) || dql.charAt(i) == '_' || dql.charAt(i) == '$' || dql.charAt(i) == '.')) {
+					i++;
+				}
+				result.add(new Token(TokenType.NAME, dql.substring(start, i)));
+			} else {
+				throw unsupported(MessageFormat.format("unexpected character \"{0}\"", c));
+			}
+		}
+		result.add(new Token(TokenType.END, "<end>")); //$NON-NLS-1$
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Evaluation
+	// *******************************************************************************
+
+	private static List<?> values(String name, String unid, List<Item<?>> items) {
+		if(UNID_ITEM.equalsIgnoreCase(name)) {
+			return Collections.singletonList(unid);
+		}
+		for(Item<?> item : items) {
+			if(name.equalsIgnoreCase(item.getName())) {
+				List<?> value = item.getValue();
+				return value == null ? Collections.emptyList() : value;
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	private static boolean matches(String op, int result) {
+		switch(op) {
+		case "=": //$NON-NLS-1$
+			return result == 0;
+		case "<>": //$NON-NLS-1$
+		case "!=": //$NON-NLS-1$
+			return result != 0;
+		case "<": //$NON-NLS-1$
+			return result < 0;
+		case "<=": //$NON-NLS-1$
+			return result <= 0;
+		case ">": //$NON-NLS-1$
+			return result > 0;
+		case ">=": //$NON-NLS-1$
+			return result >= 0;
+		default:
+			throw new UnsupportedOperationException(MessageFormat.format("Unsupported DQL operator \"{0}\"", op));
+		}
+	}
+
+	/**
+	 * @return the comparison of the item value to the literal, or {@code null}
+	 *         if the two are not of comparable types
+	 */
+	private static Integer compare(Object value, Object literal) {
+		if(value instanceof Number && literal instanceof Number) {
+			return Double.compare(((Number)value).doubleValue(), ((Number)literal).doubleValue());
+		} else if(value instanceof String && literal instanceof String) {
+			return ((String)value).compareToIgnoreCase((String)literal);
+		} else if(literal instanceof LocalDate) {
+			LocalDate date = toDate(value);
+			return date == null ? null : date.compareTo((LocalDate)literal);
+		} else if(literal instanceof Instant) {
+			Instant instant = toInstant(value);
+			return instant == null ? null : instant.compareTo((Instant)literal);
+		}
+		return null;
+	}
+
+	private static Object parseDate(String value) {
+		if(value.indexOf('T') < 0) {
+			return LocalDate.parse(value);
+		}
+		return ZonedDateTime.parse(value).toInstant();
+	}
+
+	private static LocalDate toDate(Object value) {
+		if(value instanceof LocalDate) {
+			return (LocalDate)value;
+		} else if(value instanceof ZonedDateTime) {
+			return ((ZonedDateTime)value).toLocalDate();
+		} else if(value instanceof OffsetDateTime) {
+			return ((OffsetDateTime)value).toLocalDate();
+		}
+		return null;
+	}
+
+	private static Instant toInstant(Object value) {
+		if(value instanceof Date) {
+			return ((Date)value).toInstant();
+		} else if(value instanceof ZonedDateTime || value instanceof OffsetDateTime || value instanceof Instant) {
+			return Instant.from((TemporalAccessor)value);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Measures reading single entities by UNID, cycling through the stored
+ * documents in a fixed order.
+ *
+ * <p>{@code getById} reads the mapped columns of the entity class, and the
+ * benchmarks run without class mappings, so this reads no items and measures
+ * the cost of the call itself rather than of a payload.</p>
+ *
+ * @since 1.0.0
+ */
+public class GetByIdBenchmark extends AbstractManagerBenchmark {
+	private static final int DOCUMENT_COUNT = 1000;
+
+	@Param({ "10", "50" })
+	public int itemCount;
+
+	private List<String> unids;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		setUpManager();
+		manager.insert(BenchmarkFixtures.newEntities(BenchmarkFixtures.ENTITY_NAME, DOCUMENT_COUNT, itemCount, 1));
+		unids = database.getUnids();
+	}
+
+	@Benchmark
+	public Optional<DocumentEntity> getById() {
+		String unid = unids.get(next);
+		next = (next + 1) % unids.size();
+		Optional<DocumentEntity> result = manager.getById(BenchmarkFixtures.ENTITY_NAME, unid);
+		// Materialize the lazily-converted items
+		result.ifPresent(DocumentEntity::getDocuments);
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Measures single and bulk insertion, including conversion of the entities.
+ *
+ * <p>Each invocation inserts copies of pre-built entities, since insertion
+ * assigns an ID to the entity it is given.</p>
+ *
+ * @since 1.0.0
+ */
+public class InsertBenchmark extends AbstractManagerBenchmark {
+	@Param({ "10", "50" })
+	public int itemCount;
+
+	@Param({ "100", "1000" })
+	public int batchSize;
+
+	private DocumentEntity single;
+	private List<DocumentEntity> batch;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		setUpManager();
+		single = BenchmarkFixtures.newEntity(BenchmarkFixtures.ENTITY_NAME, 0, itemCount, 1);
+		batch = BenchmarkFixtures.newEntities(BenchmarkFixtures.ENTITY_NAME, batchSize, itemCount, 1);
+	}
+
+	/**
+	 * Keeps the fake database from growing without bound across iterations.
+	 */
+	@Setup(Level.Iteration)
+	public void clearDatabase() {
+		database.clear();
+	}
+
+	@Benchmark
+	public DocumentEntity insertSingle() {
+		return manager.insert(single.copy());
+	}
+
+	@Benchmark
+	public Iterable<DocumentEntity> insertBulk() {
+		List<DocumentEntity> entities = new ArrayList<>(batch.size());
+		for(DocumentEntity entity : batch) {
+			entities.add(entity.copy());
+		}
+		return manager.insert(entities);
+	}
+}
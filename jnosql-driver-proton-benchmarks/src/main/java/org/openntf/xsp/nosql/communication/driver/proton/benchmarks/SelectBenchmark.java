@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.benchmarks;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jakarta.nosql.document.DocumentEntity;
+import jakarta.nosql.document.DocumentQuery;
+
+/**
+ * Measures selecting and fully consuming entities with varying result sizes
+ * and item counts. The database holds an equal number of documents of another
+ * entity type, which every query must filter out. The queries name every item
+ * in their projections, as the mapped columns of an entity class would.
+ *
+ * @since 1.0.0
+ */
+public class SelectBenchmark extends AbstractManagerBenchmark {
+	@Param({ "10", "100", "1000" })
+	public int resultSize;
+
+	@Param({ "10", "50" })
+	public int itemCount;
+
+	private DocumentQuery all;
+	private DocumentQuery filtered;
+	private DocumentQuery sorted;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		setUpManager();
+		manager.insert(BenchmarkFixtures.newEntities(BenchmarkFixtures.ENTITY_NAME, resultSize, itemCount, 1));
+		manager.insert(BenchmarkFixtures.newEntities(BenchmarkFixtures.OTHER_ENTITY_NAME, resultSize, itemCount, 1));
+
+		String[] itemNames = BenchmarkFixtures.itemNames(itemCount);
+		all = DocumentQuery.select(itemNames).from(BenchmarkFixtures.ENTITY_NAME).build();
+		filtered = DocumentQuery.select(itemNames).from(BenchmarkFixtures.ENTITY_NAME)
+			.where(BenchmarkFixtures.INDEX_ITEM).gte(resultSize / 2)
+			.build();
+		sorted = DocumentQuery.select(itemNames).from(BenchmarkFixtures.ENTITY_NAME)
+			.orderBy(BenchmarkFixtures.INDEX_ITEM).desc()
+			.build();
+	}
+
+	@Benchmark
+	public void selectAll(Blackhole blackhole) {
+		consume(manager.select(all).collect(Collectors.toList()), blackhole);
+	}
+
+	@Benchmark
+	public void selectFiltered(Blackhole blackhole) {
+		consume(manager.select(filtered).collect(Collectors.toList()), blackhole);
+	}
+
+	@Benchmark
+	public void selectSorted(Blackhole blackhole) {
+		consume(manager.select(sorted).collect(Collectors.toList()), blackhole);
+	}
+
+	private static void consume(List<DocumentEntity> entities, Blackhole blackhole) {
+		for(DocumentEntity entity : entities) {
+			// Materialize the lazily-converted items
+			blackhole.consume(entity.getDocuments());
+		}
+	}
+}
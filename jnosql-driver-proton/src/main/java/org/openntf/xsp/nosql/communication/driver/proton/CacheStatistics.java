@@ -0,0 +1,74 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+
+/**
+ * Immutable snapshot of the statistics of one of the driver's caches.
+ *
+ * @since 1.0.0
+ */
+public class CacheStatistics {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long size;
+
+	public CacheStatistics(long hitCount, long missCount, long evictionCount, long size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of entries removed due to size or age limits, not
+	 *         counting explicit invalidation
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of entries in the cache at the time of the snapshot
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the ratio of hits to total lookups, or {@code 0} when there
+	 *         have been no lookups
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (double)hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format("CacheStatistics [hitCount={0}, missCount={1}, evictionCount={2}, size={3}]", hitCount, missCount, evictionCount, size); //$NON-NLS-1$
+	}
+}
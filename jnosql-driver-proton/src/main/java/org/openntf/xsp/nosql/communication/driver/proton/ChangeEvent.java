@@ -0,0 +1,67 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Describes a single document change observed by a {@link ChangeFeed}.
+ *
+ * @since 1.0.0
+ */
+public class ChangeEvent {
+	public enum Type {
+		/** The document was created or modified */
+		UPSERT,
+		/** The document was deleted or is no longer readable */
+		DELETE
+	}
+
+	private final Type type;
+	private final String entityName;
+	private final String unid;
+	private final DocumentEntity entity;
+
+	public ChangeEvent(Type type, String entityName, String unid, DocumentEntity entity) {
+		this.type = Objects.requireNonNull(type, "type cannot be null");
+		this.entityName = entityName;
+		this.unid = Objects.requireNonNull(unid, "unid cannot be null");
+		this.entity = entity;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	public String getUnid() {
+		return unid;
+	}
+
+	/**
+	 * @return the current state of the document for an {@link Type#UPSERT UPSERT}
+	 *         event, or an empty value for a {@link Type#DELETE DELETE} event
+	 */
+	public Optional<DocumentEntity> getEntity() {
+		return Optional.ofNullable(entity);
+	}
+}
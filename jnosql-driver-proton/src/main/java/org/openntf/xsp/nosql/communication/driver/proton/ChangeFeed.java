@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * An incremental feed of the changes to the documents of one entity type,
+ * delivered to a {@link ChangeFeedListener}.
+ *
+ * <p>Modifications are found by periodically querying for documents modified
+ * since a high-water mark, which is kept slightly behind the start of the
+ * last successful poll to tolerate clock skew, so the same modification may
+ * be delivered more than once. Deletions are found less often by comparing
+ * the UNIDs of all documents of the type against those seen before.</p>
+ *
+ * @since 1.0.0
+ */
+public interface ChangeFeed extends AutoCloseable {
+	String getEntityName();
+
+	/**
+	 * @return the modification time from which the next poll will read, or an
+	 *         empty value if the next poll will read all documents
+	 */
+	Optional<Instant> getHighWaterMark();
+
+	/**
+	 * Reads the documents modified since the high-water mark on the calling
+	 * thread and delivers them to the listener.
+	 *
+	 * @throws IllegalStateException if this feed is closed
+	 */
+	void poll();
+
+	/**
+	 * Compares the UNIDs of all documents of the type with those seen by this
+	 * feed on the calling thread, delivering a deletion event for each that no
+	 * longer exists. For a feed that did not start with a full read, the first
+	 * scan only records the existing UNIDs.
+	 *
+	 * @throws IllegalStateException if this feed is closed
+	 */
+	void scanDeletions();
+
+	/**
+	 * @return the failure of the most recent scheduled poll or deletion scan,
+	 *         or an empty value if it succeeded
+	 */
+	Optional<Throwable> getLastFailure();
+
+	/**
+	 * Stops scheduled polling. A poll in progress is allowed to finish.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.util.List;
+
+/**
+ * Receives the changes observed by a {@link ChangeFeed}.
+ *
+ * <p>Calls for a given feed are never concurrent. They are made on the
+ * factory's change-feed thread, or on the thread calling
+ * {@link ChangeFeed#poll()} or {@link ChangeFeed#scanDeletions()}.</p>
+ *
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface ChangeFeedListener {
+	/**
+	 * @param events a non-empty batch of changes, such as one page of modified
+	 *        documents
+	 */
+	void changesReceived(List<ChangeEvent> events);
+}
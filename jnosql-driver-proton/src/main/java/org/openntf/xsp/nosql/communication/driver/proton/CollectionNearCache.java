@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Holds an in-memory copy of every document of one entity type, kept current
+ * by the {@link ChangeFeed} it is registered with.
+ *
+ * <p>Reads return copies of the cached entities, so callers may modify them
+ * freely.</p>
+ *
+ * @since 1.0.0
+ */
+public class CollectionNearCache implements ChangeFeedListener {
+	private final Map<String, DocumentEntity> entities = new ConcurrentHashMap<>();
+
+	@Override
+	public void changesReceived(List<ChangeEvent> events) {
+		for(ChangeEvent event : events) {
+			String key = toKey(event.getUnid());
+			switch(event.getType()) {
+			case UPSERT:
+				// Store a converted copy, since get() and getAll() may be called from any thread
+				event.getEntity().ifPresent(entity -> entities.put(key, entity.copy()));
+				break;
+			case DELETE:
+				entities.remove(key);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @param unid the UNID of the document to retrieve
+	 * @return a copy of the cached entity, or an empty value if it is not present
+	 */
+	public Optional<DocumentEntity> get(String unid) {
+		return Optional.ofNullable(entities.get(toKey(unid))).map(DocumentEntity::copy);
+	}
+
+	/**
+	 * @return copies of all cached entities, in no particular order
+	 */
+	public List<DocumentEntity> getAll() {
+		List<DocumentEntity> result = new ArrayList<>(entities.size());
+		entities.values().forEach(entity -> result.add(entity.copy()));
+		return result;
+	}
+
+	public int size() {
+		return entities.size();
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static String toKey(String unid) {
+		// UNIDs are case-insensitive
+		return unid.toUpperCase(Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the outcome of a bulk delete operation.
+ *
+ * @since 1.0.0
+ */
+public class DeleteReport {
+	private final List<String> deleted;
+	private final List<String> missing;
+	private final Map<String, Throwable> failures;
+
+	public DeleteReport(List<String> deleted, List<String> missing, Map<String, Throwable> failures) {
+		this.deleted = Collections.unmodifiableList(deleted);
+		this.missing = Collections.unmodifiableList(missing);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * @return the UNIDs of the documents that were deleted
+	 */
+	public List<String> getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * @return the UNIDs of the documents that did not exist or were not
+	 *         visible to the current user
+	 */
+	public List<String> getMissing() {
+		return missing;
+	}
+
+	/**
+	 * @return the UNIDs of the documents that could not be deleted, mapped to
+	 *         the cause of the last failed attempt
+	 */
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return whether every requested document was either deleted or missing
+	 */
+	public boolean isComplete() {
+		return failures.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format("DeleteReport [deleted={0}, missing={1}, failed={2}]", deleted.size(), missing.size(), failures.size()); //$NON-NLS-1$
+	}
+}
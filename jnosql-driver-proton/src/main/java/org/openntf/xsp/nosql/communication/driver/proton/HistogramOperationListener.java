@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link ProtonOperationListener} that aggregates operation durations in
+ * memory, in histograms with power-of-two microsecond buckets per operation
+ * type.
+ *
+ * @since 1.0.0
+ */
+public class HistogramOperationListener implements ProtonOperationListener {
+	/**
+	 * Immutable snapshot of the statistics for one operation type.
+	 */
+	public static class Snapshot {
+		private final long[] buckets;
+		private final long count;
+		private final long failureCount;
+		private final long totalNanos;
+		private final long protonNanos;
+		private final long conversionNanos;
+		private final long documentCount;
+		private final long maxNanos;
+
+		Snapshot(long[] buckets, long failureCount, long totalNanos, long protonNanos, long conversionNanos, long documentCount, long maxNanos) {
+			this.buckets = buckets;
+			long c = 0;
+			for(long bucket : buckets) {
+				c += bucket;
+			}
+			this.count = c;
+			this.failureCount = failureCount;
+			this.totalNanos = totalNanos;
+			this.protonNanos = protonNanos;
+			this.conversionNanos = conversionNanos;
+			this.documentCount = documentCount;
+			this.maxNanos = maxNanos;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getFailureCount() {
+			return failureCount;
+		}
+
+		public long getDocumentCount() {
+			return documentCount;
+		}
+
+		public Duration getMean() {
+			return count == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos / count);
+		}
+
+		public Duration getMax() {
+			return Duration.ofNanos(maxNanos);
+		}
+
+		/**
+		 * @return the mean time spent waiting for Proton per operation
+		 */
+		public Duration getMeanProtonTime() {
+			return count == 0 ? Duration.ZERO : Duration.ofNanos(protonNanos / count);
+		}
+
+		/**
+		 * @return the mean time spent converting entities per operation
+		 */
+		public Duration getMeanConversionTime() {
+			return count == 0 ? Duration.ZERO : Duration.ofNanos(conversionNanos / count);
+		}
+
+		/**
+		 * Estimates the duration at the given percentile, as the upper bound of
+		 * the bucket containing it.
+		 *
+		 * @param percentile the percentile to estimate, between {@code 0} and {@code 100}
+		 * @return the estimated duration
+		 */
+		public Duration getPercentile(double percentile) {
+			if(percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException(MessageFormat.format("percentile must be between 0 and 100; got {0}", percentile));
+			}
+			if(count == 0) {
+				return Duration.ZERO;
+			}
+			long target = (long)Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for(int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if(seen >= Math.max(target, 1)) {
+					return Duration.ofNanos(Math.min(upperBoundNanos(i), maxNanos));
+				}
+			}
+			return getMax();
+		}
+
+		@Override
+		public String toString() {
+			return MessageFormat.format("Snapshot [count={0}, failureCount={1}, mean={2}, p50={3}, p99={4}, max={5}]", //$NON-NLS-1$
+				count, failureCount, getMean(), getPercentile(50), getPercentile(99), getMax());
+		}
+	}
+
+	private static class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+		/** Failures, total, Proton, conversion, documents, max */
+		private final AtomicLongArray totals = new AtomicLongArray(6);
+
+		void record(ProtonOperationEvent event) {
+			long nanos = event.getDuration().toNanos();
+			buckets.incrementAndGet(bucketFor(nanos));
+			if(event.getFailure().isPresent()) {
+				totals.incrementAndGet(0);
+			}
+			totals.addAndGet(1, nanos);
+			totals.addAndGet(2, event.getProtonTime().toNanos());
+			totals.addAndGet(3, event.getConversionTime().toNanos());
+			totals.addAndGet(4, event.getDocumentCount());
+			long max;
+			do {
+				max = totals.get(5);
+			} while(nanos > max && !totals.compareAndSet(5, max, nanos));
+		}
+
+		Snapshot snapshot() {
+			long[] counts = new long[BUCKET_COUNT];
+			for(int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+			}
+			return new Snapshot(counts, totals.get(0), totals.get(1), totals.get(2), totals.get(3), totals.get(4), totals.get(5));
+		}
+	}
+
+	/** Buckets cover up to 2^40 microseconds, with the last holding anything longer */
+	private static final int BUCKET_COUNT = 42;
+
+	private volatile Map<ProtonOperationEvent.Operation, Histogram> histograms = createHistograms();
+
+	@Override
+	public void operationCompleted(ProtonOperationEvent event) {
+		histograms.get(event.getOperation()).record(event);
+	}
+
+	/**
+	 * @param operation the operation type to retrieve statistics for
+	 * @return a snapshot of the statistics recorded so far
+	 */
+	public Snapshot getSnapshot(ProtonOperationEvent.Operation operation) {
+		return histograms.get(operation).snapshot();
+	}
+
+	/**
+	 * Discards all recorded statistics.
+	 */
+	public void reset() {
+		histograms = createHistograms();
+	}
+
+	private static Map<ProtonOperationEvent.Operation, Histogram> createHistograms() {
+		Map<ProtonOperationEvent.Operation, Histogram> result = new EnumMap<>(ProtonOperationEvent.Operation.class);
+		for(ProtonOperationEvent.Operation operation : ProtonOperationEvent.Operation.values()) {
+			result.put(operation, new Histogram());
+		}
+		return result;
+	}
+
+	private static int bucketFor(long nanos) {
+		long micros = nanos / 1000;
+		if(micros <= 0) {
+			return 0;
+		}
+		// Bucket i holds durations up to 2^i microseconds
+		int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+		return Math.min(bucket, BUCKET_COUNT - 1);
+	}
+
+	private static long upperBoundNanos(int bucket) {
+		if(bucket >= BUCKET_COUNT - 1) {
+			return Long.MAX_VALUE;
+		}
+		return (1L << bucket) * 1000;
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+/**
+ * Converts values of a Java type that Proton does not support natively into
+ * one that it does, for storage in a document item.
+ *
+ * <p>Implementations can be registered via {@link java.util.ServiceLoader} or
+ * with {@code ProtonDriverOptions#addItemValueConverter}.</p>
+ *
+ * @param <T> the Java type handled by this converter
+ * @since 1.0.0
+ */
+public interface ItemValueConverter<T> {
+	/**
+	 * @return the type handled by this converter, which also applies to its
+	 *         subclasses
+	 */
+	Class<T> getType();
+
+	/**
+	 * Converts the provided value to one of {@link String}, {@link Number},
+	 * {@link java.time.LocalDate}, {@link java.time.LocalTime}, or
+	 * {@link java.time.ZonedDateTime}.
+	 *
+	 * @param value the value to convert, never {@code null}
+	 * @return the converted value
+	 */
+	Object convert(T value);
+}
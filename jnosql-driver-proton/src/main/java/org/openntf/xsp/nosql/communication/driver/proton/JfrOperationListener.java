@@ -0,0 +1,93 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * {@link ProtonOperationListener} that emits each operation as a Java Flight
+ * Recorder event named {@code org.openntf.proton.Operation}.
+ *
+ * <p>Since events are emitted after the operation completes, the duration of
+ * the operation is recorded in the {@code operationDuration} field rather than
+ * as the event's own duration.</p>
+ *
+ * <p>This listener requires a JVM that provides the {@code jdk.jfr} API.</p>
+ *
+ * @since 1.0.0
+ */
+public class JfrOperationListener implements ProtonOperationListener {
+	@Name("org.openntf.proton.Operation")
+	@Label("Proton Operation")
+	@Category({ "Jakarta NoSQL", "Proton" })
+	@Description("An operation performed by the Proton NoSQL driver")
+	@StackTrace(false)
+	static class OperationEvent extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Entity Name")
+		String entityName;
+
+		@Label("DQL")
+		String dql;
+
+		@Label("Operation Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long operationDuration;
+
+		@Label("Proton Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long protonTime;
+
+		@Label("Conversion Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long conversionTime;
+
+		@Label("Document Count")
+		long documentCount;
+
+		@Label("Item Count")
+		long itemCount;
+
+		@Label("Failure")
+		String failure;
+	}
+
+	@Override
+	public void operationCompleted(ProtonOperationEvent event) {
+		OperationEvent jfrEvent = new OperationEvent();
+		if(!jfrEvent.isEnabled()) {
+			return;
+		}
+		jfrEvent.operation = event.getOperation().name();
+		jfrEvent.entityName = event.getEntityName().orElse(null);
+		jfrEvent.dql = event.getDql().orElse(null);
+		jfrEvent.operationDuration = event.getDuration().toNanos();
+		jfrEvent.protonTime = event.getProtonTime().toNanos();
+		jfrEvent.conversionTime = event.getConversionTime().toNanos();
+		jfrEvent.documentCount = event.getDocumentCount();
+		jfrEvent.itemCount = event.getItemCount();
+		jfrEvent.failure = event.getFailure().map(Throwable::toString).orElse(null);
+		jfrEvent.commit();
+	}
+}
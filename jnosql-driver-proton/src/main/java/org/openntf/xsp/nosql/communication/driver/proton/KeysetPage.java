@@ -0,0 +1,52 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Represents a single page of results from a keyset-paginated query.
+ *
+ * @since 1.0.0
+ */
+public class KeysetPage {
+	private final List<DocumentEntity> entities;
+	private final String continuationToken;
+
+	public KeysetPage(List<DocumentEntity> entities, String continuationToken) {
+		this.entities = Collections.unmodifiableList(entities);
+		this.continuationToken = continuationToken;
+	}
+
+	/**
+	 * @return the entities in this page, in sort order
+	 */
+	public List<DocumentEntity> getEntities() {
+		return entities;
+	}
+
+	/**
+	 * @return an opaque token to pass when requesting the following page, or
+	 *         an empty value if this is the last page
+	 */
+	public Optional<String> getContinuationToken() {
+		return Optional.ofNullable(continuationToken);
+	}
+}
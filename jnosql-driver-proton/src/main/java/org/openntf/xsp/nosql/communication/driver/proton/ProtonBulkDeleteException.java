@@ -0,0 +1,44 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+
+/**
+ * Thrown when a bulk delete operation completed only partially.
+ *
+ * <p>The documents that were deleted, missing, or failed are available from
+ * {@link #getReport()}.</p>
+ *
+ * @since 1.0.0
+ */
+public class ProtonBulkDeleteException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final transient DeleteReport report;
+
+	public ProtonBulkDeleteException(DeleteReport report) {
+		super(MessageFormat.format("{0} of {1} documents failed to delete", report.getFailures().size(), report.getDeleted().size() + report.getMissing().size() + report.getFailures().size()));
+		this.report = report;
+		report.getFailures().values().stream()
+			.findFirst()
+			.ifPresent(this::initCause);
+	}
+
+	public DeleteReport getReport() {
+		return report;
+	}
+}
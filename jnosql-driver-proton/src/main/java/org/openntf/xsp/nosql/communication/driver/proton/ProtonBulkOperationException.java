@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Thrown when a multi-entity write operation completed only partially.
+ *
+ * <p>Entities that were written successfully are available from
+ * {@link #getSucceeded()}, while each failed entity is reported along with
+ * the cause of its failure in {@link #getFailures()}.</p>
+ *
+ * @since 1.0.0
+ */
+public class ProtonBulkOperationException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Represents a single entity that could not be written.
+	 */
+	public static class Failure {
+		private final DocumentEntity entity;
+		private final Throwable cause;
+
+		public Failure(DocumentEntity entity, Throwable cause) {
+			this.entity = entity;
+			this.cause = cause;
+		}
+
+		public DocumentEntity getEntity() {
+			return entity;
+		}
+
+		public Throwable getCause() {
+			return cause;
+		}
+	}
+
+	private final transient List<DocumentEntity> succeeded;
+	private final transient List<Failure> failures;
+
+	public ProtonBulkOperationException(List<DocumentEntity> succeeded, List<Failure> failures) {
+		super(MessageFormat.format("{0} of {1} entities failed to write", failures.size(), succeeded.size() + failures.size()));
+		this.succeeded = Collections.unmodifiableList(succeeded);
+		this.failures = Collections.unmodifiableList(failures);
+		if(!failures.isEmpty()) {
+			initCause(failures.get(0).getCause());
+		}
+	}
+
+	/**
+	 * @return the entities that were written successfully, in their original order
+	 */
+	public List<DocumentEntity> getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * @return the entities that failed to write along with their causes, in
+	 *         their original order
+	 */
+	public List<Failure> getFailures() {
+		return failures;
+	}
+}
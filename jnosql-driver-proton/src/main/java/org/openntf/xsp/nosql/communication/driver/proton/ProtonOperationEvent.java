@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Describes a completed operation of a Proton document collection manager,
+ * including the time spent in each phase.
+ *
+ * <p>For {@code select} operations, which return lazy streams, the event is
+ * reported once the stream is exhausted or closed, and conversion time covers
+ * the entities consumed until then.</p>
+ *
+ * @since 1.0.0
+ */
+public class ProtonOperationEvent {
+	public enum Operation {
+		INSERT, UPDATE, GET_BY_ID, GET_BY_IDS, EXISTS_BY_ID, EXISTS_BY_IDS, SELECT, SELECT_PAGE, VIEW_QUERY, COUNT, DELETE, CHANGE_FEED
+	}
+
+	private final Operation operation;
+	private final String entityName;
+	private final String dql;
+	private final long durationNanos;
+	private final long protonNanos;
+	private final long conversionNanos;
+	private final long documentCount;
+	private final long itemCount;
+	private final Throwable failure;
+
+	public ProtonOperationEvent(Operation operation, String entityName, String dql, long durationNanos, long protonNanos, long conversionNanos, long documentCount, long itemCount, Throwable failure) {
+		this.operation = operation;
+		this.entityName = entityName;
+		this.dql = dql;
+		this.durationNanos = durationNanos;
+		this.protonNanos = protonNanos;
+		this.conversionNanos = conversionNanos;
+		this.documentCount = documentCount;
+		this.itemCount = itemCount;
+		this.failure = failure;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return the name of the entity type involved, if known
+	 */
+	public Optional<String> getEntityName() {
+		return Optional.ofNullable(entityName);
+	}
+
+	/**
+	 * @return the DQL query sent to Proton, for query-based operations
+	 */
+	public Optional<String> getDql() {
+		return Optional.ofNullable(dql);
+	}
+
+	/**
+	 * @return the total time taken by the operation
+	 */
+	public Duration getDuration() {
+		return Duration.ofNanos(durationNanos);
+	}
+
+	/**
+	 * @return the time spent waiting for responses from Proton
+	 */
+	public Duration getProtonTime() {
+		return Duration.ofNanos(protonNanos);
+	}
+
+	/**
+	 * @return the time spent converting between entities and Proton documents
+	 */
+	public Duration getConversionTime() {
+		return Duration.ofNanos(conversionNanos);
+	}
+
+	/**
+	 * @return the number of documents sent to or received from Proton
+	 */
+	public long getDocumentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * @return the total number of items in the documents sent to or received
+	 *         from Proton
+	 */
+	public long getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @return the exception that caused the operation to fail, if any
+	 */
+	public Optional<Throwable> getFailure() {
+		return Optional.ofNullable(failure);
+	}
+
+	@Override
+	public String toString() {
+		return MessageFormat.format("ProtonOperationEvent [operation={0}, entityName={1}, duration={2}, protonTime={3}, conversionTime={4}, documentCount={5}, itemCount={6}, failure={7}]", //$NON-NLS-1$
+			operation, entityName, getDuration(), getProtonTime(), getConversionTime(), documentCount, itemCount, failure);
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+/**
+ * Receives a {@link ProtonOperationEvent} after each operation performed by
+ * a Proton document collection manager.
+ *
+ * <p>Listeners may be registered via the {@code operationListeners} setting or
+ * as CDI beans. They are called on the thread that completed the operation and
+ * should return quickly; exceptions thrown by listeners are ignored.</p>
+ *
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface ProtonOperationListener {
+	void operationCompleted(ProtonOperationEvent event);
+}
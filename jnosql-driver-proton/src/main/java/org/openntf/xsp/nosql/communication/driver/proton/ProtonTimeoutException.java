@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import java.text.MessageFormat;
+import java.time.Duration;
+
+/**
+ * Thrown when a Proton call does not complete before the deadline set by the
+ * timeout configured for its operation. The underlying call is cancelled
+ * before this is thrown.
+ *
+ * @since 1.0.0
+ */
+public class ProtonTimeoutException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final ProtonOperationEvent.Operation operation;
+	private final Duration timeout;
+
+	public ProtonTimeoutException(ProtonOperationEvent.Operation operation, Duration timeout) {
+		super(MessageFormat.format("Proton call for {0} did not complete within {1} ms", operation, timeout.toMillis()));
+		this.operation = operation;
+		this.timeout = timeout;
+	}
+
+	public ProtonOperationEvent.Operation getOperation() {
+		return operation;
+	}
+
+	public Duration getTimeout() {
+		return timeout;
+	}
+}
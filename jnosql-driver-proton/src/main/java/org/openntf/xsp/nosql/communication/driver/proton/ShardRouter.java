@@ -0,0 +1,38 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Chooses the shard that stores an entity when the driver is configured with
+ * more than one database via the {@code shards} setting.
+ *
+ * <p>Updates are written to the shard that holds the document, which is
+ * looked for in the other shards when it is not in the one chosen for the
+ * updated entity. Routing by values that do not change after an entity is
+ * first inserted, such as a creation year, avoids that search.</p>
+ *
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface ShardRouter {
+	/**
+	 * @param entity the entity being inserted or updated
+	 * @return the name of one of the configured shards
+	 */
+	String route(DocumentEntity entity);
+}
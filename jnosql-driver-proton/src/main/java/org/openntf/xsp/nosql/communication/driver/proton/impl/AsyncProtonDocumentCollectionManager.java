@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.openntf.xsp.nosql.communication.driver.proton.AccessTokenSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.DeleteReport;
+import org.openntf.xsp.nosql.communication.driver.proton.KeysetPage;
+import org.openntf.xsp.nosql.mapping.extension.ViewQuery;
+
+import com.hcl.domino.db.model.Database;
+
+import jakarta.nosql.document.DocumentDeleteQuery;
+import jakarta.nosql.document.DocumentEntity;
+import jakarta.nosql.document.DocumentQuery;
+import jakarta.nosql.mapping.Pagination;
+import jakarta.nosql.mapping.Sorts;
+
+/**
+ * Provides {@link CompletionStage}-based equivalents of the operations of
+ * {@link ProtonDocumentCollectionManager}.
+ *
+ * <p>The contextual {@link Database} and access token are resolved on the
+ * calling thread, while the Proton round trip and entity conversion happen
+ * on the configured {@link Executor}.</p>
+ *
+ * @since 1.0.0
+ */
+public class AsyncProtonDocumentCollectionManager implements AutoCloseable {
+
+	private final DatabaseSupplier supplier;
+	private final AccessTokenSupplier tokenSupplier;
+	private final ProtonDriverOptions options;
+	private final ProtonEntityConverter entityConverter;
+	private final CountCache countCache;
+	private final EntityCache entityCache;
+	private final DqlTemplateCache dqlCache;
+	private final WriteBehindQueue writeBehind;
+	private final ReadHedger hedger;
+	private final ViewPreloadCache viewCache;
+	private final ShardSet shards;
+	private final Executor executor;
+	private final boolean ownsConverter;
+
+	public AsyncProtonDocumentCollectionManager(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, Executor executor) {
+		this(supplier, tokenSupplier, options, new ProtonEntityConverter(options.getItemValueConverters(), options.isCompressJson()), null, null, null, null, ProtonDocumentCollectionManager.newHedger(options), ProtonDocumentCollectionManager.newViewCache(options), null, executor, true);
+	}
+
+	/**
+	 * Creates a manager that uses shared components owned by the caller, which
+	 * are therefore not closed with this manager.
+	 */
+	AsyncProtonDocumentCollectionManager(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, ProtonEntityConverter entityConverter, CountCache countCache, EntityCache entityCache, DqlTemplateCache dqlCache, WriteBehindQueue writeBehind, ReadHedger hedger, ViewPreloadCache viewCache, ShardSet shards, Executor executor) {
+		this(supplier, tokenSupplier, options, entityConverter, countCache, entityCache, dqlCache, writeBehind, hedger, viewCache, shards, executor, false);
+	}
+
+	private AsyncProtonDocumentCollectionManager(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, ProtonEntityConverter entityConverter, CountCache countCache, EntityCache entityCache, DqlTemplateCache dqlCache, WriteBehindQueue writeBehind, ReadHedger hedger, ViewPreloadCache viewCache, ShardSet shards, Executor executor, boolean ownsConverter) {
+		this.supplier = supplier;
+		this.tokenSupplier = tokenSupplier;
+		this.options = options;
+		this.entityConverter = entityConverter;
+		this.countCache = countCache;
+		this.entityCache = entityCache;
+		this.dqlCache = dqlCache;
+		this.writeBehind = writeBehind;
+		this.hedger = hedger;
+		this.viewCache = viewCache;
+		this.shards = shards;
+		this.executor = executor;
+		this.ownsConverter = ownsConverter;
+	}
+
+	public CompletionStage<DocumentEntity> insert(DocumentEntity entity) {
+		return insert(entity, false);
+	}
+
+	public CompletionStage<DocumentEntity> insert(DocumentEntity entity, boolean computeWithForm) {
+		return run(manager -> manager.insert(entity, computeWithForm));
+	}
+
+	public CompletionStage<Iterable<DocumentEntity>> insert(Iterable<DocumentEntity> entities) {
+		return run(manager -> manager.insert(entities));
+	}
+
+	public CompletionStage<DocumentEntity> update(DocumentEntity entity) {
+		return update(entity, false);
+	}
+
+	public CompletionStage<DocumentEntity> update(DocumentEntity entity, boolean computeWithForm) {
+		return run(manager -> manager.update(entity, computeWithForm));
+	}
+
+	public CompletionStage<Optional<DocumentEntity>> getById(String entityName, String id) {
+		return run(manager -> manager.getById(entityName, id));
+	}
+
+	public CompletionStage<Boolean> existsById(String unid) {
+		return run(manager -> manager.existsById(unid));
+	}
+
+	public CompletionStage<Map<String, DocumentEntity>> getByIds(String entityName, Collection<String> ids) {
+		return run(manager -> manager.getByIds(entityName, ids));
+	}
+
+	public CompletionStage<Map<String, Boolean>> existsByIds(Collection<String> ids) {
+		return run(manager -> manager.existsByIds(ids));
+	}
+
+	/**
+	 * Executes the provided query, completing with the fully-converted
+	 * result list.
+	 *
+	 * @param query the query to execute
+	 * @return a {@link CompletionStage} that completes with the matching entities
+	 */
+	public CompletionStage<List<DocumentEntity>> select(DocumentQuery query) {
+		return run(manager -> manager.select(query).collect(Collectors.toList()));
+	}
+
+	/**
+	 * @see ProtonDocumentCollectionManager#selectPage(DocumentQuery, String)
+	 */
+	public CompletionStage<KeysetPage> selectPage(DocumentQuery query, String continuationToken) {
+		return run(manager -> manager.selectPage(query, continuationToken));
+	}
+
+	/**
+	 * @see ProtonDocumentCollectionManager#viewDocumentQuery(String, String, Pagination, Sorts, int, ViewQuery, boolean)
+	 */
+	public CompletionStage<List<DocumentEntity>> viewDocumentQuery(String entityName, String viewName, Pagination pagination, Sorts sorts, ViewQuery viewQuery) {
+		return run(manager -> manager.viewDocumentQuery(entityName, viewName, pagination, sorts, -1, viewQuery, false).collect(Collectors.toList()));
+	}
+
+	public CompletionStage<Void> delete(DocumentDeleteQuery query) {
+		return run(manager -> {
+			manager.delete(query);
+			return null;
+		});
+	}
+
+	/**
+	 * @see ProtonDocumentCollectionManager#deleteWithReport(DocumentDeleteQuery)
+	 */
+	public CompletionStage<DeleteReport> deleteWithReport(DocumentDeleteQuery query) {
+		return run(manager -> manager.deleteWithReport(query));
+	}
+
+	public CompletionStage<Long> count(String documentCollection) {
+		return run(manager -> manager.count(documentCollection));
+	}
+
+	@Override
+	public void close() {
+		if(ownsConverter) {
+			entityConverter.close();
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private <T> CompletionStage<T> run(Function<ProtonDocumentCollectionManager, T> op) {
+		// Resolve contextual values now, since they may depend on the calling thread
+		ProtonDocumentCollectionManager manager;
+		try {
+			String token = tokenSupplier.get();
+			if(shards != null) {
+				manager = new ShardedProtonDocumentCollectionManager(shards.bind(), () -> token, options, entityConverter, countCache, entityCache, dqlCache, writeBehind, viewCache);
+			} else {
+				Database database = supplier.get();
+				ReadHedger boundHedger = hedger == null ? null : hedger.bind();
+				manager = new ProtonDocumentCollectionManager(() -> database, supplier, () -> token, options, entityConverter, countCache, entityCache, dqlCache, writeBehind, boundHedger, viewCache);
+			}
+		} catch(RuntimeException e) {
+			CompletableFuture<T> result = new CompletableFuture<>();
+			result.completeExceptionally(e);
+			return result;
+		}
+		return CompletableFuture.supplyAsync(() -> op.apply(manager), executor);
+	}
+}
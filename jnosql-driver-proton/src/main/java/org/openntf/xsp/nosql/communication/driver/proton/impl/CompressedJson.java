@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.nosql.TypeSupplier;
+import jakarta.nosql.Value;
+
+/**
+ * Reads and writes the compressed storage format for
+ * {@link org.openntf.xsp.nosql.mapping.extension.ItemStorage.Type#JSON JSON}
+ * items: a marker followed by the Base64-encoded GZIP of the UTF-8 JSON.
+ *
+ * <p>The marker cannot begin a JSON document, so items stored without
+ * compression remain readable.</p>
+ *
+ * @since 1.0.0
+ */
+final class CompressedJson {
+	/** Identifies a compressed item and its format version */
+	static final String MARKER = "~gzjson1:"; //$NON-NLS-1$
+
+	private CompressedJson() {
+	}
+
+	public static boolean isCompressed(Object value) {
+		return value instanceof String && ((String)value).startsWith(MARKER);
+	}
+
+	/**
+	 * Serializes the provided value directly into a compressing stream, so
+	 * that the uncompressed JSON is never held in memory as a whole.
+	 *
+	 * @param jsonb the {@link Jsonb} instance to serialize with
+	 * @param value the value to serialize
+	 * @return the compressed item text
+	 */
+	public static String write(Jsonb jsonb, Object value) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			bytes.write(MARKER.getBytes(StandardCharsets.US_ASCII));
+			try(OutputStream out = new GZIPOutputStream(Base64.getEncoder().wrap(bytes))) {
+				jsonb.toJson(value, out);
+			}
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Wraps the provided compressed item text in a {@link Value} that
+	 * decompresses it only when read. Reading it as a {@link String} yields
+	 * the JSON, while reading it as any other type binds the JSON to that type
+	 * directly from the decompressing stream.
+	 *
+	 * @param jsonb the {@link Jsonb} instance to bind with
+	 * @param stored the compressed item text
+	 * @return a lazily-decompressed value
+	 */
+	public static Value value(Jsonb jsonb, String stored) {
+		return new CompressedJsonValue(jsonb, stored);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static InputStream open(String stored) throws IOException {
+		byte[] encoded = stored.substring(MARKER.length()).getBytes(StandardCharsets.US_ASCII);
+		return new GZIPInputStream(Base64.getDecoder().wrap(new ByteArrayInputStream(encoded)));
+	}
+
+	private static class CompressedJsonValue implements Value {
+		private final Jsonb jsonb;
+		private final String stored;
+		private volatile String json;
+
+		CompressedJsonValue(Jsonb jsonb, String stored) {
+			this.jsonb = jsonb;
+			this.stored = stored;
+		}
+
+		@Override
+		public Object get() {
+			String result = json;
+			if(result == null) {
+				try(InputStream in = open(stored)) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length() * 4);
+					byte[] buffer = new byte[8192];
+					int read;
+					while((read = in.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+					result = new String(out.toByteArray(), StandardCharsets.UTF_8);
+				} catch(IOException e) {
+					throw new RuntimeException(e);
+				}
+				json = result;
+			}
+			return result;
+		}
+
+		@Override
+		public <T> T get(Class<T> type) {
+			if(type.isAssignableFrom(String.class)) {
+				return type.cast(get());
+			}
+			return bind(type);
+		}
+
+		@Override
+		public <T> T get(TypeSupplier<T> supplier) {
+			Type type = supplier.get();
+			if(String.class.equals(type) || Object.class.equals(type)) {
+				@SuppressWarnings("unchecked")
+				T result = (T)get();
+				return result;
+			}
+			return bind(type);
+		}
+
+		@Override
+		public boolean isInstanceOf(Class<?> typeClass) {
+			return typeClass.isAssignableFrom(String.class);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o) {
+				return true;
+			}
+			if(!(o instanceof Value)) {
+				return false;
+			}
+			return Objects.equals(get(), ((Value)o).get());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(get());
+		}
+
+		@Override
+		public String toString() {
+			return "CompressedJsonValue [length=" + stored.length() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		private <T> T bind(Type type) {
+			String decompressed = json;
+			return AccessController.doPrivileged((PrivilegedAction<T>)() -> {
+				if(decompressed != null) {
+					return jsonb.fromJson(decompressed, type);
+				}
+				try(InputStream in = open(stored)) {
+					return jsonb.fromJson(in, type);
+				} catch(IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived cache of collection counts, keyed by collection name and
+ * access token so that results are never shared across differing reader
+ * access.
+ *
+ * @since 1.0.0
+ */
+class CountCache {
+	private static final int MAX_ENTRIES = 1024;
+
+	private static class Key {
+		private final String collection;
+		private final String token;
+
+		Key(String collection, String token) {
+			this.collection = collection;
+			this.token = token == null ? "" : token; //$NON-NLS-1$
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(collection, token);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return collection.equals(other.collection) && token.equals(other.token);
+		}
+	}
+
+	private static class Entry {
+		private final long count;
+		private final long expires;
+
+		Entry(long count, long expires) {
+			this.count = count;
+			this.expires = expires;
+		}
+	}
+
+	private final long ttlNanos;
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	public CountCache(long ttlMillis) {
+		this.ttlNanos = ttlMillis * 1000 * 1000;
+	}
+
+	public long get(String collection, String token, LongSupplier loader) {
+		Key key = new Key(collection, token);
+		long now = System.nanoTime();
+		Entry entry = entries.get(key);
+		if(entry != null && now - entry.expires < 0) {
+			return entry.count;
+		}
+
+		long count = loader.getAsLong();
+		if(entries.size() >= MAX_ENTRIES) {
+			entries.values().removeIf(e -> now - e.expires >= 0);
+			if(entries.size() >= MAX_ENTRIES) {
+				entries.clear();
+			}
+		}
+		entries.put(key, new Entry(count, now + ttlNanos));
+		return count;
+	}
+
+	public void invalidate(String collection) {
+		entries.keySet().removeIf(key -> key.collection.equals(collection));
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+}
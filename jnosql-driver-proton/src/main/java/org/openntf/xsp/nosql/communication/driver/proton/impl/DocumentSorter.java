@@ -0,0 +1,261 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+import com.hcl.domino.db.model.Document;
+import com.hcl.domino.db.model.Item;
+
+import jakarta.nosql.Sort;
+import jakarta.nosql.SortType;
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Applies {@link Sort}s to Proton documents on the client side, since Proton
+ * DQL queries cannot be sorted by the server.
+ *
+ * @since 1.0.0
+ */
+class DocumentSorter {
+	/**
+	 * A document paired with its extracted sort keys, so that keys are only
+	 * looked up once per document.
+	 */
+	static class SortEntry {
+		private final Document document;
+		private final Object[] keys;
+
+		SortEntry(Document document, Object[] keys) {
+			this.document = document;
+			this.keys = keys;
+		}
+
+		public Document getDocument() {
+			return document;
+		}
+
+		/**
+		 * @return the extracted sort key values, in sort order; callers must not
+		 *         modify this array
+		 */
+		public Object[] getKeys() {
+			return keys;
+		}
+	}
+
+	private final List<Sort> sorts;
+	private final Comparator<SortEntry> comparator;
+
+	public DocumentSorter(List<Sort> sorts) {
+		this(sorts, false);
+	}
+
+	/**
+	 * @param sorts the sorts to apply
+	 * @param unidTieBreak whether to order documents with equal sort keys by
+	 *        UNID, producing a total order
+	 */
+	public DocumentSorter(List<Sort> sorts, boolean unidTieBreak) {
+		this.sorts = new ArrayList<>(sorts);
+		this.comparator = (a, b) -> {
+			for(int i = 0; i < this.sorts.size(); i++) {
+				int result = compareKeys(a.keys[i], b.keys[i], isDescending(i));
+				if(result != 0) {
+					return result;
+				}
+			}
+			// UNIDs are hexadecimal, so this matches the order of @DocumentUniqueID in DQL
+			return unidTieBreak ? a.document.getUnid().compareToIgnoreCase(b.document.getUnid()) : 0;
+		};
+	}
+
+	public List<Sort> getSorts() {
+		return Collections.unmodifiableList(sorts);
+	}
+
+	public boolean isDescending(int index) {
+		return sorts.get(index).getType() == SortType.DESC;
+	}
+
+	/**
+	 * @return the item names needed to evaluate the sorts
+	 */
+	public List<String> getSortItemNames() {
+		return sorts.stream()
+			.map(Sort::getName)
+			.distinct()
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return a comparator that applies the sorts to converted entities, such
+	 *         as when merging several result lists that were each sorted by
+	 *         this sorter
+	 */
+	public Comparator<DocumentEntity> toEntityComparator() {
+		return (a, b) -> {
+			for(int i = 0; i < sorts.size(); i++) {
+				String name = sorts.get(i).getName();
+				int result = compareKeys(findValue(a, name), findValue(b, name), isDescending(i));
+				if(result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * @return whether the provided document has no value for any of the sort
+	 *         items
+	 */
+	public boolean isMissingKey(Document doc) {
+		for(Sort sort : sorts) {
+			if(findValue(doc, sort.getName()) == null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public SortEntry toEntry(Document doc) {
+		Object[] keys = new Object[sorts.size()];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = findValue(doc, sorts.get(i).getName());
+		}
+		return new SortEntry(doc, keys);
+	}
+
+	/**
+	 * Sorts all of the provided documents.
+	 *
+	 * @param docs the documents to sort
+	 * @return a new sorted list of documents
+	 */
+	public List<Document> sort(List<Document> docs) {
+		List<SortEntry> entries = docs.stream()
+			.map(this::toEntry)
+			.collect(Collectors.toList());
+		entries.sort(comparator);
+		return entries.stream()
+			.map(SortEntry::getDocument)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Selects the first {@code skip + limit} documents in sort order while
+	 * holding at most that many in memory, and returns those after the first
+	 * {@code skip}.
+	 *
+	 * @param docs the documents to select from, which are consumed once
+	 * @param skip the number of leading sorted documents to discard
+	 * @param limit the maximum number of documents to return
+	 * @return the selected documents in sort order
+	 */
+	public List<Document> top(Iterator<Document> docs, int skip, int limit) {
+		int k = skip + limit;
+		if(k <= 0) {
+			return Collections.emptyList();
+		}
+		// Max-heap on the sort order, so the head is the current worst candidate
+		PriorityQueue<SortEntry> heap = new PriorityQueue<>(Math.min(k, 1024) + 1, comparator.reversed());
+		while(docs.hasNext()) {
+			SortEntry entry = toEntry(docs.next());
+			if(heap.size() < k) {
+				heap.add(entry);
+			} else if(comparator.compare(entry, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(entry);
+			}
+		}
+
+		List<SortEntry> result = new ArrayList<>(heap);
+		result.sort(comparator);
+		if(skip >= result.size()) {
+			return Collections.emptyList();
+		}
+		return result.subList(skip, result.size())
+			.stream()
+			.map(SortEntry::getDocument)
+			.collect(Collectors.toList());
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static Object findValue(Document doc, String itemName) {
+		for(Item<?> item : doc.getItems()) {
+			// Domino item names are case-insensitive
+			if(itemName.equalsIgnoreCase(item.getName())) {
+				List<?> val = item.getValue();
+				return val == null || val.isEmpty() ? null : val.get(0);
+			}
+		}
+		return null;
+	}
+
+	private static Object findValue(DocumentEntity entity, String itemName) {
+		Optional<jakarta.nosql.document.Document> doc = entity.find(itemName);
+		if(!doc.isPresent()) {
+			// Domino item names are case-insensitive
+			doc = entity.getDocumentNames().stream()
+				.filter(itemName::equalsIgnoreCase)
+				.findFirst()
+				.flatMap(entity::find);
+		}
+		Object val = doc.map(jakarta.nosql.document.Document::get).orElse(null);
+		if(val instanceof List) {
+			List<?> list = (List<?>)val;
+			return list.isEmpty() ? null : list.get(0);
+		}
+		return val;
+	}
+
+	private static int compareKeys(Object a, Object b, boolean descending) {
+		if(a == b) {
+			return 0;
+		} else if(a == null) {
+			// Sort missing values last in either direction, as Domino views do
+			return 1;
+		} else if(b == null) {
+			return -1;
+		}
+		int result = compareValues(a, b);
+		return descending ? -result : result;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compareValues(Object a, Object b) {
+		if(a instanceof Number && b instanceof Number) {
+			return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+		} else if(a instanceof String && b instanceof String) {
+			return ((String)a).compareToIgnoreCase((String)b);
+		} else if(a instanceof Comparable && a.getClass().isInstance(b)) {
+			return ((Comparable)a).compareTo(b);
+		}
+		// Values of differing types are grouped by type
+		return a.getClass().getName().compareTo(b.getClass().getName());
+	}
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.openntf.xsp.nosql.communication.driver.impl.QueryConverter;
+import org.openntf.xsp.nosql.communication.driver.proton.CacheStatistics;
+
+import jakarta.nosql.Condition;
+import jakarta.nosql.document.Document;
+import jakarta.nosql.document.DocumentCondition;
+import jakarta.nosql.document.DocumentQuery;
+
+/**
+ * Bounded cache of rendered DQL statements, keyed by the structural shape of
+ * the query condition.
+ *
+ * <p>String and number values in comparison conditions are treated as
+ * parameters: the first time a shape is seen, the condition is rendered with
+ * placeholder values to produce a template, and later queries of the same
+ * shape only bind their values into it. The shape records the type of each
+ * parameter but not its value. Other values, such as dates, are part of the
+ * shape.</p>
+ *
+ * <p>Before a value type is used as a parameter, sample values of that type
+ * are rendered by {@link QueryConverter} to confirm that the cache writes
+ * their literals the same way; types that don't match stay part of the shape.
+ * A new template is also checked against the statement rendered for the query
+ * that created it, so shapes that render in a way that can't be templated
+ * fall back to rendering every time.</p>
+ *
+ * @since 1.0.0
+ */
+class DqlTemplateCache {
+	private static class Template {
+		/** The literal text around each parameter, one more than the number of parameters */
+		private final String[] segments;
+		/** The index of the value bound to each parameter position */
+		private final int[] order;
+
+		Template(String[] segments, int[] order) {
+			this.segments = segments;
+			this.order = order;
+		}
+
+		String bind(List<String> literals) {
+			StringBuilder result = new StringBuilder(segments[0]);
+			for(int i = 0; i < order.length; i++) {
+				result.append(literals.get(order[i])).append(segments[i + 1]);
+			}
+			return result.toString();
+		}
+	}
+
+	/** Marker for shapes whose rendering could not be templated */
+	private static final Template UNCACHEABLE = new Template(new String[0], new int[0]);
+	/** Marker for value types whose literals are not written like {@link QueryConverter} */
+	private static final Function<Object, String> NOT_PARAMETER = value -> null;
+
+	/** Values rendered to confirm that the literals of each type match */
+	private static final Map<Class<?>, List<Object>> PROBES = new HashMap<>();
+	static {
+		PROBES.put(String.class, Arrays.asList("a'b\"c\\d", "", "line\nbreak\ttab\r", "{x} ?1 @dt", "\u00fc\u20ac\ud83d\ude00")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		PROBES.put(Integer.class, Arrays.asList(12, -7, 123456789, Integer.MAX_VALUE));
+		PROBES.put(Long.class, Arrays.asList(12L, -7L, 9007199254740993L));
+		PROBES.put(Short.class, Arrays.asList((short)12, (short)-7));
+		PROBES.put(Byte.class, Arrays.asList((byte)12, (byte)-7));
+		PROBES.put(Double.class, Arrays.asList(12d, 12.5, -0.1, 1e-7, 1e21));
+		PROBES.put(Float.class, Arrays.asList(12f, 12.5f, -0.1f, 1e-7f));
+	}
+	/** Ways that {@link QueryConverter} may write number literals, tried in order */
+	private static final List<Function<Object, String>> NUMBER_FORMATS = Arrays.asList(
+		String::valueOf,
+		value -> String.valueOf(((Number)value).doubleValue())
+	);
+
+	private final int maxSize;
+	private final String sentinelPrefix;
+	private final Map<String, Template> templates;
+	private final Map<Class<?>, Function<Object, String>> literalFormats = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize the maximum number of query shapes to retain
+	 */
+	public DqlTemplateCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.sentinelPrefix = "protonDqlParam" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + 'x'; //$NON-NLS-1$
+		this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+				if(size() > DqlTemplateCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Renders the DQL statement for the provided query, equivalent to
+	 * {@code QueryConverter.select(query).getStatement().toString()}.
+	 */
+	public String select(DocumentQuery query) {
+		Optional<DocumentCondition> condition = query.getCondition();
+		List<String> literals = new ArrayList<>();
+		StringBuilder key = new StringBuilder("S|").append(query.getDocumentCollection()).append('|'); //$NON-NLS-1$
+		condition.ifPresent(c -> appendShape(c, key, literals));
+
+		Template template = lookup(key.toString());
+		if(template != null && template != UNCACHEABLE) {
+			return template.bind(literals);
+		}
+		String statement = QueryConverter.select(query).getStatement().toString();
+		if(template == null) {
+			store(key.toString(), createSelectTemplate(statement, condition.orElse(null), literals));
+		}
+		return statement;
+	}
+
+	/**
+	 * Renders the DQL for the provided condition, equivalent to
+	 * {@code QueryConverter.getCondition(condition).toString()}.
+	 */
+	public String condition(DocumentCondition condition) {
+		List<String> literals = new ArrayList<>();
+		StringBuilder key = new StringBuilder("C|"); //$NON-NLS-1$
+		appendShape(condition, key, literals);
+
+		Template template = lookup(key.toString());
+		if(template != null && template != UNCACHEABLE) {
+			return template.bind(literals);
+		}
+		String statement = QueryConverter.getCondition(condition).toString();
+		if(template == null) {
+			Template result = renderTemplate(condition, literals.size());
+			if(result == null || !statement.equals(result.bind(literals))) {
+				result = UNCACHEABLE;
+			}
+			store(key.toString(), result);
+		}
+		return statement;
+	}
+
+	public void clear() {
+		synchronized(templates) {
+			templates.clear();
+		}
+	}
+
+	public CacheStatistics getStatistics() {
+		long size;
+		synchronized(templates) {
+			size = templates.size();
+		}
+		return new CacheStatistics(hits.get(), misses.get(), evictions.get(), size);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private Template lookup(String key) {
+		Template template;
+		synchronized(templates) {
+			template = templates.get(key);
+		}
+		if(template != null && template != UNCACHEABLE) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return template;
+	}
+
+	private void store(String key, Template template) {
+		synchronized(templates) {
+			templates.put(key, template);
+		}
+	}
+
+	/**
+	 * Builds the template for a select statement by locating the condition,
+	 * as rendered from its own template, within the full statement.
+	 */
+	private Template createSelectTemplate(String statement, DocumentCondition condition, List<String> literals) {
+		if(condition == null) {
+			return new Template(new String[] { statement }, new int[0]);
+		}
+		Template conditionTemplate = renderTemplate(condition, literals.size());
+		if(conditionTemplate == null) {
+			return UNCACHEABLE;
+		}
+		String real = conditionTemplate.bind(literals);
+		int index = statement.indexOf(real);
+		if(real.isEmpty() || index < 0 || statement.indexOf(real, index + 1) >= 0) {
+			return UNCACHEABLE;
+		}
+		String[] segments = conditionTemplate.segments.clone();
+		segments[0] = statement.substring(0, index) + segments[0];
+		segments[segments.length - 1] = segments[segments.length - 1] + statement.substring(index + real.length());
+		return new Template(segments, conditionTemplate.order);
+	}
+
+	/**
+	 * Renders the condition with placeholders in place of its parameters and
+	 * splits the result into a template, returning {@code null} if any
+	 * placeholder does not appear exactly once.
+	 */
+	private Template renderTemplate(DocumentCondition condition, int paramCount) {
+		String rendered = QueryConverter.getCondition(toTemplateCondition(condition, new AtomicInteger())).toString();
+		int[] positions = new int[paramCount];
+		Integer[] byPosition = new Integer[paramCount];
+		for(int i = 0; i < paramCount; i++) {
+			String token = toLiteral(sentinel(i));
+			int index = rendered.indexOf(token);
+			if(index < 0 || rendered.indexOf(token, index + 1) >= 0) {
+				return null;
+			}
+			positions[i] = index;
+			byPosition[i] = i;
+		}
+		Arrays.sort(byPosition, (a, b) -> Integer.compare(positions[a], positions[b]));
+
+		String[] segments = new String[paramCount + 1];
+		int[] order = new int[paramCount];
+		int start = 0;
+		for(int i = 0; i < paramCount; i++) {
+			int param = byPosition[i];
+			segments[i] = rendered.substring(start, positions[param]);
+			order[i] = param;
+			start = positions[param] + toLiteral(sentinel(param)).length();
+		}
+		segments[paramCount] = rendered.substring(start);
+		return new Template(segments, order);
+	}
+
+	/**
+	 * @return the function writing DQL literals for values of the provided
+	 *         type, or {@code null} if the type's values are part of the shape
+	 */
+	private Function<Object, String> getLiteralFormat(Class<?> type) {
+		Function<Object, String> result = literalFormats.computeIfAbsent(type, this::findLiteralFormat);
+		return result == NOT_PARAMETER ? null : result;
+	}
+
+	/**
+	 * Determines how {@link QueryConverter} writes literals of the provided
+	 * type by rendering its probe values, which happens once per type.
+	 */
+	private Function<Object, String> findLiteralFormat(Class<?> type) {
+		List<Object> probes = PROBES.get(type);
+		if(probes == null) {
+			return NOT_PARAMETER;
+		}
+		// The text around a literal, taken from a rendered placeholder
+		String placeholder = QueryConverter.getCondition(DocumentCondition.eq(Document.of("probe", sentinel(0)))).toString(); //$NON-NLS-1$
+		int index = placeholder.indexOf(toLiteral(sentinel(0)));
+		if(index < 0) {
+			return NOT_PARAMETER;
+		}
+		String prefix = placeholder.substring(0, index);
+		String suffix = placeholder.substring(index + toLiteral(sentinel(0)).length());
+
+		List<Function<Object, String>> candidates = type == String.class
+			? Collections.singletonList(value -> toLiteral((String)value))
+			: NUMBER_FORMATS;
+		List<String> expected = new ArrayList<>(probes.size());
+		try {
+			for(Object probe : probes) {
+				expected.add(QueryConverter.getCondition(DocumentCondition.eq(Document.of("probe", probe))).toString()); //$NON-NLS-1$
+			}
+		} catch(RuntimeException e) {
+			// Not renderable as a comparison value, so leave it in the shape
+			return NOT_PARAMETER;
+		}
+		for(Function<Object, String> candidate : candidates) {
+			boolean matches = true;
+			for(int i = 0; i < probes.size() && matches; i++) {
+				matches = expected.get(i).equals(prefix + candidate.apply(probes.get(i)) + suffix);
+			}
+			if(matches) {
+				return candidate;
+			}
+		}
+		return NOT_PARAMETER;
+	}
+
+	private String sentinel(int index) {
+		return sentinelPrefix + index + 'x';
+	}
+
+	private static String toLiteral(String value) {
+		return "'" + value.replace("'", "''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/**
+	 * Appends the structural shape of the condition to {@code key}, collecting
+	 * the literals of its parameters in traversal order.
+	 */
+	private void appendShape(DocumentCondition condition, StringBuilder key, List<String> literals) {
+		Condition type = condition.getCondition();
+		Document document = condition.getDocument();
+		key.append(type.name()).append('(');
+		switch(type) {
+		case AND:
+		case OR:
+			for(Object child : (List<?>)document.get()) {
+				appendShape((DocumentCondition)child, key, literals);
+				key.append(',');
+			}
+			break;
+		case NOT:
+			appendShape((DocumentCondition)document.get(), key, literals);
+			break;
+		default:
+			key.append(document.getName().length()).append(':').append(document.getName()).append(':');
+			Object value = document.get();
+			List<?> params = toParameters(type, value);
+			if(params != null) {
+				// Only the types of parameters are part of the shape
+				key.append(params.size()).append('?');
+				for(Object param : params) {
+					key.append(param.getClass().getName()).append(';');
+					literals.add(getLiteralFormat(param.getClass()).apply(param));
+				}
+			} else {
+				key.append(value == null ? "null" : value.getClass().getName() + '=' + value); //$NON-NLS-1$
+			}
+			break;
+		}
+		key.append(')');
+	}
+
+	/**
+	 * Rebuilds the condition with placeholders in place of its parameter
+	 * values, following the same traversal order as {@link #appendShape}.
+	 */
+	private DocumentCondition toTemplateCondition(DocumentCondition condition, AtomicInteger nextParam) {
+		Condition type = condition.getCondition();
+		Document document = condition.getDocument();
+		switch(type) {
+		case AND:
+		case OR: {
+			List<?> children = (List<?>)document.get();
+			DocumentCondition[] templated = new DocumentCondition[children.size()];
+			for(int i = 0; i < templated.length; i++) {
+				templated[i] = toTemplateCondition((DocumentCondition)children.get(i), nextParam);
+			}
+			return type == Condition.AND ? DocumentCondition.and(templated) : DocumentCondition.or(templated);
+		}
+		case NOT:
+			return toTemplateCondition((DocumentCondition)document.get(), nextParam).negate();
+		default:
+			List<?> params = toParameters(type, document.get());
+			if(params == null) {
+				return condition;
+			}
+			List<String> sentinels = new ArrayList<>(params.size());
+			for(int i = 0; i < params.size(); i++) {
+				sentinels.add(sentinel(nextParam.getAndIncrement()));
+			}
+			switch(type) {
+			case EQUALS:
+				return DocumentCondition.eq(Document.of(document.getName(), sentinels.get(0)));
+			case GREATER_THAN:
+				return DocumentCondition.gt(Document.of(document.getName(), sentinels.get(0)));
+			case GREATER_EQUALS_THAN:
+				return DocumentCondition.gte(Document.of(document.getName(), sentinels.get(0)));
+			case LESSER_THAN:
+				return DocumentCondition.lt(Document.of(document.getName(), sentinels.get(0)));
+			case LESSER_EQUALS_THAN:
+				return DocumentCondition.lte(Document.of(document.getName(), sentinels.get(0)));
+			case IN:
+				return DocumentCondition.in(Document.of(document.getName(), sentinels));
+			case BETWEEN:
+				return DocumentCondition.between(Document.of(document.getName(), sentinels));
+			default:
+				throw new IllegalStateException("Unexpected condition type " + type);
+			}
+		}
+	}
+
+	/**
+	 * @return the values to treat as parameters for a leaf condition, or
+	 *         {@code null} if its value is part of the shape
+	 */
+	private List<?> toParameters(Condition type, Object value) {
+		switch(type) {
+		case EQUALS:
+		case GREATER_THAN:
+		case GREATER_EQUALS_THAN:
+		case LESSER_THAN:
+		case LESSER_EQUALS_THAN:
+			return isParameter(value) ? Collections.singletonList(value) : null;
+		case IN:
+		case BETWEEN:
+			if(!(value instanceof Iterable)) {
+				return null;
+			}
+			List<Object> result = new ArrayList<>();
+			for(Object element : (Iterable<?>)value) {
+				if(!isParameter(element)) {
+					return null;
+				}
+				result.add(element);
+			}
+			return result;
+		default:
+			// LIKE patterns may be rewritten during rendering
+			return null;
+		}
+	}
+
+	private boolean isParameter(Object value) {
+		return value != null && getLiteralFormat(value.getClass()) != null;
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+import org.openntf.xsp.nosql.communication.driver.proton.CacheStatistics;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Bounded read-through cache of entities by UNID for the entity types that
+ * opted into caching.
+ *
+ * <p>Each entity type has its own LRU region. Within a region, entries are
+ * further keyed by access token, so that documents read with one user's
+ * reader access are never returned to another user. The size limit applies
+ * to the entries of a region across all tokens.</p>
+ *
+ * <p>To keep a read that overlaps a write from caching the value it read
+ * before the write, callers take a {@link #stamp()} before reading from
+ * Proton and pass it to {@link #put}, which discards the entity if its UNID
+ * has been invalidated since.</p>
+ *
+ * @since 1.0.0
+ */
+class EntityCache {
+	/** The number of stripes across which UNID invalidation times are tracked */
+	private static final int STRIPES = 256;
+
+	private static class Entry {
+		private final DocumentEntity entity;
+		private final long expires;
+
+		Entry(DocumentEntity entity, long expires) {
+			this.entity = entity;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * LRU map of UNIDs to their cached copies per access token, with a count
+	 * of the entries across all tokens. Guarded by its own lock.
+	 */
+	private static class Region {
+		private final LinkedHashMap<String, Map<String, Entry>> unids = new LinkedHashMap<>(16, 0.75f, true);
+		private long size;
+
+		void remove(String unid) {
+			Map<String, Entry> byToken = unids.remove(unid);
+			if(byToken != null) {
+				size -= byToken.size();
+			}
+		}
+
+		void clear() {
+			unids.clear();
+			size = 0;
+		}
+	}
+
+	private final Set<String> entityNames;
+	private final int maxSize;
+	private final long ttlNanos;
+	private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+	/** Advanced by each invalidation */
+	private final AtomicLong clock = new AtomicLong();
+	/** The clock value of the latest invalidation of any UNID in each stripe */
+	private final AtomicLongArray invalidated = new AtomicLongArray(STRIPES);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param entityNames the entity types to cache
+	 * @param maxSize the maximum number of entries to cache per entity type,
+	 *        counting each access token's copy of a UNID separately
+	 * @param ttlMillis the time in milliseconds for which cached entities are valid
+	 */
+	public EntityCache(Collection<String> entityNames, int maxSize, long ttlMillis) {
+		this.entityNames = new HashSet<>(entityNames);
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlMillis * 1000 * 1000;
+	}
+
+	public boolean isCached(String entityName) {
+		return entityName != null && entityNames.contains(entityName);
+	}
+
+	/**
+	 * @return a copy of the cached entity, or an empty value if no valid entry exists
+	 */
+	public Optional<DocumentEntity> get(String entityName, String unid, String token) {
+		String key = toKey(unid);
+		Region region = regions.get(entityName);
+		Entry entry = null;
+		if(region != null) {
+			synchronized(region) {
+				entry = find(region, key, token);
+			}
+		}
+		if(entry == null) {
+			misses.incrementAndGet();
+			return Optional.empty();
+		}
+		hits.incrementAndGet();
+		return Optional.of(entry.entity.copy());
+	}
+
+	/**
+	 * @return a value to pass to {@link #put} for entities read after this
+	 *         call
+	 */
+	public long stamp() {
+		return clock.get();
+	}
+
+	/**
+	 * Caches a copy of the provided entity, unless its UNID has been
+	 * invalidated since {@code stamp} was taken.
+	 */
+	public void put(String entityName, String unid, String token, DocumentEntity entity, long stamp) {
+		Region region = regions.computeIfAbsent(entityName, name -> new Region());
+		// Copying converts any lazy entity, so readers on other threads never modify the entry
+		Entry entry = new Entry(entity.copy(), System.nanoTime() + ttlNanos);
+		String key = toKey(unid);
+		int stripe = stripe(key);
+		synchronized(region) {
+			// Invalidation advances the stripe before taking this lock to remove entries
+			if(invalidated.get(stripe) > stamp) {
+				return;
+			}
+			Map<String, Entry> byToken = region.unids.computeIfAbsent(key, k -> new LinkedHashMap<>());
+			// Re-insert so that the newest copy is the last to be evicted
+			if(byToken.remove(normalize(token)) == null) {
+				region.size++;
+			}
+			byToken.put(normalize(token), entry);
+			evict(region);
+		}
+	}
+
+	/**
+	 * Determines whether any cached entity type holds a valid entry for the UNID
+	 * for the given access token, counting the lookup as a hit or miss.
+	 */
+	public boolean contains(String unid, String token) {
+		String key = toKey(unid);
+		for(Region region : regions.values()) {
+			synchronized(region) {
+				if(find(region, key, token) != null) {
+					hits.incrementAndGet();
+					return true;
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	public void invalidate(String unid) {
+		String key = toKey(unid);
+		advance(key);
+		for(Region region : regions.values()) {
+			synchronized(region) {
+				region.remove(key);
+			}
+		}
+	}
+
+	public void invalidateAll(Collection<String> unids) {
+		List<String> keys = unids.stream().map(EntityCache::toKey).collect(Collectors.toList());
+		keys.forEach(this::advance);
+		for(Region region : regions.values()) {
+			synchronized(region) {
+				keys.forEach(region::remove);
+			}
+		}
+	}
+
+	public void invalidateEntity(String entityName) {
+		advanceAll();
+		Region region = regions.get(entityName);
+		if(region != null) {
+			synchronized(region) {
+				region.clear();
+			}
+		}
+	}
+
+	public void clear() {
+		advanceAll();
+		regions.clear();
+	}
+
+	public CacheStatistics getStatistics() {
+		long size = 0;
+		for(Region region : regions.values()) {
+			synchronized(region) {
+				size += region.size;
+			}
+		}
+		return new CacheStatistics(hits.get(), misses.get(), evictions.get(), size);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * Finds a valid entry in the region, removing expired entries along the
+	 * way. Must be called while holding the region's lock.
+	 */
+	private Entry find(Region region, String key, String token) {
+		Map<String, Entry> byToken = region.unids.get(key);
+		if(byToken == null) {
+			return null;
+		}
+		Entry entry = byToken.get(normalize(token));
+		if(entry == null) {
+			return null;
+		}
+		if(System.nanoTime() - entry.expires >= 0) {
+			byToken.remove(normalize(token));
+			region.size--;
+			if(byToken.isEmpty()) {
+				region.unids.remove(key);
+			}
+			evictions.incrementAndGet();
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes the oldest entries of the least-recently-used UNIDs until the
+	 * region is within its size limit. Must be called while holding the
+	 * region's lock.
+	 */
+	private void evict(Region region) {
+		Iterator<Map<String, Entry>> eldest = region.unids.values().iterator();
+		while(region.size > maxSize && eldest.hasNext()) {
+			Map<String, Entry> byToken = eldest.next();
+			Iterator<Entry> entries = byToken.values().iterator();
+			while(region.size > maxSize && entries.hasNext()) {
+				entries.next();
+				entries.remove();
+				region.size--;
+				evictions.incrementAndGet();
+			}
+			if(byToken.isEmpty()) {
+				eldest.remove();
+			}
+		}
+	}
+
+	private void advance(String key) {
+		long time = clock.incrementAndGet();
+		invalidated.accumulateAndGet(stripe(key), time, Math::max);
+	}
+
+	private void advanceAll() {
+		long time = clock.incrementAndGet();
+		for(int i = 0; i < STRIPES; i++) {
+			invalidated.accumulateAndGet(i, time, Math::max);
+		}
+	}
+
+	private static int stripe(String key) {
+		return key.hashCode() & (STRIPES - 1);
+	}
+
+	/**
+	 * UNIDs are case-insensitive, and callers and Proton may use different cases
+	 * for the same document, so all UNIDs are compared in upper case.
+	 */
+	private static String toKey(String unid) {
+		return unid == null ? "" : unid.toUpperCase(Locale.ENGLISH); //$NON-NLS-1$
+	}
+
+	private static String normalize(String token) {
+		return token == null ? "" : token; //$NON-NLS-1$
+	}
+}
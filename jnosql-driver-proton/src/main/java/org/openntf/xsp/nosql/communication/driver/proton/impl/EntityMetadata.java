@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.openntf.xsp.nosql.mapping.extension.ItemFlags;
+import org.openntf.xsp.nosql.mapping.extension.ItemStorage;
+
+/**
+ * Precomputed, immutable view of the mapping information needed to read and
+ * write a single entity type, so that the read and write paths do not need
+ * to reflect over the entity class after the first use.
+ *
+ * @since 1.0.0
+ */
+class EntityMetadata {
+	private static final com.hcl.domino.db.model.ItemFlags[] NO_FLAGS = new com.hcl.domino.db.model.ItemFlags[0];
+
+	/**
+	 * Describes the storage options for a single item.
+	 */
+	static class ItemMetadata {
+		static final ItemMetadata DEFAULT = new ItemMetadata(null, null);
+
+		private final boolean insertable;
+		private final boolean updatable;
+		private final boolean saveToDisk;
+		private final ItemStorage.Type storageType;
+		private final int precision;
+		private final com.hcl.domino.db.model.ItemFlags[] flags;
+		private final com.hcl.domino.db.model.ItemFlags[] nonSummaryFlags;
+
+		ItemMetadata(ItemStorage storage, ItemFlags itemFlags) {
+			this.insertable = storage == null || storage.insertable();
+			this.updatable = storage == null || storage.updatable();
+			this.storageType = storage == null ? ItemStorage.Type.Default : storage.type();
+			this.precision = storage == null ? 0 : storage.precision();
+			this.saveToDisk = itemFlags == null || itemFlags.saveToDisk();
+
+			List<com.hcl.domino.db.model.ItemFlags> flags = new ArrayList<>();
+			if(itemFlags != null) {
+				if(itemFlags.authors()) {
+					flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_AUTHORS);
+				}
+				if(itemFlags.readers()) {
+					flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_READERS);
+				}
+				if(itemFlags.authors() || itemFlags.readers() || itemFlags.names()) {
+					flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NAMES);
+				}
+				if(itemFlags.encrypted()) {
+					flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_ENCRYPT);
+				}
+				if(!itemFlags.summary()) {
+					flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NONSUMMARY);
+				}
+			}
+			this.flags = flags.isEmpty() ? NO_FLAGS : flags.toArray(new com.hcl.domino.db.model.ItemFlags[flags.size()]);
+			if(flags.contains(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NONSUMMARY)) {
+				this.nonSummaryFlags = this.flags;
+			} else {
+				this.nonSummaryFlags = Arrays.copyOf(this.flags, this.flags.length + 1);
+				this.nonSummaryFlags[this.flags.length] = com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NONSUMMARY;
+			}
+		}
+
+		public boolean isInsertable() {
+			return insertable;
+		}
+
+		public boolean isUpdatable() {
+			return updatable;
+		}
+
+		public boolean isSaveToDisk() {
+			return saveToDisk;
+		}
+
+		public ItemStorage.Type getStorageType() {
+			return storageType;
+		}
+
+		public int getPrecision() {
+			return precision;
+		}
+
+		/**
+		 * @return the Domino item flags to apply to this item; callers must not
+		 *         modify this array
+		 */
+		public com.hcl.domino.db.model.ItemFlags[] getFlags() {
+			return flags;
+		}
+
+		/**
+		 * @return the Domino item flags to apply to this item when stored as
+		 *         non-summary data; callers must not modify this array
+		 */
+		public com.hcl.domino.db.model.ItemFlags[] getNonSummaryFlags() {
+			return nonSummaryFlags;
+		}
+	}
+
+	private final List<String> itemNames;
+	private final Set<String> jsonItemNames;
+	private final Map<String, ItemMetadata> items;
+
+	/**
+	 * @param itemNames the item names of all mapped columns
+	 * @param loader a function used to compute the metadata for each mapped
+	 *        item name
+	 */
+	EntityMetadata(List<String> itemNames, Function<String, ItemMetadata> loader) {
+		this.itemNames = Collections.unmodifiableList(new ArrayList<>(itemNames));
+		Map<String, ItemMetadata> items = new HashMap<>();
+		Set<String> jsonItemNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		for(String itemName : itemNames) {
+			ItemMetadata item = loader.apply(itemName);
+			items.put(itemName, item);
+			if(item.getStorageType() == ItemStorage.Type.JSON) {
+				jsonItemNames.add(itemName);
+			}
+		}
+		this.items = Collections.unmodifiableMap(items);
+		this.jsonItemNames = Collections.unmodifiableSet(jsonItemNames);
+	}
+
+	/**
+	 * @return an immutable list of the item names for all mapped columns
+	 */
+	public List<String> getItemNames() {
+		return itemNames;
+	}
+
+	/**
+	 * @return an immutable, case-insensitive set of the names of mapped items
+	 *         stored as JSON
+	 */
+	public Set<String> getJsonItemNames() {
+		return jsonItemNames;
+	}
+
+	/**
+	 * Retrieves the metadata for the named item. Items that are not among the
+	 * mapped columns have no annotations to read, so they use
+	 * {@link ItemMetadata#DEFAULT}.
+	 *
+	 * @param itemName the item name to look up
+	 * @return the metadata for the item, never {@code null}
+	 */
+	public ItemMetadata getItem(String itemName) {
+		return items.getOrDefault(itemName, ItemMetadata.DEFAULT);
+	}
+}
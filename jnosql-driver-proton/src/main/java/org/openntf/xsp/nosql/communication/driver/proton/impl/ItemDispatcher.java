@@ -0,0 +1,255 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import org.openntf.xsp.nosql.communication.driver.proton.ItemValueConverter;
+
+import com.hcl.domino.db.model.DateItem;
+import com.hcl.domino.db.model.DateTimeItem;
+import com.hcl.domino.db.model.Item;
+import com.hcl.domino.db.model.ItemFlags;
+import com.hcl.domino.db.model.NumberItem;
+import com.hcl.domino.db.model.TextItem;
+import com.hcl.domino.db.model.TimeItem;
+
+/**
+ * Type-keyed table that resolves how to build a Proton {@link Item} for a
+ * given Java value type once per type, rather than per value.
+ *
+ * @since 1.0.0
+ */
+class ItemDispatcher {
+
+	/**
+	 * Builds items of a single Domino item type.
+	 */
+	private enum ItemKind {
+		TEXT {
+			@Override
+			Item<?> single(String name, Object value, ItemFlags[] flags) {
+				return new TextItem(name, (String)value, flags);
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			Item<?> multi(String name, List<?> values, ItemFlags[] flags) {
+				return new TextItem(name, (List<String>)values, flags);
+			}
+		},
+		DATE {
+			@Override
+			Item<?> single(String name, Object value, ItemFlags[] flags) {
+				return new DateItem(name, (LocalDate)value, flags);
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			Item<?> multi(String name, List<?> values, ItemFlags[] flags) {
+				return new DateItem(name, (List<LocalDate>)values, false, flags);
+			}
+		},
+		TIME {
+			@Override
+			Item<?> single(String name, Object value, ItemFlags[] flags) {
+				return new TimeItem(name, (LocalTime)value, flags);
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			Item<?> multi(String name, List<?> values, ItemFlags[] flags) {
+				return new TimeItem(name, (List<LocalTime>)values, false, flags);
+			}
+		},
+		DATETIME {
+			@Override
+			Item<?> single(String name, Object value, ItemFlags[] flags) {
+				return new DateTimeItem(name, (ZonedDateTime)value, flags);
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			Item<?> multi(String name, List<?> values, ItemFlags[] flags) {
+				return new DateTimeItem(name, (List<ZonedDateTime>)values, false, flags);
+			}
+		},
+		NUMBER {
+			@Override
+			Item<?> single(String name, Object value, ItemFlags[] flags) {
+				return new NumberItem(name, (Number)value, flags);
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			Item<?> multi(String name, List<?> values, ItemFlags[] flags) {
+				return new NumberItem(name, (List<Number>)values, false, flags);
+			}
+		};
+
+		abstract Item<?> single(String name, Object value, ItemFlags[] flags);
+		abstract Item<?> multi(String name, List<?> values, ItemFlags[] flags);
+	}
+
+	/**
+	 * Describes how values of a single Java type are stored.
+	 */
+	private static class Dispatch {
+		private final ItemKind kind;
+		/** Conversion to a native type, or {@code null} when the type is native */
+		private final Function<Object, Object> converter;
+
+		Dispatch(ItemKind kind, Function<Object, Object> converter) {
+			this.kind = kind;
+			this.converter = converter;
+		}
+	}
+
+	private static final Dispatch UNSUPPORTED = new Dispatch(null, null);
+
+	private final List<ItemValueConverter<?>> converters;
+	private final ClassValue<Dispatch> dispatch = new ClassValue<Dispatch>() {
+		@Override
+		protected Dispatch computeValue(Class<?> type) {
+			return resolve(type);
+		}
+	};
+
+	/**
+	 * @param converters additional converters to consult, in priority order,
+	 *        for types not supported natively
+	 */
+	public ItemDispatcher(Collection<ItemValueConverter<?>> converters) {
+		this.converters = new ArrayList<>(converters);
+		this.converters.add(new InstantConverter());
+		this.converters.add(new OffsetDateTimeConverter());
+	}
+
+	public Item<?> toItem(String name, Object value, ItemFlags[] flags) {
+		if(value instanceof Collection) {
+			Collection<?> values = (Collection<?>)value;
+			if(values.isEmpty()) {
+				return new TextItem(name, (String)null, flags);
+			}
+			Object first = values.iterator().next();
+			Dispatch d = lookup(first);
+			if(d.converter == null) {
+				// Use the collection as-is when possible
+				List<?> list = value instanceof List ? (List<?>)value : new ArrayList<>(values);
+				return d.kind.multi(name, list, flags);
+			} else {
+				List<Object> converted = new ArrayList<>(values.size());
+				for(Object v : values) {
+					converted.add(d.converter.apply(v));
+				}
+				return nativeDispatch(converted.get(0)).kind.multi(name, converted, flags);
+			}
+		} else {
+			Dispatch d = lookup(value);
+			if(d.converter == null) {
+				return d.kind.single(name, value, flags);
+			} else {
+				Object converted = d.converter.apply(value);
+				return nativeDispatch(converted).kind.single(name, converted, flags);
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private Dispatch lookup(Object value) {
+		Dispatch d = value == null ? UNSUPPORTED : dispatch.get(value.getClass());
+		if(d == UNSUPPORTED) {
+			throw unsupported(value);
+		}
+		return d;
+	}
+
+	private Dispatch nativeDispatch(Object converted) {
+		Dispatch d = lookup(converted);
+		if(d.converter != null) {
+			// Converters must produce natively-supported values
+			throw unsupported(converted);
+		}
+		return d;
+	}
+
+	private Dispatch resolve(Class<?> type) {
+		ItemKind kind = nativeKind(type);
+		if(kind != null) {
+			return new Dispatch(kind, null);
+		}
+
+		for(ItemValueConverter<?> converter : converters) {
+			if(converter.getType().isAssignableFrom(type)) {
+				@SuppressWarnings("unchecked")
+				ItemValueConverter<Object> c = (ItemValueConverter<Object>)converter;
+				return new Dispatch(null, c::convert);
+			}
+		}
+		return UNSUPPORTED;
+	}
+
+	private static ItemKind nativeKind(Class<?> type) {
+		if(String.class.equals(type)) {
+			return ItemKind.TEXT;
+		} else if(LocalDate.class.equals(type)) {
+			return ItemKind.DATE;
+		} else if(LocalTime.class.equals(type)) {
+			return ItemKind.TIME;
+		} else if(ZonedDateTime.class.equals(type)) {
+			return ItemKind.DATETIME;
+		} else if(Number.class.isAssignableFrom(type)) {
+			return ItemKind.NUMBER;
+		}
+		return null;
+	}
+
+	private static UnsupportedOperationException unsupported(Object value) {
+		return new UnsupportedOperationException(MessageFormat.format("Unable to convert value of type {0}", value == null ? null : value.getClass().getName()));
+	}
+
+	private static class InstantConverter implements ItemValueConverter<Instant> {
+		@Override
+		public Class<Instant> getType() {
+			return Instant.class;
+		}
+
+		@Override
+		public Object convert(Instant value) {
+			return value.atZone(ZoneOffset.UTC);
+		}
+	}
+
+	private static class OffsetDateTimeConverter implements ItemValueConverter<OffsetDateTime> {
+		@Override
+		public Class<OffsetDateTime> getType() {
+			return OffsetDateTime.class;
+		}
+
+		@Override
+		public Object convert(OffsetDateTime value) {
+			return value.toZonedDateTime();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodes the position after the last document of a keyset-paginated page and
+ * renders the DQL predicate that selects the documents following it.
+ *
+ * <p>The predicate only selects the same documents as the client-side sort
+ * when DQL compares the sort values the same way. That holds for numbers and
+ * dates, but not for text, which Domino compares by its own collation, nor for
+ * missing values, which DQL comparisons never match. When the last document
+ * has any other kind of sort value, the token instead records the number of
+ * documents returned so far and the next page falls back to skipping them.
+ * Callers must also use such an offset token when any document in the results
+ * is missing a sort value.</p>
+ *
+ * @since 1.0.0
+ */
+class KeysetToken {
+	private static final char SEPARATOR = '\u001f';
+	private static final String VERSION = "1"; //$NON-NLS-1$
+	private static final String TYPE_KEYSET = "k"; //$NON-NLS-1$
+	private static final String TYPE_OFFSET = "o"; //$NON-NLS-1$
+	private static final DateTimeFormatter DQL_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SS'Z'", Locale.US).withZone(ZoneOffset.UTC); //$NON-NLS-1$
+
+	private final int queryHash;
+	/** The number of documents returned before the next page */
+	private final long offset;
+	/** The sort key values of the last returned document, or {@code null} for an offset token */
+	private final Object[] keys;
+	private final String unid;
+
+	private KeysetToken(int queryHash, long offset, Object[] keys, String unid) {
+		this.queryHash = queryHash;
+		this.offset = offset;
+		this.keys = keys;
+		this.unid = unid;
+	}
+
+	/**
+	 * Creates a token positioned after the provided document.
+	 *
+	 * @param queryHash a hash identifying the query and sorts, used to reject
+	 *        tokens from other queries
+	 * @param offset the total number of documents returned so far
+	 * @param keys the sort key values of the last returned document
+	 * @param unid the UNID of the last returned document
+	 * @return a new token
+	 */
+	public static KeysetToken after(int queryHash, long offset, Object[] keys, String unid) {
+		for(Object key : keys) {
+			if(!isLiteral(key) || key instanceof String) {
+				return offset(queryHash, offset);
+			}
+		}
+		return new KeysetToken(queryHash, offset, keys, unid);
+	}
+
+	/**
+	 * Creates a token that resumes by skipping the documents returned so far.
+	 *
+	 * @param queryHash a hash identifying the query and sorts
+	 * @param offset the total number of documents returned so far
+	 * @return a new token
+	 */
+	public static KeysetToken offset(int queryHash, long offset) {
+		return new KeysetToken(queryHash, offset, null, null);
+	}
+
+	/**
+	 * Parses a token produced by {@link #toString()}.
+	 *
+	 * @param token the token provided by the client
+	 * @param queryHash the hash of the query the token is used with
+	 * @return the parsed token
+	 * @throws IllegalArgumentException if the token is malformed or was
+	 *         produced for a different query
+	 */
+	public static KeysetToken parse(String token, int queryHash) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		}
+		String[] parts = decoded.split(String.valueOf(SEPARATOR), -1);
+		if(parts.length < 4 || !VERSION.equals(parts[0])) {
+			throw new IllegalArgumentException("Invalid continuation token");
+		}
+		try {
+			if(Integer.parseInt(parts[1]) != queryHash) {
+				throw new IllegalArgumentException("Continuation token does not match this query");
+			}
+			long offset = Long.parseLong(parts[2]);
+			if(offset < 0) {
+				throw new IllegalArgumentException("Invalid continuation token");
+			}
+			if(TYPE_OFFSET.equals(parts[3]) && parts.length == 4) {
+				// Proton skips by an int
+				if(offset > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("Invalid continuation token");
+				}
+				return new KeysetToken(queryHash, offset, null, null);
+			}
+			// A keyset token holds the UNID followed by one key per sort
+			if(!TYPE_KEYSET.equals(parts[3]) || parts.length < 5 || parts[4].isEmpty()) {
+				throw new IllegalArgumentException("Invalid continuation token");
+			}
+			String unid = parts[4];
+			Object[] keys = new Object[parts.length - 5];
+			for(int i = 0; i < keys.length; i++) {
+				keys[i] = decodeValue(parts[i + 5]);
+			}
+			return new KeysetToken(queryHash, offset, keys, unid);
+		} catch(NumberFormatException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		}
+	}
+
+	public boolean isKeyset() {
+		return keys != null;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Renders a DQL predicate that matches the documents that follow this
+	 * token's position in the order of the provided sorter.
+	 */
+	public String toPredicate(DocumentSorter sorter) {
+		// (k1 > v1) or (k1 = v1 and k2 > v2) or ... or (k1 = v1 and ... and @DocumentUniqueID > unid)
+		List<String> clauses = new ArrayList<>();
+		List<String> equalities = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		sorter.getSorts().forEach(sort -> names.add(sort.getName()));
+		if(keys.length != names.size()) {
+			throw new IllegalArgumentException("Continuation token does not match this query");
+		}
+		for(int i = 0; i < keys.length; i++) {
+			String literal = toLiteral(keys[i]);
+			String op = sorter.isDescending(i) ? " < " : " > "; //$NON-NLS-1$ //$NON-NLS-2$
+			clauses.add(conjunction(equalities, names.get(i) + op + literal));
+			equalities.add(names.get(i) + " = " + literal); //$NON-NLS-1$
+		}
+		clauses.add(conjunction(equalities, "@DocumentUniqueID > " + toLiteral(unid))); //$NON-NLS-1$
+		StringBuilder result = new StringBuilder();
+		for(String clause : clauses) {
+			if(result.length() > 0) {
+				result.append(" or "); //$NON-NLS-1$
+			}
+			result.append('(').append(clause).append(')');
+		}
+		return result.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append(VERSION).append(SEPARATOR)
+			.append(queryHash).append(SEPARATOR)
+			.append(offset).append(SEPARATOR);
+		if(keys == null) {
+			result.append(TYPE_OFFSET);
+		} else {
+			result.append(TYPE_KEYSET).append(SEPARATOR).append(unid);
+			for(Object key : keys) {
+				result.append(SEPARATOR).append(encodeValue(key));
+			}
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(result.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static String conjunction(List<String> equalities, String last) {
+		if(equalities.isEmpty()) {
+			return last;
+		}
+		return String.join(" and ", equalities) + " and " + last; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	static boolean isLiteral(Object value) {
+		if(value instanceof Double || value instanceof Float) {
+			double d = ((Number)value).doubleValue();
+			if(Double.isNaN(d) || Double.isInfinite(d)) {
+				return false;
+			}
+		}
+		return value instanceof String
+			|| value instanceof Number
+			|| value instanceof LocalDate
+			|| value instanceof ZonedDateTime
+			|| value instanceof OffsetDateTime;
+	}
+
+	static String toLiteral(Object value) {
+		if(value instanceof String) {
+			return "'" + ((String)value).replace("'", "''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		} else if(value instanceof Number) {
+			return new BigDecimal(value.toString()).toPlainString();
+		} else if(value instanceof LocalDate) {
+			return "@dt('" + DateTimeFormatter.ISO_LOCAL_DATE.format((LocalDate)value) + "')"; //$NON-NLS-1$ //$NON-NLS-2$
+		} else {
+			return toDateTimeLiteral((TemporalAccessor)value);
+		}
+	}
+
+	/**
+	 * Renders the provided instant-bearing value as a DQL date-time literal in UTC,
+	 * truncated to the hundredths of a second that Domino stores.
+	 */
+	static String toDateTimeLiteral(TemporalAccessor value) {
+		return "@dt('" + DQL_DATE_TIME.format(Instant.from(value)) + "')"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String encodeValue(Object value) {
+		if(value instanceof String) {
+			return "s" + value; //$NON-NLS-1$
+		} else if(value instanceof Number) {
+			return "n" + value; //$NON-NLS-1$
+		} else if(value instanceof LocalDate) {
+			return "d" + value; //$NON-NLS-1$
+		} else if(value instanceof OffsetDateTime) {
+			return "z" + ((OffsetDateTime)value).toZonedDateTime(); //$NON-NLS-1$
+		} else {
+			return "z" + value; //$NON-NLS-1$
+		}
+	}
+
+	private static Object decodeValue(String encoded) {
+		if(encoded.isEmpty()) {
+			throw new IllegalArgumentException("Invalid continuation token");
+		}
+		String value = encoded.substring(1);
+		switch(encoded.charAt(0)) {
+		case 's':
+			return value;
+		case 'n':
+			return Double.valueOf(value);
+		case 'd':
+			return LocalDate.parse(value);
+		case 'z':
+			return ZonedDateTime.parse(value);
+		default:
+			throw new IllegalArgumentException("Invalid continuation token");
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationEvent;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationListener;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonTimeoutException;
+
+import com.hcl.domino.db.model.Document;
+
+/**
+ * Accumulates the timings and counts of a single manager operation and
+ * reports them to the configured {@link ProtonOperationListener}s when the
+ * operation completes. The tracker also bounds the Proton calls awaited for
+ * the operation by a deadline set when the operation starts, so that an
+ * operation issuing several calls fails once its timeout has elapsed in total
+ * rather than for each call.
+ *
+ * <p>Instances are not thread-safe: an operation is expected to be tracked
+ * from one thread at a time. When no listeners or timeout are configured, a
+ * shared disabled instance is used and tracking has no measurable cost.</p>
+ *
+ * @since 1.0.0
+ */
+class OperationTracker {
+	private static final Map<ProtonOperationEvent.Operation, OperationTracker> DISABLED = new EnumMap<>(ProtonOperationEvent.Operation.class);
+	static {
+		for(ProtonOperationEvent.Operation operation : ProtonOperationEvent.Operation.values()) {
+			DISABLED.put(operation, new OperationTracker(Collections.emptyList(), operation, null, 0));
+		}
+	}
+
+	private final List<ProtonOperationListener> listeners;
+	private final ProtonOperationEvent.Operation operation;
+	private final String entityName;
+	/** The maximum duration of the operation, or {@code 0} for no limit */
+	private final long timeoutNanos;
+	private final long start;
+	/** The {@link System#nanoTime()} value after which Proton calls are no longer awaited */
+	private final long deadline;
+	private String dql;
+	private long protonNanos;
+	private long conversionNanos;
+	private long documentCount;
+	private long itemCount;
+	private Throwable failure;
+	private boolean completed;
+
+	private OperationTracker(List<ProtonOperationListener> listeners, ProtonOperationEvent.Operation operation, String entityName, long timeoutNanos) {
+		this.listeners = listeners;
+		this.operation = operation;
+		this.entityName = entityName;
+		this.timeoutNanos = timeoutNanos;
+		this.start = System.nanoTime();
+		this.deadline = start + timeoutNanos;
+	}
+
+	/**
+	 * Begins tracking an operation.
+	 *
+	 * @param timeoutMillis the maximum time in milliseconds to await the Proton
+	 *        calls of the operation in total, or {@code 0} for no limit
+	 * @return a new tracker, or a disabled one if there are no listeners and
+	 *         no timeout
+	 */
+	public static OperationTracker start(List<ProtonOperationListener> listeners, ProtonOperationEvent.Operation operation, String entityName, long timeoutMillis) {
+		if(listeners.isEmpty() && timeoutMillis == 0) {
+			return DISABLED.get(operation);
+		}
+		return new OperationTracker(listeners, operation, entityName, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+
+	/**
+	 * @return whether timings and counts are collected for listeners
+	 */
+	public boolean isEnabled() {
+		return !listeners.isEmpty();
+	}
+
+	public ProtonOperationEvent.Operation getOperation() {
+		return operation;
+	}
+
+	public void setDql(String dql) {
+		if(isEnabled()) {
+			this.dql = dql;
+		}
+	}
+
+	public void setDqlIfAbsent(String dql) {
+		if(isEnabled() && this.dql == null) {
+			this.dql = dql;
+		}
+	}
+
+	/**
+	 * @return whether the operation has a timeout and its deadline has passed
+	 */
+	public boolean isExpired() {
+		return timeoutNanos != 0 && deadline - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @return a new exception describing the expiry of the operation's timeout,
+	 *         for work that was not attempted because the deadline had passed
+	 */
+	public ProtonTimeoutException newTimeoutException() {
+		return new ProtonTimeoutException(operation, Duration.ofNanos(timeoutNanos));
+	}
+
+	/**
+	 * Awaits the provided Proton call, recording the time spent waiting.
+	 *
+	 * @throws ProtonTimeoutException if the call does not complete before the
+	 *         operation's deadline, in which case it is cancelled
+	 */
+	public <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+		if(!isEnabled()) {
+			return get(future);
+		}
+		long t0 = System.nanoTime();
+		try {
+			return get(future);
+		} finally {
+			protonNanos += System.nanoTime() - t0;
+		}
+	}
+
+	/**
+	 * Records a document sent to or received from Proton.
+	 */
+	public void count(Document doc) {
+		if(isEnabled() && doc != null) {
+			documentCount++;
+			itemCount += doc.getItems().size();
+		}
+	}
+
+	public void count(Collection<Document> docs) {
+		if(isEnabled() && docs != null) {
+			docs.forEach(this::count);
+		}
+	}
+
+	/**
+	 * Performs a conversion between entities and documents, recording the time
+	 * it takes.
+	 */
+	public <T> T convert(Supplier<T> conversion) {
+		if(!isEnabled()) {
+			return conversion.get();
+		}
+		long t0 = System.nanoTime();
+		try {
+			return conversion.get();
+		} finally {
+			conversionNanos += System.nanoTime() - t0;
+		}
+	}
+
+	/**
+	 * Wraps a lazily-converted result stream, recording the time spent
+	 * producing each element as conversion time, excluding any time spent
+	 * waiting for Proton, and completing the operation when the stream is
+	 * exhausted or closed.
+	 */
+	public <T> Stream<T> track(Stream<T> stream) {
+		if(!isEnabled()) {
+			return stream;
+		}
+		Spliterator<T> delegate = stream.spliterator();
+		Spliterator<T> tracked = new Spliterators.AbstractSpliterator<T>(delegate.estimateSize(), delegate.characteristics() & ~(Spliterator.SIZED | Spliterator.SUBSIZED)) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				Object[] holder = new Object[1];
+				long protonBefore = protonNanos;
+				long t0 = System.nanoTime();
+				boolean advanced;
+				try {
+					advanced = delegate.tryAdvance(value -> holder[0] = value);
+				} catch(RuntimeException e) {
+					fail(e);
+					throw e;
+				}
+				conversionNanos += System.nanoTime() - t0 - (protonNanos - protonBefore);
+				if(!advanced) {
+					complete();
+					return false;
+				}
+				@SuppressWarnings("unchecked")
+				T value = (T)holder[0];
+				action.accept(value);
+				return true;
+			}
+		};
+		return StreamSupport.stream(tracked, false)
+			.onClose(stream::close)
+			.onClose(this::complete);
+	}
+
+	/**
+	 * Records the failure of the operation and completes it.
+	 */
+	public void fail(Throwable t) {
+		if(isEnabled() && failure == null) {
+			failure = t;
+		}
+		complete();
+	}
+
+	/**
+	 * Reports the operation to the listeners, if it has not already been
+	 * reported.
+	 */
+	public void complete() {
+		if(!isEnabled() || completed) {
+			return;
+		}
+		completed = true;
+		ProtonOperationEvent event = new ProtonOperationEvent(operation, entityName, dql, System.nanoTime() - start, protonNanos, conversionNanos, documentCount, itemCount, failure);
+		for(ProtonOperationListener listener : listeners) {
+			try {
+				listener.operationCompleted(event);
+			} catch(RuntimeException e) {
+				// Instrumentation must not affect the operation
+			}
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private <T> T get(Future<T> future) throws InterruptedException, ExecutionException {
+		if(timeoutNanos == 0) {
+			return future.get();
+		}
+		try {
+			// A call that has already completed is still returned after the deadline
+			return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		} catch(TimeoutException e) {
+			future.cancel(true);
+			ProtonTimeoutException timeout = newTimeoutException();
+			timeout.initCause(e);
+			throw timeout;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import com.hcl.domino.db.model.Document;
+
+/**
+ * {@link Spliterator} implementation that lazily reads Proton query results
+ * one page at a time.
+ *
+ * <p>At most one further page is requested ahead of consumption: the request
+ * is issued once the consumer reaches the middle of the current page, so
+ * short-circuiting operations that finish early in a page do not cause any
+ * additional Proton calls.</p>
+ *
+ * @since 1.0.0
+ */
+class PagedDocumentSpliterator extends Spliterators.AbstractSpliterator<Document> implements AutoCloseable {
+
+	private final BiFunction<Integer, Integer, Future<List<Document>>> pageReader;
+	private final int pageSize;
+	private final OperationTracker tracker;
+
+	/** The start index of the next page to request */
+	private long nextStart;
+	/** The number of documents still allowed to be requested, or -1 for unbounded */
+	private long remaining;
+
+	private List<Document> page = Collections.emptyList();
+	private int pageIndex;
+	private boolean lastPage;
+	private Future<List<Document>> pending;
+
+	/**
+	 * @param pageReader a function that requests a page of documents for the
+	 *        given start index and count
+	 * @param pageSize the number of documents to request per page
+	 * @param skip the number of initial documents to skip
+	 * @param limit the maximum number of documents to read, or a value less than
+	 *        {@code 1} to read all results
+	 * @param tracker the tracker for the operation reading the results
+	 */
+	public PagedDocumentSpliterator(BiFunction<Integer, Integer, Future<List<Document>>> pageReader, int pageSize, long skip, long limit, OperationTracker tracker) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+		this.pageReader = pageReader;
+		this.pageSize = pageSize;
+		this.tracker = tracker;
+		this.nextStart = skip;
+		this.remaining = limit < 1 ? -1 : limit;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Document> action) {
+		if(pageIndex >= page.size()) {
+			if(lastPage) {
+				return false;
+			}
+			if(pending == null) {
+				requestNextPage();
+			}
+			page = awaitPending();
+			pageIndex = 0;
+			if(page.size() < pageSize || remaining == 0) {
+				lastPage = true;
+			}
+			if(page.isEmpty()) {
+				return false;
+			}
+		}
+
+		Document doc = page.get(pageIndex++);
+		if(!lastPage && pending == null && pageIndex >= page.size() / 2) {
+			requestNextPage();
+		}
+		action.accept(doc);
+		return true;
+	}
+
+	@Override
+	public void close() {
+		if(pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+		lastPage = true;
+	}
+
+	private void requestNextPage() {
+		int count = remaining < 0 ? pageSize : (int)Math.min(pageSize, remaining);
+		pending = pageReader.apply((int)nextStart, count);
+		nextStart += count;
+		if(remaining > 0) {
+			remaining -= count;
+		}
+	}
+
+	private List<Document> awaitPending() {
+		try {
+			List<Document> result = tracker.await(pending);
+			tracker.count(result);
+			return result == null ? Collections.emptyList() : result;
+		} catch(Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			pending = null;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openntf.xsp.nosql.communication.driver.proton.ChangeEvent;
+import org.openntf.xsp.nosql.communication.driver.proton.ChangeFeed;
+import org.openntf.xsp.nosql.communication.driver.proton.ChangeFeedListener;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Implements {@link ChangeFeed} by querying a manager bound to the database
+ * and access token resolved when the feed was opened.
+ *
+ * @since 1.0.0
+ */
+class PollingChangeFeed implements ChangeFeed {
+	private final String entityName;
+	private final ProtonDocumentCollectionManager manager;
+	private final ChangeFeedListener listener;
+	private final ProtonDriverOptions options;
+	private final Consumer<PollingChangeFeed> onClose;
+
+	/** The UNIDs delivered so far, guarded by this feed's lock */
+	private final Set<String> knownUnids = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	/** Whether {@link #knownUnids} reflects all existing documents */
+	private boolean unidsComplete;
+	private volatile Instant highWaterMark;
+	private volatile Throwable lastFailure;
+	private final List<ScheduledFuture<?>> scheduled = new ArrayList<>(2);
+	private volatile boolean closed;
+
+	/**
+	 * @param entityName the entity type to follow
+	 * @param since the modification time from which to start, or {@code null}
+	 *        to start with all existing documents
+	 * @param manager a manager bound to the database and token to read with,
+	 *        which is closed with this feed
+	 * @param listener the listener to notify
+	 * @param options the options providing the overlap and page size
+	 * @param onClose called once when this feed is closed
+	 */
+	PollingChangeFeed(String entityName, Instant since, ProtonDocumentCollectionManager manager, ChangeFeedListener listener, ProtonDriverOptions options, Consumer<PollingChangeFeed> onClose) {
+		this.entityName = entityName;
+		this.highWaterMark = since;
+		this.manager = manager;
+		this.listener = listener;
+		this.options = options;
+		this.onClose = onClose;
+	}
+
+	/**
+	 * Schedules polls and, when enabled, deletion scans on the provided
+	 * scheduler.
+	 *
+	 * @param scheduler the scheduler to use
+	 * @param initialDelay the time in milliseconds before the first poll
+	 */
+	void schedule(ScheduledExecutorService scheduler, long initialDelay) {
+		synchronized(scheduled) {
+			checkOpen();
+			long pollInterval = options.getChangeFeedPollInterval();
+			scheduled.add(scheduler.scheduleWithFixedDelay(() -> runScheduled(this::poll), initialDelay, pollInterval, TimeUnit.MILLISECONDS));
+			long scanInterval = options.getChangeFeedDeletionScanInterval();
+			if(scanInterval > 0) {
+				scheduled.add(scheduler.scheduleWithFixedDelay(() -> runScheduled(this::scanDeletions), scanInterval, scanInterval, TimeUnit.MILLISECONDS));
+			}
+		}
+	}
+
+	@Override
+	public String getEntityName() {
+		return entityName;
+	}
+
+	@Override
+	public Optional<Instant> getHighWaterMark() {
+		return Optional.ofNullable(highWaterMark);
+	}
+
+	@Override
+	public synchronized void poll() {
+		checkOpen();
+		Instant start = Instant.now();
+		Instant since = highWaterMark;
+		manager.readModifiedSince(entityName, since, options.getChangeFeedPageSize(), this::deliverPage);
+		if(since == null) {
+			// A full read has seen every existing document
+			unidsComplete = true;
+		}
+		highWaterMark = start.minusMillis(options.getChangeFeedOverlap());
+	}
+
+	@Override
+	public synchronized void scanDeletions() {
+		checkOpen();
+		Set<String> existing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		existing.addAll(manager.readEntityUnids(entityName));
+		if(unidsComplete) {
+			List<ChangeEvent> events = new ArrayList<>();
+			for(String unid : knownUnids) {
+				if(!existing.contains(unid)) {
+					events.add(new ChangeEvent(ChangeEvent.Type.DELETE, entityName, unid, null));
+				}
+			}
+			events.forEach(event -> knownUnids.remove(event.getUnid()));
+			if(!events.isEmpty()) {
+				listener.changesReceived(events);
+			}
+		}
+		knownUnids.addAll(existing);
+		unidsComplete = true;
+	}
+
+	@Override
+	public Optional<Throwable> getLastFailure() {
+		return Optional.ofNullable(lastFailure);
+	}
+
+	@Override
+	public void close() {
+		synchronized(scheduled) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			scheduled.forEach(future -> future.cancel(false));
+			scheduled.clear();
+		}
+		synchronized(this) {
+			manager.close();
+		}
+		onClose.accept(this);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void deliverPage(Map<String, DocumentEntity> page) {
+		List<ChangeEvent> events = new ArrayList<>(page.size());
+		page.forEach((unid, entity) -> events.add(new ChangeEvent(ChangeEvent.Type.UPSERT, entityName, unid, entity)));
+		knownUnids.addAll(page.keySet());
+		listener.changesReceived(events);
+	}
+
+	private void runScheduled(Runnable task) {
+		if(closed) {
+			return;
+		}
+		try {
+			task.run();
+			lastFailure = null;
+		} catch(RuntimeException e) {
+			// Keep the schedule running and retry from the same high-water mark
+			lastFailure = e;
+		}
+	}
+
+	private void checkOpen() {
+		if(closed) {
+			throw new IllegalStateException("This change feed is closed");
+		}
+	}
+}
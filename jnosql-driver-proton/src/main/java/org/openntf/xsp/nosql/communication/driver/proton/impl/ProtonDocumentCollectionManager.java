@@ -15,15 +15,33 @@
  */
 package org.openntf.xsp.nosql.communication.driver.proton.impl;
 
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -34,15 +52,21 @@ import org.openntf.xsp.nosql.communication.driver.impl.AbstractDominoDocumentCol
 import org.openntf.xsp.nosql.communication.driver.impl.DQL;
 import org.openntf.xsp.nosql.communication.driver.impl.QueryConverter;
 import org.openntf.xsp.nosql.communication.driver.impl.DQL.DQLTerm;
-import org.openntf.xsp.nosql.communication.driver.impl.QueryConverter.QueryConverterResult;
 import org.openntf.xsp.nosql.communication.driver.proton.AccessTokenSupplier;
 import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.DeleteReport;
+import org.openntf.xsp.nosql.communication.driver.proton.KeysetPage;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkDeleteException;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkOperationException;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationEvent.Operation;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonTimeoutException;
 import org.openntf.xsp.nosql.mapping.extension.ViewQuery;
 
 import com.hcl.domino.db.model.BulkOperationException;
 import com.hcl.domino.db.model.ComputeOptions;
 import com.hcl.domino.db.model.Database;
 import com.hcl.domino.db.model.Document;
+import com.hcl.domino.db.model.Item;
 import com.hcl.domino.db.model.OptionalAccessToken;
 import com.hcl.domino.db.model.OptionalArg;
 import com.hcl.domino.db.model.OptionalCount;
@@ -50,23 +74,136 @@ import com.hcl.domino.db.model.OptionalItemNames;
 import com.hcl.domino.db.model.OptionalStart;
 
 import jakarta.nosql.Sort;
+import jakarta.nosql.document.DocumentCondition;
 import jakarta.nosql.document.DocumentDeleteQuery;
 import jakarta.nosql.document.DocumentEntity;
 import jakarta.nosql.document.DocumentQuery;
-import jakarta.nosql.mapping.Column;
 import jakarta.nosql.mapping.Pagination;
 import jakarta.nosql.mapping.Sorts;
 
 public class ProtonDocumentCollectionManager extends AbstractDominoDocumentCollectionManager {
+	private static class PendingDelete {
+		private final List<String> unids;
+		private final Future<?> future;
+		
+		PendingDelete(List<String> unids, Future<?> future) {
+			this.unids = unids;
+			this.future = future;
+		}
+	}
+	
+	/**
+	 * A page of keyset-paginated results, which can produce a token to resume
+	 * after any of its entities rather than only after the last one.
+	 */
+	static class Page {
+		private final List<DocumentEntity> entities;
+		/** The index in {@link #selected} of the document read for each entity */
+		private final int[] positions;
+		private final List<Document> selected;
+		private final boolean hasMore;
+		private final boolean missingKey;
+		private final long start;
+		private final int queryHash;
+		private final DocumentSorter sorter;
+		
+		Page(List<DocumentEntity> entities, int[] positions, List<Document> selected, boolean hasMore, boolean missingKey, long start, int queryHash, DocumentSorter sorter) {
+			this.entities = entities;
+			this.positions = positions;
+			this.selected = selected;
+			this.hasMore = hasMore;
+			this.missingKey = missingKey;
+			this.start = start;
+			this.queryHash = queryHash;
+			this.sorter = sorter;
+		}
+		
+		List<DocumentEntity> getEntities() {
+			return entities;
+		}
+		
+		/**
+		 * @param count the number of entities of this page that have been used
+		 * @return a token to read the results following those entities, or
+		 *         {@code null} if all entities were used and there are no more
+		 */
+		String getTokenAfter(int count) {
+			int index;
+			if(count == entities.size()) {
+				if(!hasMore) {
+					return null;
+				}
+				index = selected.size() - 1;
+			} else {
+				index = positions[count - 1];
+			}
+			Document last = selected.get(index);
+			long offset = start + index + 1;
+			KeysetToken token = missingKey ? KeysetToken.offset(queryHash, offset) : KeysetToken.after(queryHash, offset, sorter.toEntry(last).getKeys(), last.getUnid());
+			return token.toString();
+		}
+	}
+	
+	/** The page size used by {@link #selectPage} when the query has no limit */
+	public static final int DEFAULT_KEYSET_PAGE_SIZE = 100;
+	/** The base delay in milliseconds before retrying a failed delete chunk */
+	private static final long DELETE_RETRY_DELAY = 100;
 	
 	private final DatabaseSupplier supplier;
+	/** Identifies the logical database of {@link #supplier} across operations, for grouping queued writes */
+	private final Object databaseKey;
 	private final AccessTokenSupplier tokenSupplier;
 	private final ProtonEntityConverter entityConverter;
+	private final ProtonDriverOptions options;
+	private final CountCache countCache;
+	private final EntityCache entityCache;
+	private final DqlTemplateCache dqlCache;
+	private final WriteBehindQueue writeBehind;
+	private final ReadHedger hedger;
+	private final ViewPreloadCache viewCache;
+	private final boolean ownsConverter;
 	
 	public ProtonDocumentCollectionManager(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier) {
+		this(supplier, tokenSupplier, new ProtonDriverOptions());
+	}
+	
+	public ProtonDocumentCollectionManager(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options) {
+		this(supplier, supplier, tokenSupplier, options, new ProtonEntityConverter(options.getItemValueConverters(), options.isCompressJson()), null, null, null, null, newHedger(options), newViewCache(options), true);
+	}
+	
+	/**
+	 * Creates a manager that uses shared components owned by the caller, which
+	 * are therefore not closed with this manager.
+	 */
+	ProtonDocumentCollectionManager(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, ProtonEntityConverter entityConverter, CountCache countCache, EntityCache entityCache, DqlTemplateCache dqlCache, WriteBehindQueue writeBehind, ReadHedger hedger, ViewPreloadCache viewCache) {
+		this(supplier, supplier, tokenSupplier, options, entityConverter, countCache, entityCache, dqlCache, writeBehind, hedger, viewCache, false);
+	}
+	
+	/**
+	 * Creates a manager that uses shared components owned by the caller, for a
+	 * supplier bound to a single operation.
+	 * 
+	 * @param databaseKey a value identifying the database across operations,
+	 *        such as the unbound supplier it was resolved from, used to batch
+	 *        queued writes to the same database together
+	 */
+	ProtonDocumentCollectionManager(DatabaseSupplier supplier, Object databaseKey, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, ProtonEntityConverter entityConverter, CountCache countCache, EntityCache entityCache, DqlTemplateCache dqlCache, WriteBehindQueue writeBehind, ReadHedger hedger, ViewPreloadCache viewCache) {
+		this(supplier, databaseKey, tokenSupplier, options, entityConverter, countCache, entityCache, dqlCache, writeBehind, hedger, viewCache, false);
+	}
+	
+	private ProtonDocumentCollectionManager(DatabaseSupplier supplier, Object databaseKey, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, ProtonEntityConverter entityConverter, CountCache countCache, EntityCache entityCache, DqlTemplateCache dqlCache, WriteBehindQueue writeBehind, ReadHedger hedger, ViewPreloadCache viewCache, boolean ownsConverter) {
 		this.supplier = supplier;
+		this.databaseKey = databaseKey;
 		this.tokenSupplier = tokenSupplier;
-		this.entityConverter = new ProtonEntityConverter();
+		this.entityConverter = entityConverter;
+		this.options = options;
+		this.countCache = countCache;
+		this.entityCache = entityCache;
+		this.dqlCache = dqlCache;
+		this.writeBehind = writeBehind;
+		this.hedger = hedger;
+		this.viewCache = viewCache;
+		this.ownsConverter = ownsConverter;
 	}
 
 	@Override
@@ -75,10 +212,41 @@ public class ProtonDocumentCollectionManager extends AbstractDominoDocumentColle
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * Reads the documents in the provided view with a DQL query restricted to
+	 * the view's contents, so that the view's index is used. Key and category
+	 * filters in {@code viewQuery} are matched against the view's first sorted
+	 * column, which must be configured via
+	 * {@link ProtonDriverOptions#addViewKeyColumn(String, String)}.
+	 * 
+	 * <p>Results are not returned in view order unless {@code sorts} are
+	 * provided, in which case they are sorted by the items of the same names.
+	 * {@code maxLevel} is not applicable, since only documents are read.</p>
+	 */
 	@Override
 	public Stream<DocumentEntity> viewDocumentQuery(String entityName, String viewName, Pagination pagination,
 			Sorts sorts, int maxLevel, ViewQuery viewQuery, boolean singleResult) {
-		throw new UnsupportedOperationException();
+		long skip = pagination == null ? 0 : pagination.getSkip();
+		long limit = pagination == null ? 0 : pagination.getLimit();
+		if(singleResult) {
+			limit = 1;
+		}
+		List<Sort> sortList = sorts == null ? Collections.emptyList() : sorts.getSorts();
+		return viewDocuments(entityName, viewName, skip, limit, sortList, viewQuery);
+	}
+	
+	/**
+	 * Reads the documents in the provided view, applying the skip and limit
+	 * after any sorts.
+	 */
+	Stream<DocumentEntity> viewDocuments(String entityName, String viewName, long skip, long limit, List<Sort> sorts, ViewQuery viewQuery) {
+		OperationTracker tracker = track(Operation.VIEW_QUERY, entityName);
+		try {
+			return tracker.track(viewDocuments(entityName, viewName, skip, limit, sorts, viewQuery, tracker));
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		}
 	}
 
 	@Override
@@ -93,15 +261,27 @@ public class ProtonDocumentCollectionManager extends AbstractDominoDocumentColle
 
 	@Override
 	public DocumentEntity insert(DocumentEntity entity, boolean computeWithForm) {
+		if(!computeWithForm && writeBehind != null && writeBehind.isWriteBehind(entity.getName())) {
+			// The UNID is added to the entity once the queued write is flushed
+			writeBehind.insert(databaseKey, supplier.get(), tokenSupplier.get(), entityConverter, entity);
+			return entity;
+		}
+		OperationTracker tracker = track(Operation.INSERT, entity.getName());
 		ClassMapping mapping = getClassMapping(entity.getName());
 		Database database = supplier.get();
 		try {
-			Document doc = entityConverter.convertNoSQLEntity(entity, true, mapping);
-			doc = database.createDocument(doc, composeArgs(new ComputeOptions(computeWithForm, true))).get();
+			Document doc = tracker.convert(() -> entityConverter.convertNoSQLEntity(entity, true, mapping));
+			tracker.count(doc);
+			doc = tracker.await(database.createDocument(doc, composeArgs(new ComputeOptions(computeWithForm, true))));
+			invalidateCount(entity.getName());
+			invalidateViews(entity.getName());
 			entity.add(jakarta.nosql.document.Document.of(DominoConstants.FIELD_ID, doc.getUnid()));
 			return entity;
 		} catch (Exception e) {
+			tracker.fail(e);
 			throw new RuntimeException(e);
+		} finally {
+			tracker.complete();
 		}
 	}
 
@@ -111,28 +291,52 @@ public class ProtonDocumentCollectionManager extends AbstractDominoDocumentColle
 		if(!maybeId.isPresent()) {
 			// Then consider it an insert
 			return insert(entity, computeWithForm);
+		} else if(!computeWithForm && writeBehind != null && writeBehind.isWriteBehind(entity.getName())) {
+			String unid = maybeId.get().get(String.class);
+			invalidateEntity(unid);
+			writeBehind.update(databaseKey, supplier.get(), tokenSupplier.get(), entityConverter, unid, entity);
+			return entity;
 		} else {
+			OperationTracker tracker = track(Operation.UPDATE, entity.getName());
 			ClassMapping mapping = getClassMapping(entity.getName());
 			Database database = supplier.get();
 			try {
-				Document doc = entityConverter.convertNoSQLEntity(entity, true, mapping);
-				DQLTerm dql = DQL.item("@Text(@DocumentUniqueID)").isEqualTo(maybeId.get().get(String.class)); //$NON-NLS-1$
-				doc = database.upsertDocument(dql.toString(), doc, composeArgs(new ComputeOptions(computeWithForm, true))).get();
+				Document doc = tracker.convert(() -> entityConverter.convertNoSQLEntity(entity, true, mapping));
+				tracker.count(doc);
+				String unid = maybeId.get().get(String.class);
+				try {
+					tracker.await(database.replaceItemsByUnid(unid, doc, composeArgs(new ComputeOptions(computeWithForm, true))));
+				} finally {
+					invalidateEntity(unid);
+					invalidateViews(entity.getName());
+				}
 				return entity;
 			} catch (Exception e) {
+				tracker.fail(e);
 				throw new RuntimeException(e);
+			} finally {
+				tracker.complete();
 			}
 		}
 	}
 
 	@Override
 	public boolean existsById(String unid) {
-		Database database = supplier.get();
+		OperationTracker tracker = track(Operation.EXISTS_BY_ID, null);
 		try {
-			Document doc = database.readDocumentByUnid(unid, Collections.emptyList(), composeArgs()).get();
+			if(entityCache != null && entityCache.contains(unid, tokenSupplier.get())) {
+				return true;
+			}
+			Database database = supplier.get();
+			OptionalArg[] args = composeArgs();
+			Document doc = tracker.await(read(database, db -> db.readDocumentByUnid(unid, Collections.emptyList(), args), tracker));
+			tracker.count(doc);
 			return doc != null;
 		} catch (Exception e) {
+			tracker.fail(e);
 			throw new RuntimeException(e);
+		} finally {
+			tracker.complete();
 		}
 	}
 
@@ -143,82 +347,398 @@ public class ProtonDocumentCollectionManager extends AbstractDominoDocumentColle
 
 	@Override
 	public Optional<DocumentEntity> getById(String entityName, String id) {
-		ClassMapping mapping = getClassMapping(entityName);
-		Database database = supplier.get();
+		OperationTracker tracker = track(Operation.GET_BY_ID, entityName);
 		try {
+			boolean cached = entityCache != null && entityCache.isCached(entityName);
+			String token = cached ? tokenSupplier.get() : null;
+			long stamp = 0;
+			if(cached) {
+				Optional<DocumentEntity> result = entityCache.get(entityName, id, token);
+				if(result.isPresent()) {
+					return result;
+				}
+				stamp = entityCache.stamp();
+			}
+			
+			ClassMapping mapping = getClassMapping(entityName);
+			Database database = supplier.get();
 			List<String> itemNames = getItemNames(mapping);
 			
-			Document doc = database.readDocumentByUnid(id, itemNames, composeArgs()).get();
+			OptionalArg[] args = composeArgs();
+			Document doc = tracker.await(read(database, db -> db.readDocumentByUnid(id, itemNames, args), tracker));
+			tracker.count(doc);
 			
-			return entityConverter.convertDocuments(entityName, Arrays.asList(doc), mapping)
-				.findFirst();
+			Optional<DocumentEntity> result = tracker.convert(() -> entityConverter.convertDocuments(entityName, Arrays.asList(doc), mapping)
+				.findFirst());
+			if(cached && result.isPresent()) {
+				entityCache.put(entityName, id, token, result.get(), stamp);
+			}
+			return result;
 		} catch (BulkOperationException e) {
 			// Assume it doesn't exist
 			return Optional.empty();
 		} catch (Exception e) {
+			tracker.fail(e);
 			throw new RuntimeException(e);
+		} finally {
+			tracker.complete();
+		}
+	}
+
+	/**
+	 * Reads the entities with the provided UNIDs using one query per
+	 * {@link ProtonDriverOptions#getGetByIdsBatchSize() batch} of UNIDs, with all
+	 * batches issued before any is awaited.
+	 * 
+	 * @param entityName the entity type to read
+	 * @param ids the UNIDs to read
+	 * @return the found entities keyed by UNID, in the order of {@code ids};
+	 *         UNIDs of documents that do not exist or are not readable are
+	 *         omitted
+	 * @since 1.0.0
+	 */
+	public Map<String, DocumentEntity> getByIds(String entityName, Collection<String> ids) {
+		OperationTracker tracker = track(Operation.GET_BY_IDS, entityName);
+		try {
+			Set<String> unids = new LinkedHashSet<>(ids);
+			// Proton may return UNIDs in a different case than requested
+			Map<String, DocumentEntity> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			boolean cached = entityCache != null && entityCache.isCached(entityName);
+			String token = cached ? tokenSupplier.get() : null;
+			List<String> toRead = new ArrayList<>(unids.size());
+			for(String unid : unids) {
+				Optional<DocumentEntity> entity = cached ? entityCache.get(entityName, unid, token) : Optional.empty();
+				if(entity.isPresent()) {
+					found.put(unid, entity.get());
+				} else {
+					toRead.add(unid);
+				}
+			}
+			
+			if(!toRead.isEmpty()) {
+				long stamp = cached ? entityCache.stamp() : 0;
+				ClassMapping mapping = getClassMapping(entityName);
+				Database database = supplier.get();
+				List<Document> docs = readDocumentsByUnidQuery(database, toRead, getItemNames(mapping), tracker);
+				List<DocumentEntity> entities = tracker.convert(() -> entityConverter.convertDocuments(entityName, docs, mapping)
+					.collect(Collectors.toList()));
+				for(int i = 0; i < docs.size(); i++) {
+					String unid = docs.get(i).getUnid();
+					found.put(unid, entities.get(i));
+					if(cached) {
+						entityCache.put(entityName, unid, token, entities.get(i), stamp);
+					}
+				}
+			}
+			
+			Map<String, DocumentEntity> result = new LinkedHashMap<>();
+			for(String unid : unids) {
+				DocumentEntity entity = found.get(unid);
+				if(entity != null) {
+					result.put(unid, entity);
+				}
+			}
+			return result;
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
+		}
+	}
+	
+	/**
+	 * Determines which of the provided UNIDs refer to readable documents, using
+	 * one query per {@link ProtonDriverOptions#getGetByIdsBatchSize() batch} of
+	 * UNIDs that reads no items.
+	 * 
+	 * @param ids the UNIDs to check
+	 * @return a map of each requested UNID, in the order of {@code ids}, to
+	 *         whether the document exists and is readable
+	 * @since 1.0.0
+	 */
+	public Map<String, Boolean> existsByIds(Collection<String> ids) {
+		OperationTracker tracker = track(Operation.EXISTS_BY_IDS, null);
+		try {
+			Set<String> unids = new LinkedHashSet<>(ids);
+			Set<String> existing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			List<String> toRead = new ArrayList<>(unids.size());
+			String token = entityCache == null ? null : tokenSupplier.get();
+			for(String unid : unids) {
+				if(entityCache != null && entityCache.contains(unid, token)) {
+					existing.add(unid);
+				} else {
+					toRead.add(unid);
+				}
+			}
+			
+			if(!toRead.isEmpty()) {
+				Database database = supplier.get();
+				readDocumentsByUnidQuery(database, toRead, Collections.emptyList(), tracker)
+					.forEach(doc -> existing.add(doc.getUnid()));
+			}
+			
+			Map<String, Boolean> result = new LinkedHashMap<>();
+			for(String unid : unids) {
+				result.put(unid, existing.contains(unid));
+			}
+			return result;
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
 		}
 	}
 
 	@Override
 	public Iterable<DocumentEntity> insert(Iterable<DocumentEntity> entities) {
-		return StreamSupport.stream(entities.spliterator(), false)
-			.map(entity -> insert(entity, false))
+		List<DocumentEntity> all = StreamSupport.stream(entities.spliterator(), false)
+			.collect(Collectors.toList());
+		if(all.isEmpty()) {
+			return all;
+		}
+		
+		OperationTracker tracker = track(Operation.INSERT, all.get(0).getName());
+		Database database = supplier.get();
+		int batchSize = options.getInsertBatchSize();
+		List<DocumentEntity> succeeded = new ArrayList<>(all.size());
+		List<ProtonBulkOperationException.Failure> failures = new ArrayList<>();
+		try {
+			try {
+				for(int i = 0; i < all.size(); i += batchSize) {
+					List<DocumentEntity> batch = all.subList(i, Math.min(i + batchSize, all.size()));
+					insertBatch(database, batch, succeeded, failures, tracker);
+				}
+			} finally {
+				succeeded.stream()
+					.map(DocumentEntity::getName)
+					.distinct()
+					.forEach(name -> {
+						invalidateCount(name);
+						invalidateViews(name);
+					});
+			}
+			
+			if(!failures.isEmpty()) {
+				throw new ProtonBulkOperationException(succeeded, failures);
+			}
+			return all;
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
+		}
+	}
+
+	/**
+	 * Updates the provided entities in batches, issuing the UNID-based updates
+	 * of each batch concurrently. Entities without an ID are inserted in bulk.
+	 */
+	@Override
+	public Iterable<DocumentEntity> update(Iterable<DocumentEntity> entities) {
+		List<DocumentEntity> all = StreamSupport.stream(entities.spliterator(), false)
 			.collect(Collectors.toList());
+		if(all.isEmpty()) {
+			return all;
+		}
+		
+		OperationTracker tracker = track(Operation.UPDATE, all.get(0).getName());
+		Database database = supplier.get();
+		int batchSize = options.getUpdateBatchSize();
+		List<DocumentEntity> succeeded = new ArrayList<>(all.size());
+		List<ProtonBulkOperationException.Failure> failures = new ArrayList<>();
+		List<DocumentEntity> toInsert = new ArrayList<>();
+		try {
+			for(int i = 0; i < all.size(); i += batchSize) {
+				List<DocumentEntity> batch = all.subList(i, Math.min(i + batchSize, all.size()));
+				updateBatch(database, batch, toInsert, succeeded, failures, tracker);
+			}
+		} finally {
+			all.stream()
+				.map(DocumentEntity::getName)
+				.distinct()
+				.forEach(this::invalidateViews);
+			// Entities without an ID are reported separately by insert
+			if(!failures.isEmpty()) {
+				tracker.fail(failures.get(0).getCause());
+			} else {
+				tracker.complete();
+			}
+		}
+		if(!toInsert.isEmpty()) {
+			try {
+				insert(toInsert);
+				succeeded.addAll(toInsert);
+			} catch(ProtonBulkOperationException e) {
+				succeeded.addAll(e.getSucceeded());
+				failures.addAll(e.getFailures());
+			}
+		}
+		
+		if(!failures.isEmpty()) {
+			throw new ProtonBulkOperationException(succeeded, failures);
+		}
+		return all;
 	}
 
 	@Override
 	public void delete(DocumentDeleteQuery query) {
+		DeleteReport report = deleteWithReport(query);
+		if(!report.isComplete()) {
+			throw new ProtonBulkDeleteException(report);
+		}
+	}
+	
+	/**
+	 * Deletes the documents matching the provided query, reporting which
+	 * documents were deleted, were already missing, or could not be deleted.
+	 * 
+	 * <p>Documents are deleted by UNID in chunks of
+	 * {@link ProtonDriverOptions#getDeleteBatchSize()}, with up to
+	 * {@link ProtonDriverOptions#getDeleteParallelism()} chunks in flight at once.
+	 * For condition-based deletes, the UNIDs of matching documents are read
+	 * first. Blank UNIDs are ignored, and a query that lists only blank UNIDs
+	 * falls back to its condition.</p>
+	 * 
+	 * <p>A chunk that fails as a whole is retried up to
+	 * {@link ProtonDriverOptions#getDeleteRetries()} times only when the
+	 * failure looks transient, such as an I/O error or timeout; other failures
+	 * are reported for the chunk's UNIDs straight away.</p>
+	 * 
+	 * @param query the query identifying the documents to delete
+	 * @return a report of the outcome for each matching document
+	 * @throws IllegalArgumentException if the query lists only blank UNIDs and
+	 *         has no condition
+	 * @since 1.0.0
+	 */
+	public DeleteReport deleteWithReport(DocumentDeleteQuery query) {
+		OperationTracker tracker = track(Operation.DELETE, query.getDocumentCollection());
+		Database database = supplier.get();
+		List<String> unids = Collections.emptyList();
 		try {
-			Database database = supplier.get();
-			Collection<String> unids = query.getDocuments();
-			if(unids != null) {
-				unids = unids.stream()
-					.filter(unid -> unid != null && !unid.isEmpty())
-					.collect(Collectors.toSet());
-			}
-			if(unids != null && !unids.isEmpty()) {
-				database.deleteDocumentsByUnid((Set<String>)unids, composeArgs()).get();
+			Collection<String> requested = query.getDocuments();
+			List<String> listed = requested == null ? Collections.emptyList() : requested.stream()
+				.filter(unid -> unid != null && !unid.trim().isEmpty())
+				.distinct()
+				.collect(Collectors.toList());
+			if(!listed.isEmpty()) {
+				unids = listed;
 			} else if(query.getCondition().isPresent()) {
-				// Then do it via DQL
-				DQLTerm dql = QueryConverter.getCondition(query.getCondition().get());
-				database.deleteDocuments(dql.toString(), composeArgs()).get();
+				String dql = toDql(query.getCondition().get());
+				tracker.setDql(dql);
+				unids = readUnids(database, dql, tracker);
+			} else if(requested != null && !requested.isEmpty()) {
+				throw new IllegalArgumentException(MessageFormat.format("Delete query for {0} lists only blank UNIDs and has no condition", query.getDocumentCollection()));
+			}
+			return deleteByUnid(database, unids, tracker);
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
+			invalidateCount(query.getDocumentCollection());
+			invalidateViews(query.getDocumentCollection());
+			if(entityCache != null) {
+				entityCache.invalidateAll(unids);
 			}
-		} catch (BulkOperationException | InterruptedException | ExecutionException e) {
-			throw new RuntimeException(e);
 		}
 	}
 
 	@Override
 	public Stream<DocumentEntity> select(DocumentQuery query) {
+		OperationTracker tracker = track(Operation.SELECT, query.getDocumentCollection());
+		try {
+			return tracker.track(select(query, tracker));
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		}
+	}
+	
+	private Stream<DocumentEntity> select(DocumentQuery query, OperationTracker tracker) {
 		String entityName = query.getDocumentCollection();
 		ClassMapping mapping = getClassMapping(entityName);
 		
-		QueryConverterResult queryResult = QueryConverter.select(query);
+		String dql = toDql(query);
+		tracker.setDql(dql);
 		
-		long skip = queryResult.getSkip();
-		long limit = queryResult.getLimit();
+		long skip = query.getSkip();
+		long limit = query.getLimit();
+		if(skip > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(MessageFormat.format("Proton cannot skip more than {0} documents; use selectPage for deep pagination", Integer.MAX_VALUE));
+		}
+		if(limit > Integer.MAX_VALUE) {
+			limit = Integer.MAX_VALUE;
+		}
 		
-		// Sorting is not available in queries, and this is left as a reminder
-		//   if intentionally ignoring them
-		@SuppressWarnings("unused")
+		// Sorting is not available in queries, so it is applied client-side
 		List<Sort> sorts = query.getSorts();
 		
+		List<String> itemNames = getItemNames(query, mapping);
+		
 		Database database = supplier.get();
+		if(sorts != null && !sorts.isEmpty()) {
+			return selectSorted(database, entityName, mapping, itemNames, dql, sorts, skip, limit, tracker);
+		}
+		int pageSize = options.getSelectPageSize();
+		if(pageSize > 0) {
+			return selectPaged(database, entityName, mapping, itemNames, dql, skip, limit, pageSize, tracker);
+		}
+		return selectAll(database, entityName, mapping, itemNames, dql, skip, limit, tracker);
+	}
+	
+	private Stream<DocumentEntity> viewDocuments(String entityName, String viewName, long skip, long limit, List<Sort> sorts, ViewQuery viewQuery, OperationTracker tracker) {
+		ClassMapping mapping = getClassMapping(entityName);
+		
+		String dql = ViewQueryConverter.toDql(entityName, viewName, viewQuery, options.getViewKeyColumns().get(viewName));
+		tracker.setDql(dql);
+		
+		if(skip > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(MessageFormat.format("Proton cannot skip more than {0} documents", Integer.MAX_VALUE));
+		}
+		if(limit > Integer.MAX_VALUE) {
+			limit = Integer.MAX_VALUE;
+		}
+		
+		List<String> itemNames = getItemNames(mapping);
+		Database database = supplier.get();
+		if(!sorts.isEmpty()) {
+			return selectSorted(database, entityName, mapping, itemNames, dql, sorts, skip, limit, tracker);
+		}
+		if(viewCache != null) {
+			// Page through the preloaded document set, reading only the requested documents
+			List<String> unids = viewCache.get(entityName, dql, tokenSupplier.get(), () -> readUnids(database, dql, tracker));
+			int start = (int)Math.min(skip, unids.size());
+			int end = limit > 0 ? (int)Math.min(start + limit, unids.size()) : unids.size();
+			List<Document> docs = readDocumentsInOrder(database, unids.subList(start, end), itemNames, tracker);
+			return entityConverter.convertDocuments(entityName, docs, mapping);
+		}
+		int pageSize = options.getSelectPageSize();
+		if(pageSize > 0) {
+			return selectPaged(database, entityName, mapping, itemNames, dql, skip, limit, pageSize, tracker);
+		}
+		return selectAll(database, entityName, mapping, itemNames, dql, skip, limit, tracker);
+	}
+	
+	/**
+	 * Reads the requested window of the results of the provided DQL query
+	 * with a single call.
+	 */
+	private Stream<DocumentEntity> selectAll(Database database, String entityName, ClassMapping mapping, List<String> itemNames, String dql, long skip, long limit, OperationTracker tracker) {
 		try {
-			List<String> itemNames = getItemNames(mapping);
 			OptionalItemNames itemNamesArg = new OptionalItemNames(itemNames);
 			OptionalStart startArg = new OptionalStart((int)skip);
 			OptionalCount countArg = new OptionalCount(limit < 1 ? Integer.MAX_VALUE : (int)limit);
 			
-			List<Document> docs = database.readDocuments(
-				queryResult.getStatement().toString(),
-				composeArgs(
-					itemNamesArg,
-					startArg,
-					countArg
-				)
-			).get();
+			OptionalArg[] args = composeArgs(
+				itemNamesArg,
+				startArg,
+				countArg
+			);
+			List<Document> docs = tracker.await(read(database, db -> db.readDocuments(dql, args), tracker));
+			tracker.count(docs);
 			
 			return entityConverter.convertDocuments(entityName, docs, mapping);
 		} catch (Exception e) {
@@ -226,37 +746,741 @@ public class ProtonDocumentCollectionManager extends AbstractDominoDocumentColle
 		}
 	}
 
+	/**
+	 * Executes the provided query using keyset pagination, returning a single
+	 * page of results along with a token to retrieve the following page.
+	 * 
+	 * <p>Results are ordered by the query's sorts, with ties broken by UNID.
+	 * Rather than skipping previous results, each following page restricts the
+	 * query to documents after the last sort key and UNID of the previous page.
+	 * When that can't be expressed in DQL with the same ordering, such as for
+	 * text sort values or results with missing sort values, the following page
+	 * skips the previous results instead. The query's limit determines the page
+	 * size, and its skip value is applied only to the first page.</p>
+	 * 
+	 * @param query the query to execute
+	 * @param continuationToken the token from the previous page, or {@code null}
+	 *        to retrieve the first page
+	 * @return the requested page of results
+	 * @throws IllegalArgumentException if {@code continuationToken} is invalid
+	 *         or was produced by a different query
+	 * @since 1.0.0
+	 */
+	public KeysetPage selectPage(DocumentQuery query, String continuationToken) {
+		Page page = selectPage(query, continuationToken, query.getSkip(), getKeysetPageSize(query));
+		return new KeysetPage(page.getEntities(), page.getTokenAfter(page.getEntities().size()));
+	}
+	
+	/**
+	 * Reads a page of the query's results in the same way as
+	 * {@link #selectPage(DocumentQuery, String)}, but with the provided skip
+	 * and page size in place of the query's.
+	 * 
+	 * @param query the query to execute
+	 * @param continuationToken the token from a previous page, or {@code null}
+	 *        to retrieve the first page
+	 * @param skip the number of results to skip on the first page
+	 * @param pageSize the maximum number of entities to read
+	 * @return the requested page of results
+	 */
+	Page selectPage(DocumentQuery query, String continuationToken, long skip, int pageSize) {
+		OperationTracker tracker = track(Operation.SELECT_PAGE, query.getDocumentCollection());
+		try {
+			return selectPage(query, continuationToken, skip, pageSize, tracker);
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
+		}
+	}
+	
+	private Page selectPage(DocumentQuery query, String continuationToken, long firstSkip, int pageSize, OperationTracker tracker) {
+		String entityName = query.getDocumentCollection();
+		ClassMapping mapping = getClassMapping(entityName);
+		List<Sort> sorts = query.getSorts() == null ? Collections.emptyList() : query.getSorts();
+		DocumentSorter sorter = new DocumentSorter(sorts, true);
+		String baseDql = toDql(query);
+		int queryHash = Objects.hash(baseDql, sorts.stream().map(sort -> sort.getName() + ' ' + sort.getType()).collect(Collectors.toList()));
+		
+		String dql = baseDql;
+		long start;
+		int skip;
+		if(continuationToken == null || continuationToken.isEmpty()) {
+			start = firstSkip;
+			skip = Math.toIntExact(start);
+		} else {
+			KeysetToken token = KeysetToken.parse(continuationToken, queryHash);
+			start = token.getOffset();
+			if(token.isKeyset()) {
+				dql = "(" + baseDql + ") and (" + token.toPredicate(sorter) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				skip = 0;
+			} else {
+				// The previous page ended on a value that can't be expressed in DQL
+				skip = Math.toIntExact(start);
+			}
+		}
+		
+		tracker.setDql(dql);
+		
+		Database database = supplier.get();
+		PagedDocumentSpliterator keys = newPagedSpliterator(database, dql, sorter.getSortItemNames(), 0, 0, options.getCountPageSize(), tracker);
+		// DQL predicates can't match missing values, so their presence rules out a keyset token
+		boolean[] missingKey = new boolean[1];
+		// Read one extra to determine whether there is a following page
+		List<Document> selected;
+		try {
+			Iterator<Document> scanned = StreamSupport.stream(keys, false)
+				.peek(doc -> missingKey[0] = missingKey[0] || sorter.isMissingKey(doc))
+				.iterator();
+			selected = sorter.top(scanned, skip, pageSize + 1);
+		} finally {
+			keys.close();
+		}
+		boolean hasMore = selected.size() > pageSize;
+		if(hasMore) {
+			selected = selected.subList(0, pageSize);
+		}
+		
+		List<String> unids = selected.stream()
+			.map(Document::getUnid)
+			.collect(Collectors.toList());
+		List<Document> docs = readDocumentsInOrder(database, unids, getItemNames(query, mapping), tracker);
+		List<DocumentEntity> entities = tracker.convert(() -> entityConverter.convertDocuments(entityName, docs, mapping)
+			.collect(Collectors.toList()));
+		
+		// Documents removed since the keys were read are skipped, so match each to its key
+		int[] positions = new int[docs.size()];
+		int index = 0;
+		for(int i = 0; i < docs.size(); i++) {
+			while(!selected.get(index).getUnid().equalsIgnoreCase(docs.get(i).getUnid())) {
+				index++;
+			}
+			positions[i] = index++;
+		}
+		return new Page(entities, positions, selected, hasMore, missingKey[0], start, queryHash, sorter);
+	}
+
 	@Override
 	public long count(String documentCollection) {
-		DQLTerm dql = DQL.item(DominoConstants.FIELD_NAME).isEqualTo(documentCollection);
-		Database database = supplier.get();
+		OperationTracker tracker = track(Operation.COUNT, documentCollection);
 		try {
-			return database.readDocuments(dql.toString(), composeArgs()).get().size();
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			if(countCache != null) {
+				return countCache.get(documentCollection, tokenSupplier.get(), () -> countUncached(documentCollection, tracker));
+			} else {
+				return countUncached(documentCollection, tracker);
+			}
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
+		}
+	}
+
+	/**
+	 * Reads the documents of the provided entity type modified at or after the
+	 * provided time, passing them to the consumer one page at a time.
+	 * 
+	 * @param entityName the entity type to read
+	 * @param since the earliest modification time to read, or {@code null} to
+	 *        read all documents of the type
+	 * @param pageSize the number of documents read per call
+	 * @param consumer receives each page of entities, keyed by UNID
+	 */
+	void readModifiedSince(String entityName, Instant since, int pageSize, Consumer<Map<String, DocumentEntity>> consumer) {
+		OperationTracker tracker = track(Operation.CHANGE_FEED, entityName);
+		try {
+			String dql = DQL.item(DominoConstants.FIELD_NAME).isEqualTo(entityName).toString();
+			if(since != null) {
+				dql = "(" + dql + ") and @ModifiedInThisFile >= " + KeysetToken.toDateTimeLiteral(since); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			tracker.setDql(dql);
+			ClassMapping mapping = getClassMapping(entityName);
+			Database database = supplier.get();
+			PagedDocumentSpliterator spliterator = newPagedSpliterator(database, dql, getItemNames(mapping), 0, 0, pageSize, tracker);
+			try {
+				List<Document> page = new ArrayList<>(pageSize);
+				boolean more = true;
+				while(more) {
+					more = spliterator.tryAdvance(page::add);
+					if(page.size() >= pageSize || (!more && !page.isEmpty())) {
+						List<Document> docs = page;
+						List<DocumentEntity> entities = tracker.convert(() -> entityConverter.convertDocuments(entityName, docs, mapping)
+							.collect(Collectors.toList()));
+						Map<String, DocumentEntity> result = new LinkedHashMap<>();
+						for(int i = 0; i < docs.size(); i++) {
+							result.put(docs.get(i).getUnid(), entities.get(i));
+						}
+						consumer.accept(result);
+						page = new ArrayList<>(pageSize);
+					}
+				}
+			} finally {
+				spliterator.close();
+			}
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
+		}
+	}
+	
+	/**
+	 * Reads the UNIDs of all documents of the provided entity type without
+	 * reading any items.
+	 */
+	List<String> readEntityUnids(String entityName) {
+		OperationTracker tracker = track(Operation.CHANGE_FEED, entityName);
+		try {
+			String dql = DQL.item(DominoConstants.FIELD_NAME).isEqualTo(entityName).toString();
+			tracker.setDql(dql);
+			return readUnids(supplier.get(), dql, tracker);
+		} catch(RuntimeException e) {
+			tracker.fail(e);
+			throw e;
+		} finally {
+			tracker.complete();
 		}
 	}
 
 	@Override
 	public void close() {
-		
+		if(ownsConverter) {
+			entityConverter.close();
+		}
 	}
 
-	private List<String> getItemNames(ClassMapping mapping) {
-		return mapping.getFields()
-			.stream()
-			.map(f -> f.getNativeField())
-			.map(f -> {
-				Column col = f.getAnnotation(Column.class);
-				if(col == null) {
-					return null;
+	/**
+	 * Counts the documents in the collection by paging through the matching
+	 * documents without requesting any items, so only UNIDs are transferred.
+	 */
+	private long countUncached(String documentCollection, OperationTracker tracker) {
+		DQLTerm dql = DQL.item(DominoConstants.FIELD_NAME).isEqualTo(documentCollection);
+		tracker.setDql(dql.toString());
+		Database database = supplier.get();
+		PagedDocumentSpliterator spliterator = newPagedSpliterator(database, dql.toString(), Collections.emptyList(), 0, 0, options.getCountPageSize(), tracker);
+		long count = 0;
+		while(spliterator.tryAdvance(doc -> {})) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Determines whether a failed Proton call may succeed if repeated, which
+	 * is assumed when an I/O error or timeout is among its causes. Errors
+	 * reported by the server, such as for access or validation, are not
+	 * transient.
+	 */
+	static boolean isTransient(Throwable t) {
+		// Bound the walk in case of a cyclic cause chain
+		Throwable cause = t;
+		for(int i = 0; cause != null && i < 16; i++) {
+			if(cause instanceof IOException || cause instanceof TimeoutException) {
+				return true;
+			}
+			cause = cause.getCause();
+		}
+		return false;
+	}
+	
+	private void invalidateEntity(String unid) {
+		if(entityCache != null && unid != null) {
+			entityCache.invalidate(unid);
+		}
+	}
+	
+	private void invalidateCount(String documentCollection) {
+		if(countCache != null && documentCollection != null) {
+			countCache.invalidate(documentCollection);
+		}
+	}
+	
+	private void invalidateViews(String entityName) {
+		if(viewCache != null && entityName != null) {
+			viewCache.invalidate(entityName);
+		}
+	}
+	
+	/**
+	 * Reads the results of the provided DQL query lazily in pages of {@code pageSize}
+	 * documents as the returned stream is consumed.
+	 */
+	private Stream<DocumentEntity> selectPaged(Database database, String entityName, ClassMapping mapping, List<String> itemNames, String dql, long skip, long limit, int pageSize, OperationTracker tracker) {
+		PagedDocumentSpliterator spliterator = newPagedSpliterator(database, dql, itemNames, skip, limit, pageSize, tracker);
+		Stream<Document> docs = StreamSupport.stream(spliterator, false)
+			.onClose(spliterator::close);
+		return entityConverter.convertDocuments(entityName, docs, mapping);
+	}
+	
+	/**
+	 * Applies the provided sorts client-side. When the query has a limit, only
+	 * the sort keys of the matching documents are read and a bounded top-K
+	 * selection is made, after which the full items of the selected documents
+	 * are read with batched UNID queries.
+	 */
+	private Stream<DocumentEntity> selectSorted(Database database, String entityName, ClassMapping mapping, List<String> itemNames, String dql, List<Sort> sorts, long skip, long limit, OperationTracker tracker) {
+		DocumentSorter sorter = new DocumentSorter(sorts);
+		if(limit > 0 && skip + limit <= Integer.MAX_VALUE) {
+			PagedDocumentSpliterator keys = newPagedSpliterator(database, dql, sorter.getSortItemNames(), 0, 0, options.getCountPageSize(), tracker);
+			List<Document> selected;
+			try {
+				selected = sorter.top(Spliterators.iterator(keys), (int)skip, (int)limit);
+			} finally {
+				keys.close();
+			}
+			List<String> unids = selected.stream()
+				.map(Document::getUnid)
+				.collect(Collectors.toList());
+			return entityConverter.convertDocuments(entityName, readDocumentsInOrder(database, unids, itemNames, tracker), mapping);
+		} else {
+			List<String> allItemNames = new ArrayList<>(itemNames);
+			sorter.getSortItemNames().stream()
+				.filter(name -> !allItemNames.contains(name))
+				.forEach(allItemNames::add);
+			try {
+				OptionalArg[] args = composeArgs(
+					new OptionalItemNames(allItemNames),
+					new OptionalStart(0),
+					new OptionalCount(Integer.MAX_VALUE)
+				);
+				List<Document> docs = tracker.await(read(database, db -> db.readDocuments(dql, args), tracker));
+				tracker.count(docs);
+				Stream<Document> sorted = sorter.sort(docs).stream().skip(skip);
+				if(limit > 0) {
+					sorted = sorted.limit(limit);
+				}
+				return entityConverter.convertDocuments(entityName, sorted, mapping);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the UNIDs of all documents matching the provided DQL query.
+	 */
+	private List<String> readUnids(Database database, String dql, OperationTracker tracker) {
+		PagedDocumentSpliterator docs = newPagedSpliterator(database, dql, Collections.emptyList(), 0, 0, options.getCountPageSize(), tracker);
+		try {
+			return StreamSupport.stream(docs, false)
+				.map(Document::getUnid)
+				.collect(Collectors.toList());
+		} finally {
+			docs.close();
+		}
+	}
+	
+	/**
+	 * Deletes the provided UNIDs in chunks, keeping a bounded number of chunks
+	 * in flight. Chunks are awaited in the order they were issued. Once the
+	 * operation's deadline has passed, no further chunks are issued and their
+	 * UNIDs are reported as failed with a {@link ProtonTimeoutException}.
+	 */
+	private DeleteReport deleteByUnid(Database database, List<String> unids, OperationTracker tracker) {
+		List<String> deleted = new ArrayList<>(unids.size());
+		List<String> missing = new ArrayList<>();
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		
+		int batchSize = options.getDeleteBatchSize();
+		int parallelism = options.getDeleteParallelism();
+		Deque<PendingDelete> inFlight = new ArrayDeque<>(parallelism);
+		int next = 0;
+		while(next < unids.size() || !inFlight.isEmpty()) {
+			if(next < unids.size() && tracker.isExpired()) {
+				ProtonTimeoutException timeout = tracker.newTimeoutException();
+				unids.subList(next, unids.size()).forEach(unid -> failures.put(unid, timeout));
+				next = unids.size();
+			}
+			while(next < unids.size() && inFlight.size() < parallelism) {
+				List<String> chunk = unids.subList(next, Math.min(next + batchSize, unids.size()));
+				next += chunk.size();
+				inFlight.add(new PendingDelete(chunk, database.deleteDocumentsByUnid(new HashSet<>(chunk), composeArgs())));
+			}
+			awaitDelete(database, inFlight.poll(), deleted, missing, failures, tracker);
+		}
+		return new DeleteReport(deleted, missing, failures);
+	}
+	
+	/**
+	 * Awaits a chunk deletion. When Proton reports per-document errors, each
+	 * UNID is resolved individually; other transient failures are retried for
+	 * the whole chunk with exponential backoff. If the chunk does not complete before the
+	 * operation's deadline, its UNIDs are reported as failed.
+	 */
+	private void awaitDelete(Database database, PendingDelete pending, List<String> deleted, List<String> missing, Map<String, Throwable> failures, OperationTracker tracker) {
+		Future<?> future = pending.future;
+		int attempt = 0;
+		while(true) {
+			try {
+				tracker.await(future);
+				deleted.addAll(pending.unids);
+				return;
+			} catch(BulkOperationException e) {
+				resolveDeletes(database, pending.unids, deleted, missing, failures, tracker);
+				return;
+			} catch(ProtonTimeoutException e) {
+				pending.unids.forEach(unid -> failures.put(unid, e));
+				return;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				if(attempt >= options.getDeleteRetries() || tracker.isExpired() || !isTransient(cause)) {
+					pending.unids.forEach(unid -> failures.put(unid, cause));
+					return;
+				}
+				try {
+					TimeUnit.MILLISECONDS.sleep(DELETE_RETRY_DELAY << attempt);
+				} catch(InterruptedException e2) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e2);
+				}
+				attempt++;
+				future = database.deleteDocumentsByUnid(new HashSet<>(pending.unids), composeArgs());
+			}
+		}
+	}
+	
+	/**
+	 * Deletes each of the provided UNIDs individually, classifying those that
+	 * fail as missing when the document can no longer be read.
+	 */
+	private void resolveDeletes(Database database, List<String> unids, List<String> deleted, List<String> missing, Map<String, Throwable> failures, OperationTracker tracker) {
+		List<Future<?>> pending = new ArrayList<>(unids.size());
+		for(String unid : unids) {
+			pending.add(database.deleteDocumentsByUnid(Collections.singleton(unid), composeArgs()));
+		}
+		Map<String, Throwable> failed = new LinkedHashMap<>();
+		for(int i = 0; i < pending.size(); i++) {
+			try {
+				tracker.await(pending.get(i));
+				deleted.add(unids.get(i));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch(Exception e) {
+				failed.put(unids.get(i), e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e);
+			}
+		}
+		if(failed.isEmpty()) {
+			return;
+		}
+		
+		Set<String> existing;
+		try {
+			existing = readDocumentsByUnid(database, new ArrayList<>(failed.keySet()), Collections.emptyList(), tracker)
+				.stream()
+				.map(Document::getUnid)
+				.collect(Collectors.toSet());
+		} catch(RuntimeException e) {
+			// Without knowing which documents remain, report them all as failed
+			failures.putAll(failed);
+			return;
+		}
+		failed.forEach((unid, cause) -> {
+			if(existing.contains(unid)) {
+				failures.put(unid, cause);
+			} else {
+				missing.add(unid);
+			}
+		});
+	}
+	
+	/**
+	 * Reads the documents with the provided UNIDs, issuing all reads before
+	 * awaiting any of them. Documents that no longer exist or are not readable
+	 * are omitted from the result, which is otherwise in the order of
+	 * {@code unids}.
+	 */
+	private List<Document> readDocumentsByUnid(Database database, List<String> unids, List<String> itemNames, OperationTracker tracker) {
+		OptionalArg[] args = composeArgs();
+		List<Future<Document>> pending = new ArrayList<>(unids.size());
+		for(String unid : unids) {
+			pending.add(read(database, db -> db.readDocumentByUnid(unid, itemNames, args), tracker));
+		}
+		List<Document> result = new ArrayList<>(unids.size());
+		for(int i = 0; i < pending.size(); i++) {
+			try {
+				Document doc = tracker.await(pending.get(i));
+				if(doc != null) {
+					tracker.count(doc);
+					result.add(doc);
 				}
-				return col.value().isEmpty() ? f.getName() : col.value();
-			})
+			} catch(BulkOperationException e) {
+				// Assume it was deleted or is not readable
+			} catch(Exception e) {
+				// Don't leave the remaining reads running for a failed operation
+				pending.subList(i + 1, pending.size()).forEach(future -> future.cancel(true));
+				throw new RuntimeException(e);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Reads the documents with the provided UNIDs with
+	 * {@link #readDocumentsByUnidQuery}, returning them in the order of
+	 * {@code unids}. Documents that are not found are omitted.
+	 */
+	private List<Document> readDocumentsInOrder(Database database, List<String> unids, List<String> itemNames, OperationTracker tracker) {
+		Map<String, Document> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		readDocumentsByUnidQuery(database, unids, itemNames, tracker).forEach(doc -> found.put(doc.getUnid(), doc));
+		return unids.stream()
+			.map(found::get)
 			.filter(Objects::nonNull)
 			.collect(Collectors.toList());
 	}
 	
+	/**
+	 * Reads the documents with the provided UNIDs by matching them in DQL
+	 * queries of up to {@link ProtonDriverOptions#getGetByIdsBatchSize()} UNIDs
+	 * each, issuing all queries before awaiting any of them. Documents that do
+	 * not exist or are not readable are not matched, and so are omitted from
+	 * the result. If Proton rejects a query, its UNIDs are read individually.
+	 */
+	private List<Document> readDocumentsByUnidQuery(Database database, List<String> unids, List<String> itemNames, OperationTracker tracker) {
+		int batchSize = options.getGetByIdsBatchSize();
+		List<List<String>> batches = new ArrayList<>();
+		List<Future<List<Document>>> pending = new ArrayList<>();
+		for(int i = 0; i < unids.size(); i += batchSize) {
+			List<String> batch = unids.subList(i, Math.min(i + batchSize, unids.size()));
+			String dql = batch.stream()
+				.map(unid -> "'" + unid.replace("'", "''") + "'") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				.collect(Collectors.joining(", ", "@DocumentUniqueID in (", ")")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			if(i == 0) {
+				// Operations that read their matches by UNID report their own query
+				tracker.setDqlIfAbsent(dql);
+			}
+			OptionalArg[] args = composeArgs(
+				new OptionalItemNames(itemNames),
+				new OptionalStart(0),
+				new OptionalCount(batch.size())
+			);
+			batches.add(batch);
+			pending.add(read(database, db -> db.readDocuments(dql, args), tracker));
+		}
+		
+		List<Document> result = new ArrayList<>(unids.size());
+		for(int i = 0; i < pending.size(); i++) {
+			try {
+				List<Document> docs = tracker.await(pending.get(i));
+				tracker.count(docs);
+				if(docs != null) {
+					result.addAll(docs);
+				}
+			} catch(BulkOperationException | ExecutionException e) {
+				result.addAll(readDocumentsByUnid(database, batches.get(i), itemNames, tracker));
+			} catch(Exception e) {
+				pending.subList(i + 1, pending.size()).forEach(future -> future.cancel(true));
+				throw new RuntimeException(e);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Creates a spliterator that lazily reads the results of the provided DQL
+	 * query in pages. The access token is resolved immediately, since the
+	 * results may be consumed outside the current context.
+	 */
+	private PagedDocumentSpliterator newPagedSpliterator(Database database, String dql, List<String> itemNames, long skip, long limit, int pageSize, OperationTracker tracker) {
+		OptionalArg[] baseArgs = composeArgs(new OptionalItemNames(itemNames));
+		return new PagedDocumentSpliterator(
+			(start, count) -> {
+				OptionalArg[] args = Arrays.copyOf(baseArgs, baseArgs.length + 2);
+				args[baseArgs.length] = new OptionalStart(start);
+				args[baseArgs.length + 1] = new OptionalCount(count);
+				return read(database, db -> db.readDocuments(dql, args), tracker);
+			},
+			pageSize,
+			skip,
+			limit,
+			tracker
+		);
+	}
+	
+	/**
+	 * Converts and creates the provided entities with a single multi-document
+	 * call. Proton returns one result per requested document, in request
+	 * order, so each entity receives the UNID at its position. Entities whose
+	 * result has no UNID were not created, and are created individually to
+	 * identify the cause. When the call as a whole fails, it is unknown which
+	 * documents exist, so the batch is reported as failed rather than retried,
+	 * which could duplicate documents.
+	 */
+	private void insertBatch(Database database, List<DocumentEntity> batch, List<DocumentEntity> succeeded, List<ProtonBulkOperationException.Failure> failures, OperationTracker tracker) {
+		List<DocumentEntity> toCreate = new ArrayList<>(batch.size());
+		List<Document> docs = new ArrayList<>(batch.size());
+		for(DocumentEntity entity : batch) {
+			try {
+				ClassMapping mapping = getClassMapping(entity.getName());
+				docs.add(tracker.convert(() -> entityConverter.convertNoSQLEntity(entity, true, mapping)));
+				toCreate.add(entity);
+			} catch(Exception e) {
+				failures.add(new ProtonBulkOperationException.Failure(entity, e));
+			}
+		}
+		if(toCreate.isEmpty()) {
+			return;
+		}
+		
+		tracker.count(docs);
+		List<Document> created;
+		try {
+			created = tracker.await(database.createDocuments(docs, composeArgs(new ComputeOptions(false, true))));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			toCreate.forEach(entity -> failures.add(new ProtonBulkOperationException.Failure(entity, e)));
+			return;
+		} catch(Exception e) {
+			toCreate.forEach(entity -> failures.add(new ProtonBulkOperationException.Failure(entity, e)));
+			return;
+		}
+		
+		if(created == null || created.size() != toCreate.size()) {
+			IllegalStateException e = new IllegalStateException(MessageFormat.format("Expected {0} created documents but received {1}", toCreate.size(), created == null ? 0 : created.size()));
+			toCreate.forEach(entity -> failures.add(new ProtonBulkOperationException.Failure(entity, e)));
+			return;
+		}
+		for(int i = 0; i < toCreate.size(); i++) {
+			DocumentEntity entity = toCreate.get(i);
+			Document result = created.get(i);
+			String unid = result == null ? null : result.getUnid();
+			if(unid != null && !unid.isEmpty()) {
+				entity.add(jakarta.nosql.document.Document.of(DominoConstants.FIELD_ID, unid));
+				succeeded.add(entity);
+				continue;
+			}
+			try {
+				Document doc = tracker.await(database.createDocument(docs.get(i), composeArgs(new ComputeOptions(false, true))));
+				entity.add(jakarta.nosql.document.Document.of(DominoConstants.FIELD_ID, doc.getUnid()));
+				succeeded.add(entity);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.add(new ProtonBulkOperationException.Failure(entity, e));
+			} catch(Exception e) {
+				failures.add(new ProtonBulkOperationException.Failure(entity, e));
+			}
+		}
+	}
+
+	/**
+	 * Issues UNID-based updates for all entities in the batch before awaiting
+	 * any of them, so that the batch costs roughly one round trip.
+	 */
+	private void updateBatch(Database database, List<DocumentEntity> batch, List<DocumentEntity> toInsert, List<DocumentEntity> succeeded, List<ProtonBulkOperationException.Failure> failures, OperationTracker tracker) {
+		List<DocumentEntity> pendingEntities = new ArrayList<>(batch.size());
+		List<Future<?>> pending = new ArrayList<>(batch.size());
+		for(DocumentEntity entity : batch) {
+			Optional<jakarta.nosql.document.Document> maybeId = entity.find(DominoConstants.FIELD_ID);
+			if(!maybeId.isPresent()) {
+				toInsert.add(entity);
+				continue;
+			}
+			try {
+				ClassMapping mapping = getClassMapping(entity.getName());
+				Document doc = tracker.convert(() -> entityConverter.convertNoSQLEntity(entity, true, mapping));
+				tracker.count(doc);
+				String unid = maybeId.get().get(String.class);
+				invalidateEntity(unid);
+				pending.add(database.replaceItemsByUnid(unid, doc, composeArgs(new ComputeOptions(false, true))));
+				pendingEntities.add(entity);
+			} catch(Exception e) {
+				failures.add(new ProtonBulkOperationException.Failure(entity, e));
+			}
+		}
+		for(int i = 0; i < pending.size(); i++) {
+			DocumentEntity entity = pendingEntities.get(i);
+			try {
+				tracker.await(pending.get(i));
+				succeeded.add(entity);
+			} catch(Exception e) {
+				failures.add(new ProtonBulkOperationException.Failure(entity, e));
+			}
+		}
+	}
+
+	private OperationTracker track(Operation operation, String entityName) {
+		return OperationTracker.start(options.getOperationListeners(), operation, entityName, options.getOperationTimeout(operation));
+	}
+	
+	/**
+	 * Issues an idempotent read, hedging it against the alternate database when
+	 * hedging is configured and the tracked operation is eligible.
+	 */
+	private <T> Future<T> read(Database database, Function<Database, Future<T>> call, OperationTracker tracker) {
+		if(hedger == null) {
+			return call.apply(database);
+		}
+		return hedger.read(tracker.getOperation(), database, call);
+	}
+	
+	static ReadHedger newHedger(ProtonDriverOptions options) {
+		if(options.getHedgeSupplier() == null) {
+			return null;
+		}
+		return new ReadHedger(options.getHedgeSupplier(), options.getHedgePercentile(), options.getHedgeMinDelay());
+	}
+	
+	/**
+	 * @return the page size for {@link #selectPage(DocumentQuery, String)},
+	 *         taken from the query's limit
+	 */
+	static int getKeysetPageSize(DocumentQuery query) {
+		long limit = query.getLimit();
+		// Leave room for the extra result read to detect a following page
+		return limit < 1 ? DEFAULT_KEYSET_PAGE_SIZE : (int)Math.min(limit, Integer.MAX_VALUE - 1);
+	}
+	
+	static ViewPreloadCache newViewCache(ProtonDriverOptions options) {
+		if(options.getViewPreloadTtl() <= 0) {
+			return null;
+		}
+		return new ViewPreloadCache(options.getViewPreloadTtl());
+	}
+	
+	private List<String> getItemNames(ClassMapping mapping) {
+		return entityConverter.getMetadata(mapping).getItemNames();
+	}
+	
+	/**
+	 * Determines the items to read for the provided query, honoring any
+	 * projection in the query and otherwise using all mapped columns.
+	 */
+	private List<String> getItemNames(DocumentQuery query, ClassMapping mapping) {
+		List<String> projection = query.getDocuments();
+		if(projection == null || projection.isEmpty()) {
+			return getItemNames(mapping);
+		}
+		return projection.stream()
+			.filter(name -> name != null && !name.isEmpty())
+			.filter(name -> !DominoConstants.FIELD_ID.equals(name))
+			.distinct()
+			.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Renders the DQL statement for the query, using the shared template cache
+	 * when enabled.
+	 */
+	private String toDql(DocumentQuery query) {
+		if(dqlCache != null) {
+			return dqlCache.select(query);
+		}
+		return QueryConverter.select(query).getStatement().toString();
+	}
+	
+	private String toDql(DocumentCondition condition) {
+		if(dqlCache != null) {
+			return dqlCache.condition(condition);
+		}
+		return QueryConverter.getCondition(condition).toString();
+	}
+	
 	private OptionalArg[] composeArgs(OptionalArg... args) {
 		List<OptionalArg> result = new ArrayList<>();
 		
@@ -15,29 +15,346 @@
  */
 package org.openntf.xsp.nosql.communication.driver.proton.impl;
 
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.openntf.xsp.nosql.communication.driver.proton.AccessTokenSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.CacheStatistics;
+import org.openntf.xsp.nosql.communication.driver.proton.ChangeFeed;
+import org.openntf.xsp.nosql.communication.driver.proton.ChangeFeedListener;
+import org.openntf.xsp.nosql.communication.driver.proton.CollectionNearCache;
 import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
 
+import com.hcl.domino.db.model.Database;
+
 import jakarta.nosql.document.DocumentCollectionManagerFactory;
 
 public class ProtonDocumentCollectionManagerFactory implements DocumentCollectionManagerFactory {
 	
 	private final DatabaseSupplier supplier;
 	private final AccessTokenSupplier tokenSupplier;
+	private final ProtonDriverOptions options;
+	private final CountCache countCache;
+	private final EntityCache entityCache;
+	private final DqlTemplateCache dqlCache;
+	private final WriteBehindQueue writeBehind;
+	private final ReadHedger hedger;
+	private final ViewPreloadCache viewCache;
+	private final ShardSet shards;
+	/** Shared converters, keyed by database type */
+	private final Map<String, ProtonEntityConverter> converters = new ConcurrentHashMap<>();
+	private ExecutorService ownedExecutor;
+	private ScheduledExecutorService changeFeedScheduler;
+	private ExecutorService shardExecutor;
+	private final Set<PollingChangeFeed> changeFeeds = ConcurrentHashMap.newKeySet();
+	/** Near-caches shared by entity name, guarded by this map */
+	private final Map<String, CompletableFuture<CollectionNearCache>> nearCaches = new HashMap<>();
 	
 	public ProtonDocumentCollectionManagerFactory(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier) {
+		this(supplier, tokenSupplier, new ProtonDriverOptions());
+	}
+	
+	public ProtonDocumentCollectionManagerFactory(DatabaseSupplier supplier, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options) {
 		this.supplier = supplier;
 		this.tokenSupplier = tokenSupplier;
+		this.options = options;
+		this.countCache = options.getCountCacheTtl() > 0 ? new CountCache(options.getCountCacheTtl()) : null;
+		this.entityCache = options.getEntityCacheTypes().isEmpty() ? null : new EntityCache(options.getEntityCacheTypes(), options.getEntityCacheMaxSize(), options.getEntityCacheTtl());
+		this.dqlCache = options.getDqlCacheSize() > 0 ? new DqlTemplateCache(options.getDqlCacheSize()) : null;
+		this.viewCache = ProtonDocumentCollectionManager.newViewCache(options);
+		this.writeBehind = options.getWriteBehindTypes().isEmpty() ? null : new WriteBehindQueue(options,
+			(database, token, entityConverter) -> new ProtonDocumentCollectionManager(() -> database, () -> token, options, entityConverter, countCache, entityCache, dqlCache, null, null, viewCache)
+		);
+		this.hedger = ProtonDocumentCollectionManager.newHedger(options);
+		this.shards = options.getShards().isEmpty() ? null : new ShardSet(options.getShards(), options.getShardRouter(), task -> getShardExecutor().execute(task));
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public ProtonDocumentCollectionManager get(String type) {
-		return new ProtonDocumentCollectionManager(supplier, tokenSupplier);
+		if(shards != null) {
+			return new ShardedProtonDocumentCollectionManager(shards, tokenSupplier, options, getConverter(type), countCache, entityCache, dqlCache, writeBehind, viewCache);
+		}
+		return new ProtonDocumentCollectionManager(supplier, tokenSupplier, options, getConverter(type), countCache, entityCache, dqlCache, writeBehind, hedger, viewCache);
+	}
+
+	/**
+	 * Creates a manager that performs its operations asynchronously on the
+	 * executor configured in {@link ProtonDriverOptions}, or on one managed by
+	 * this factory when none is configured.
+	 * 
+	 * @param type the database type, currently unused
+	 * @return a new {@link AsyncProtonDocumentCollectionManager}
+	 * @since 1.0.0
+	 */
+	public AsyncProtonDocumentCollectionManager getAsync(String type) {
+		return new AsyncProtonDocumentCollectionManager(supplier, tokenSupplier, options, getConverter(type), countCache, entityCache, dqlCache, writeBehind, hedger, viewCache, shards, getAsyncExecutor());
+	}
+
+	/**
+	 * Retrieves statistics for the {@code getById} entity cache shared by the
+	 * managers created by this factory.
+	 * 
+	 * @return an {@link Optional} describing the cache statistics, or an empty
+	 *         one if entity caching is not enabled
+	 * @since 1.0.0
+	 */
+	public Optional<CacheStatistics> getEntityCacheStatistics() {
+		return Optional.ofNullable(entityCache).map(EntityCache::getStatistics);
+	}
+
+	/**
+	 * Retrieves statistics for the DQL template cache shared by the managers
+	 * created by this factory.
+	 * 
+	 * @return an {@link Optional} describing the cache statistics, or an empty
+	 *         one if DQL caching is not enabled
+	 * @since 1.0.0
+	 */
+	public Optional<CacheStatistics> getDqlCacheStatistics() {
+		return Optional.ofNullable(dqlCache).map(DqlTemplateCache::getStatistics);
+	}
+
+	/**
+	 * Opens a feed of the changes to the documents of the provided entity
+	 * type, which polls on a thread managed by this factory until it or this
+	 * factory is closed.
+	 * 
+	 * <p>The contextual database and access token are resolved on the calling
+	 * thread and used for the life of the feed.</p>
+	 * 
+	 * @param entityName the entity type to follow
+	 * @param since the modification time from which to read changes, such as
+	 *        the {@link ChangeFeed#getHighWaterMark() high-water mark} of a
+	 *        previous feed, or {@code null} to first deliver all existing
+	 *        documents
+	 * @param listener the listener to notify of changes
+	 * @return the opened {@link ChangeFeed}
+	 * @since 1.0.0
+	 */
+	public ChangeFeed openChangeFeed(String entityName, Instant since, ChangeFeedListener listener) {
+		PollingChangeFeed feed = createChangeFeed(entityName, since, listener);
+		feed.schedule(getChangeFeedScheduler(), 0);
+		return feed;
+	}
+
+	/**
+	 * Retrieves a near-cache holding every document of the provided entity
+	 * type, kept current by a change feed shared by all callers. The first
+	 * call for a type reads all of its documents before returning, and other
+	 * calls for the same type wait for that read. If it fails, the next call
+	 * tries again.
+	 * 
+	 * <p>The cache contents reflect the access of the database and token
+	 * resolved by the first call for the type, so it should only be used for
+	 * data that all of its readers may see.</p>
+	 * 
+	 * @param entityName the entity type to cache
+	 * @return the shared {@link CollectionNearCache} for the type
+	 * @since 1.0.0
+	 */
+	public CollectionNearCache getNearCache(String entityName) {
+		// Register the pending cache under the lock, but read the documents outside
+		//   it so that loading one type does not block callers for other types
+		CompletableFuture<CollectionNearCache> pending;
+		boolean load = false;
+		synchronized(nearCaches) {
+			pending = nearCaches.get(entityName);
+			if(pending == null) {
+				pending = new CompletableFuture<>();
+				nearCaches.put(entityName, pending);
+				load = true;
+			}
+		}
+		if(!load) {
+			try {
+				return pending.join();
+			} catch(CompletionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof Error) {
+					throw (Error)cause;
+				} else if(cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				}
+				throw e;
+			}
+		}
+
+		CollectionNearCache cache = new CollectionNearCache();
+		PollingChangeFeed feed = createChangeFeed(entityName, null, cache);
+		try {
+			feed.poll();
+			feed.schedule(getChangeFeedScheduler(), options.getChangeFeedPollInterval());
+		} catch(RuntimeException | Error e) {
+			feed.close();
+			// Let the next call for the type try again
+			synchronized(nearCaches) {
+				nearCaches.remove(entityName, pending);
+			}
+			pending.completeExceptionally(e);
+			throw e;
+		}
+		pending.complete(cache);
+		return cache;
+	}
+
+	/**
+	 * Writes any inserts and updates queued for write-behind on the calling
+	 * thread, returning once they have been written.
+	 * 
+	 * @throws org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkOperationException
+	 *         if any queued write failed, including those from previous
+	 *         background flushes
+	 * @since 1.0.0
+	 */
+	public void flush() {
+		if(writeBehind != null) {
+			writeBehind.flush();
+		}
 	}
 
 	@Override
 	public void close() {
-
+		// Drain queued writes before releasing the components they use
+		try {
+			if(writeBehind != null) {
+				writeBehind.close();
+			}
+		} finally {
+			closeComponents();
+		}
+	}
+	
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+	
+	private void closeComponents() {
+		new ArrayList<>(changeFeeds).forEach(PollingChangeFeed::close);
+		synchronized(nearCaches) {
+			nearCaches.clear();
+		}
+		if(countCache != null) {
+			countCache.clear();
+		}
+		if(entityCache != null) {
+			entityCache.clear();
+		}
+		if(dqlCache != null) {
+			dqlCache.clear();
+		}
+		if(viewCache != null) {
+			viewCache.clear();
+		}
+		converters.values().forEach(ProtonEntityConverter::close);
+		converters.clear();
+		synchronized(this) {
+			if(ownedExecutor != null) {
+				ownedExecutor.shutdown();
+				ownedExecutor = null;
+			}
+			if(changeFeedScheduler != null) {
+				changeFeedScheduler.shutdown();
+				changeFeedScheduler = null;
+			}
+			if(shardExecutor != null) {
+				shardExecutor.shutdown();
+				shardExecutor = null;
+			}
+		}
+	}
+	
+	private PollingChangeFeed createChangeFeed(String entityName, Instant since, ChangeFeedListener listener) {
+		String token = tokenSupplier.get();
+		ProtonDocumentCollectionManager manager;
+		if(shards != null) {
+			manager = new ShardedProtonDocumentCollectionManager(shards.bind(), () -> token, options, getConverter(null), null, null, dqlCache, null, null);
+		} else {
+			Database database = supplier.get();
+			manager = new ProtonDocumentCollectionManager(() -> database, () -> token, options, getConverter(null), null, null, dqlCache, null, null, null);
+		}
+		PollingChangeFeed feed = new PollingChangeFeed(entityName, since, manager, listener, options, changeFeeds::remove);
+		changeFeeds.add(feed);
+		return feed;
+	}
+	
+	private synchronized ScheduledExecutorService getChangeFeedScheduler() {
+		if(changeFeedScheduler == null) {
+			changeFeedScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "proton-change-feed"); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return changeFeedScheduler;
+	}
+	
+	private ProtonEntityConverter getConverter(String type) {
+		return converters.computeIfAbsent(type == null ? "" : type, key -> new ProtonEntityConverter(options.getItemValueConverters(), options.isCompressJson())); //$NON-NLS-1$
+	}
+	
+	private synchronized Executor getAsyncExecutor() {
+		if(options.getAsyncExecutor() != null) {
+			return options.getAsyncExecutor();
+		}
+		if(ownedExecutor == null) {
+			ownedExecutor = createExecutor(options, "proton-async-"); //$NON-NLS-1$
+		}
+		return ownedExecutor;
+	}
+	
+	/**
+	 * Provides the executor for per-shard operations, which is kept separate
+	 * from the async executor since sharded operations block while waiting
+	 * for their shards.
+	 */
+	private synchronized Executor getShardExecutor() {
+		if(shardExecutor == null) {
+			shardExecutor = createExecutor(options, "proton-shard-"); //$NON-NLS-1$
+		}
+		return shardExecutor;
+	}
+	
+	/**
+	 * Creates an executor for tasks that block while awaiting Proton. Virtual
+	 * threads are cheap to block, so they are unbounded; otherwise the pool
+	 * and its queue are bounded, and tasks beyond them run on the submitting
+	 * thread to push back on callers rather than growing without limit.
+	 */
+	private static ExecutorService createExecutor(ProtonDriverOptions options, String threadNamePrefix) {
+		if(options.isAsyncVirtualThreads()) {
+			// Available as of Java 21
+			try {
+				Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+				return (ExecutorService)m.invoke(null);
+			} catch(ReflectiveOperationException e) {
+				// Fall through to the platform-thread executor
+			}
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		int poolSize = options.getAsyncPoolSize();
+		ThreadPoolExecutor result = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(options.getAsyncQueueSize()), r -> {
+			Thread t = new Thread(r, threadNamePrefix + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		result.allowCoreThreadTimeOut(true);
+		return result;
 	}
 }
@@ -17,6 +17,7 @@ package org.openntf.xsp.nosql.communication.driver.proton.impl;
 
 import org.openntf.xsp.nosql.communication.driver.proton.AccessTokenSupplier;
 import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationListener;
 
 import jakarta.enterprise.inject.Instance;
 import jakarta.enterprise.inject.spi.CDI;
@@ -26,6 +27,257 @@ import jakarta.nosql.document.DocumentConfiguration;
 public class ProtonDocumentConfiguration implements DocumentConfiguration {
 	public static final String SETTING_SUPPLIER = "databaseSupplier"; //$NON-NLS-1$
 	public static final String SETTING_TOKENSUPPLIER = "accessTokenSupplier"; //$NON-NLS-1$
+	/**
+	 * The number of entities to send in each multi-document create call when
+	 * inserting in bulk, as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_INSERTBATCHSIZE = "insertBatchSize"; //$NON-NLS-1$
+	/**
+	 * The number of UNID-based updates to issue together when updating in bulk,
+	 * as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_UPDATEBATCHSIZE = "updateBatchSize"; //$NON-NLS-1$
+	/**
+	 * The number of UNIDs to send in each Proton delete call when deleting in
+	 * bulk, as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_DELETEBATCHSIZE = "deleteBatchSize"; //$NON-NLS-1$
+	/**
+	 * The maximum number of delete calls to have in flight at once when
+	 * deleting in bulk, as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_DELETEPARALLELISM = "deleteParallelism"; //$NON-NLS-1$
+	/**
+	 * The number of times to retry a delete call that failed for a transient
+	 * reason, such as an I/O error or timeout, as an {@link Integer} or
+	 * numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_DELETERETRIES = "deleteRetries"; //$NON-NLS-1$
+	/**
+	 * The number of UNIDs matched by each query when reading multiple documents
+	 * by UNID, as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_GETBYIDSBATCHSIZE = "getByIdsBatchSize"; //$NON-NLS-1$
+	/**
+	 * The number of documents to read per Proton call when lazily streaming
+	 * {@code select} results, as an {@link Integer} or numeric {@link String}.
+	 * When unset or {@code 0}, all results are read in a single call.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_SELECTPAGESIZE = "selectPageSize"; //$NON-NLS-1$
+	/**
+	 * The number of UNIDs to read per Proton call when counting a collection,
+	 * as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_COUNTPAGESIZE = "countPageSize"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds to cache collection counts per collection and
+	 * access token, as a {@link Long} or numeric {@link String}. When unset or
+	 * {@code 0}, counts are not cached.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_COUNTCACHETTL = "countCacheTtl"; //$NON-NLS-1$
+	/**
+	 * An {@link org.openntf.xsp.nosql.communication.driver.proton.ItemValueConverter}
+	 * or {@link java.util.Collection} of them used to store value types that
+	 * Proton does not support natively.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ITEMVALUECONVERTERS = "itemValueConverters"; //$NON-NLS-1$
+	/**
+	 * Whether to write items with {@code ItemStorage.Type.JSON} storage as
+	 * compressed text, as a {@link Boolean} or boolean {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_COMPRESSJSON = "compressJson"; //$NON-NLS-1$
+	/**
+	 * The entity names whose {@code getById} results should be cached, as a
+	 * {@link java.util.Collection} or comma-separated {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ENTITYCACHETYPES = "entityCacheTypes"; //$NON-NLS-1$
+	/**
+	 * The maximum number of documents to cache per entity type, counting each
+	 * access token's copy of a document separately, as an {@link Integer} or
+	 * numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ENTITYCACHEMAXSIZE = "entityCacheMaxSize"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds for which cached entities are used, as a
+	 * {@link Long} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ENTITYCACHETTL = "entityCacheTtl"; //$NON-NLS-1$
+	/**
+	 * The maximum number of query shapes whose rendered DQL templates are
+	 * cached, as an {@link Integer} or numeric {@link String}. When {@code 0},
+	 * the default, every query is rendered in full.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_DQLCACHESIZE = "dqlCacheSize"; //$NON-NLS-1$
+	/**
+	 * The entity names whose single-entity inserts and updates should be
+	 * queued and written in batches, as a {@link java.util.Collection} or
+	 * comma-separated {@link String}. Queued writes use the database returned
+	 * by the {@link DatabaseSupplier} when they were queued, so it must remain
+	 * usable after the calling request has ended.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_WRITEBEHINDTYPES = "writeBehindTypes"; //$NON-NLS-1$
+	/**
+	 * The maximum number of writes to hold in the write-behind queue before
+	 * callers block, as an {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_WRITEBEHINDQUEUESIZE = "writeBehindQueueSize"; //$NON-NLS-1$
+	/**
+	 * The number of queued writes that triggers a write-behind flush, as an
+	 * {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_WRITEBEHINDBATCHSIZE = "writeBehindBatchSize"; //$NON-NLS-1$
+	/**
+	 * The maximum time in milliseconds that a write waits in the write-behind
+	 * queue, as a {@link Long} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_WRITEBEHINDFLUSHINTERVAL = "writeBehindFlushInterval"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds that a write blocks while the write-behind
+	 * queue is full before failing, as a {@link Long} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_WRITEBEHINDOFFERTIMEOUT = "writeBehindOfferTimeout"; //$NON-NLS-1$
+	/**
+	 * A {@link ProtonOperationListener} or {@link java.util.Collection} of them
+	 * to notify after each operation. Listeners available as CDI beans are
+	 * added automatically.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_OPERATIONLISTENERS = "operationListeners"; //$NON-NLS-1$
+	/**
+	 * A {@link java.util.concurrent.Executor} used by async managers to await
+	 * Proton and convert entities.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ASYNCEXECUTOR = "asyncExecutor"; //$NON-NLS-1$
+	/**
+	 * Whether the default async executor should use virtual threads when
+	 * available, as a {@link Boolean} or boolean {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ASYNCVIRTUALTHREADS = "asyncVirtualThreads"; //$NON-NLS-1$
+	/**
+	 * The number of platform threads in the default async executor, as an
+	 * {@link Integer} or numeric {@link String}. Async operations block a
+	 * thread while awaiting Proton, so this bounds the number of operations in
+	 * progress at once.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ASYNCPOOLSIZE = "asyncPoolSize"; //$NON-NLS-1$
+	/**
+	 * The number of tasks the default async executor queues while all of its
+	 * threads are busy, as an {@link Integer} or numeric {@link String}. When
+	 * the queue is full, further operations run on the calling thread.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_ASYNCQUEUESIZE = "asyncQueueSize"; //$NON-NLS-1$
+	/**
+	 * The default time in milliseconds that an operation may spend awaiting
+	 * Proton before its outstanding call is cancelled, as a {@link Long} or
+	 * numeric {@link String}. The deadline is set when the operation starts and
+	 * covers all of its Proton calls, including those made while a result
+	 * stream is consumed. The timeout
+	 * for a single operation type can be set by appending its
+	 * {@link org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationEvent.Operation}
+	 * name, as in {@code operationTimeout.GET_BY_ID}. When {@code 0}, calls are
+	 * awaited indefinitely.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_OPERATIONTIMEOUT = "operationTimeout"; //$NON-NLS-1$
+	/**
+	 * A {@link DatabaseSupplier} for an alternate database, such as a replica
+	 * on another server, against which slow {@code getById}, {@code getByIds},
+	 * {@code existsById}, {@code existsByIds}, {@code select} and {@code count}
+	 * reads are hedged.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_HEDGESUPPLIER = "hedgeSupplier"; //$NON-NLS-1$
+	/**
+	 * The percentile of recent read latencies after which a read is hedged, as
+	 * a {@link Double} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_HEDGEPERCENTILE = "hedgePercentile"; //$NON-NLS-1$
+	/**
+	 * The minimum time in milliseconds to wait for a read before hedging it,
+	 * as a {@link Long} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_HEDGEMINDELAY = "hedgeMinDelay"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds between the polls of a change feed, as a
+	 * {@link Long} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_CHANGEFEEDPOLLINTERVAL = "changeFeedPollInterval"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds between the deletion scans of a change feed,
+	 * or {@code 0} to disable scheduled scans, as a {@link Long} or numeric
+	 * {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_CHANGEFEEDDELETIONSCANINTERVAL = "changeFeedDeletionScanInterval"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds by which each change feed poll reaches back
+	 * before the previous one, as a {@link Long} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_CHANGEFEEDOVERLAP = "changeFeedOverlap"; //$NON-NLS-1$
+	/**
+	 * The number of modified documents read per call by a change feed, as an
+	 * {@link Integer} or numeric {@link String}.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_CHANGEFEEDPAGESIZE = "changeFeedPageSize"; //$NON-NLS-1$
+	/**
+	 * A {@link java.util.Map} of shard names to {@link DatabaseSupplier}s for
+	 * the databases across which entities are spread. When present, the
+	 * {@link #SETTING_SUPPLIER database supplier} is not used.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_SHARDS = "shards"; //$NON-NLS-1$
+	/**
+	 * The {@link org.openntf.xsp.nosql.communication.driver.proton.ShardRouter}
+	 * that chooses the shard for each written entity, required when more than
+	 * one shard is configured.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_SHARDROUTER = "shardRouter"; //$NON-NLS-1$
+	/**
+	 * The time in milliseconds for which the documents matched by a view query
+	 * are kept for paging through, as a {@link Long} or numeric {@link String}.
+	 * Inserts, updates, and deletes made through the driver discard the kept
+	 * documents for their entity, but changes made by other clients are not
+	 * seen until this time has elapsed. When unset or {@code 0}, each page is
+	 * read with its own query.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_VIEWPRELOADTTL = "viewPreloadTtl"; //$NON-NLS-1$
+	/**
+	 * A {@link java.util.Map} of view names to the item names shown in their
+	 * first sorted column, used to match view keys and categories.
+	 * @since 1.0.0
+	 */
+	public static final String SETTING_VIEWKEYCOLUMNS = "viewKeyColumns"; //$NON-NLS-1$
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -33,18 +285,24 @@ public class ProtonDocumentConfiguration implements DocumentConfiguration {
 		Instance<AccessTokenSupplier> tokenInstance = CDI.current().select(AccessTokenSupplier.class);
 		AccessTokenSupplier tokenSupplier = tokenInstance.isResolvable() ? tokenInstance.get() : () -> null;
 		
+		ProtonDriverOptions options = new ProtonDriverOptions();
+		addCdiListeners(options);
+		
 		return new ProtonDocumentCollectionManagerFactory(
 			CDI.current().select(DatabaseSupplier.class).get(),
-			tokenSupplier
+			tokenSupplier,
+			options
 		);
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public ProtonDocumentCollectionManagerFactory get(Settings settings) {
+		ProtonDriverOptions options = ProtonDriverOptions.fromSettings(settings);
+		// Sharded configurations supply their databases via the options
 		DatabaseSupplier supplier = settings.get(SETTING_SUPPLIER)
 			.map(DatabaseSupplier.class::cast)
-			.orElseGet(() -> CDI.current().select(DatabaseSupplier.class).get());
+			.orElseGet(() -> options.getShards().isEmpty() ? CDI.current().select(DatabaseSupplier.class).get() : null);
 		AccessTokenSupplier tokenSupplier = settings.get(SETTING_TOKENSUPPLIER)
 			.map(AccessTokenSupplier.class::cast)
 			.orElseGet(() -> {
@@ -52,7 +310,19 @@ public class ProtonDocumentConfiguration implements DocumentConfiguration {
 				AccessTokenSupplier s = tokenInstance.isResolvable() ? tokenInstance.get() : () -> null;
 				return s;
 			});
-		return new ProtonDocumentCollectionManagerFactory(supplier, tokenSupplier);
+		addCdiListeners(options);
+		return new ProtonDocumentCollectionManagerFactory(supplier, tokenSupplier, options);
+	}
+	
+	private static void addCdiListeners(ProtonDriverOptions options) {
+		Instance<ProtonOperationListener> listeners;
+		try {
+			listeners = CDI.current().select(ProtonOperationListener.class);
+		} catch(IllegalStateException e) {
+			// No CDI container is available
+			return;
+		}
+		listeners.forEach(options::addOperationListener);
 	}
 
 }
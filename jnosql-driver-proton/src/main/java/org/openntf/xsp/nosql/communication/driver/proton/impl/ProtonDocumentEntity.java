@@ -0,0 +1,270 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+
+import com.hcl.domino.db.model.Item;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.nosql.TypeSupplier;
+import jakarta.nosql.Value;
+import jakarta.nosql.document.Document;
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * {@link DocumentEntity} implementation backed by a Proton
+ * {@link com.hcl.domino.db.model.Document} that converts each item into a
+ * {@link Document} only when it is first accessed.
+ *
+ * <p>Like the default implementation, this class is not thread-safe. Reads
+ * also modify its state as they convert items, so an instance must not be
+ * shared between threads, even for reading. Use {@link #copy()} to obtain a
+ * fully-converted entity that may be shared once safely published.</p>
+ *
+ * <p>When the source document holds more than one item with the same name,
+ * the first one is used.</p>
+ *
+ * @since 1.0.0
+ */
+class ProtonDocumentEntity implements DocumentEntity {
+	private final String name;
+	private com.hcl.domino.db.model.Document source;
+	/** The names of items that may hold compressed JSON */
+	private final Set<String> jsonItemNames;
+	private final Jsonb jsonb;
+	/**
+	 * Maps item names to either a not-yet-converted {@link Item} or a
+	 * converted {@link Document}. Initialized on first access.
+	 */
+	private Map<String, Object> entries;
+
+	public ProtonDocumentEntity(String name, com.hcl.domino.db.model.Document source) {
+		this(name, source, Collections.emptySet(), null);
+	}
+
+	/**
+	 * @param name the entity name
+	 * @param source the Proton document to read
+	 * @param jsonItemNames the names of items stored as JSON, whose values are
+	 *        decompressed on access when stored compressed
+	 * @param jsonb the {@link Jsonb} instance used to bind compressed JSON
+	 */
+	public ProtonDocumentEntity(String name, com.hcl.domino.db.model.Document source, Set<String> jsonItemNames, Jsonb jsonb) {
+		this.name = requireNonNull(name, "name is required"); //$NON-NLS-1$
+		this.source = requireNonNull(source, "source is required"); //$NON-NLS-1$
+		this.jsonItemNames = jsonItemNames;
+		this.jsonb = jsonb;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void addAll(List<Document> documents) {
+		requireNonNull(documents, "documents is required"); //$NON-NLS-1$
+		documents.forEach(this::add);
+	}
+
+	@Override
+	public void add(Document document) {
+		requireNonNull(document, "document is required"); //$NON-NLS-1$
+		entries().put(document.getName(), document);
+	}
+
+	@Override
+	public void add(String documentName, Object value) {
+		requireNonNull(documentName, "documentName is required"); //$NON-NLS-1$
+		add(Document.of(documentName, value));
+	}
+
+	@Override
+	public void add(String documentName, Value value) {
+		requireNonNull(documentName, "documentName is required"); //$NON-NLS-1$
+		add(Document.of(documentName, value));
+	}
+
+	@Override
+	public boolean remove(String documentName) {
+		requireNonNull(documentName, "documentName is required"); //$NON-NLS-1$
+		return entries().remove(documentName) != null;
+	}
+
+	@Override
+	public List<String> getDocumentNames() {
+		return new ArrayList<>(entries().keySet());
+	}
+
+	@Override
+	public Collection<Value> getValues() {
+		return getDocuments().stream()
+			.map(Document::getValue)
+			.collect(Collectors.toList());
+	}
+
+	@Override
+	public boolean contains(String documentName) {
+		requireNonNull(documentName, "documentName is required"); //$NON-NLS-1$
+		return entries().containsKey(documentName);
+	}
+
+	@Override
+	public int size() {
+		return entries().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return entries().isEmpty();
+	}
+
+	/**
+	 * Returns a default {@link DocumentEntity} holding every item of this
+	 * entity, converted, so that it no longer refers to this instance.
+	 */
+	@Override
+	public DocumentEntity copy() {
+		return DocumentEntity.of(name, new ArrayList<>(getDocuments()));
+	}
+
+	@Override
+	public Optional<Document> find(String documentName) {
+		requireNonNull(documentName, "documentName is required"); //$NON-NLS-1$
+		return Optional.ofNullable(materialize(documentName));
+	}
+
+	@Override
+	public <T> Optional<T> find(String documentName, Class<T> type) {
+		requireNonNull(type, "type is required"); //$NON-NLS-1$
+		return find(documentName).map(doc -> doc.get(type));
+	}
+
+	@Override
+	public <T> Optional<T> find(String documentName, TypeSupplier<T> type) {
+		requireNonNull(type, "type is required"); //$NON-NLS-1$
+		return find(documentName).map(doc -> doc.get(type));
+	}
+
+	/**
+	 * Returns a view of the documents in this entity, converting each item
+	 * from the underlying Proton document only when it is read.
+	 */
+	@Override
+	public List<Document> getDocuments() {
+		List<String> names = getDocumentNames();
+		return new AbstractList<Document>() {
+			@Override
+			public Document get(int index) {
+				return materialize(names.get(index));
+			}
+
+			@Override
+			public int size() {
+				return names.size();
+			}
+		};
+	}
+
+	@Override
+	public Map<String, Object> toMap() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		for(String documentName : entries().keySet()) {
+			result.put(documentName, materialize(documentName).get());
+		}
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		entries().clear();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) {
+			return true;
+		}
+		if(!(o instanceof DocumentEntity)) {
+			return false;
+		}
+		DocumentEntity that = (DocumentEntity)o;
+		return name.equals(that.getName()) && Objects.equals(new ArrayList<>(getDocuments()), new ArrayList<>(that.getDocuments()));
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, new ArrayList<>(getDocuments()));
+	}
+
+	@Override
+	public String toString() {
+		return "ProtonDocumentEntity [name=" + name + ", documentNames=" + getDocumentNames() + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private Map<String, Object> entries() {
+		if(entries == null) {
+			List<Item<?>> items = source.getItems();
+			Map<String, Object> result = new LinkedHashMap<>(items.size() + 2);
+			result.put(DominoConstants.FIELD_ID, Document.of(DominoConstants.FIELD_ID, source.getUnid()));
+			for(Item<?> item : items) {
+				// Keep the first of any repeated item names, as with a list-based entity
+				result.putIfAbsent(item.getName(), item);
+			}
+			entries = result;
+			// The source is no longer needed once indexed
+			source = null;
+		}
+		return entries;
+	}
+
+	private Document materialize(String documentName) {
+		Map<String, Object> entries = entries();
+		Object entry = entries.get(documentName);
+		if(entry instanceof Item) {
+			List<?> val = ((Item<?>)entry).getValue();
+			Object value = val == null || val.isEmpty() ? null : val.size() == 1 ? val.get(0) : val;
+			Document doc;
+			if(CompressedJson.isCompressed(value) && jsonItemNames.contains(documentName)) {
+				doc = Document.of(documentName, CompressedJson.value(jsonb, (String)value));
+			} else {
+				doc = Document.of(documentName, value);
+			}
+			entries.put(documentName, doc);
+			return doc;
+		}
+		return (Document)entry;
+	}
+}
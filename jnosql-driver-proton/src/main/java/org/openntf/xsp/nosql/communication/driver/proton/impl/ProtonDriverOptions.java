@@ -0,0 +1,807 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.ItemValueConverter;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationEvent;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationListener;
+import org.openntf.xsp.nosql.communication.driver.proton.ShardRouter;
+
+import jakarta.nosql.Settings;
+
+/**
+ * Holds tuning options shared by the managers created from a single
+ * {@link ProtonDocumentCollectionManagerFactory}.
+ *
+ * @since 1.0.0
+ */
+public class ProtonDriverOptions {
+	public static final int DEFAULT_INSERT_BATCH_SIZE = 250;
+	public static final int DEFAULT_UPDATE_BATCH_SIZE = 250;
+	public static final int DEFAULT_DELETE_BATCH_SIZE = 500;
+	public static final int DEFAULT_GET_BY_IDS_BATCH_SIZE = 200;
+	public static final int DEFAULT_DELETE_PARALLELISM = 4;
+	public static final int DEFAULT_DELETE_RETRIES = 2;
+	public static final int DEFAULT_COUNT_PAGE_SIZE = 5000;
+	public static final int DEFAULT_ENTITY_CACHE_MAX_SIZE = 1000;
+	public static final long DEFAULT_ENTITY_CACHE_TTL = 60 * 1000;
+	public static final int DEFAULT_DQL_CACHE_SIZE = 0;
+	public static final int DEFAULT_WRITE_BEHIND_QUEUE_SIZE = 10000;
+	public static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 250;
+	public static final long DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL = 1000;
+	public static final long DEFAULT_WRITE_BEHIND_OFFER_TIMEOUT = 30 * 1000;
+	public static final int DEFAULT_ASYNC_POOL_SIZE = 16;
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+	public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+	public static final long DEFAULT_HEDGE_MIN_DELAY = 5;
+	public static final long DEFAULT_CHANGE_FEED_POLL_INTERVAL = 5 * 1000;
+	public static final long DEFAULT_CHANGE_FEED_DELETION_SCAN_INTERVAL = 60 * 1000;
+	public static final long DEFAULT_CHANGE_FEED_OVERLAP = 5 * 1000;
+	public static final int DEFAULT_CHANGE_FEED_PAGE_SIZE = 500;
+
+	private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+	private int updateBatchSize = DEFAULT_UPDATE_BATCH_SIZE;
+	private int deleteBatchSize = DEFAULT_DELETE_BATCH_SIZE;
+	private int getByIdsBatchSize = DEFAULT_GET_BY_IDS_BATCH_SIZE;
+	private int deleteParallelism = DEFAULT_DELETE_PARALLELISM;
+	private int deleteRetries = DEFAULT_DELETE_RETRIES;
+	private int selectPageSize;
+	private int countPageSize = DEFAULT_COUNT_PAGE_SIZE;
+	private long countCacheTtl;
+	private final List<ItemValueConverter<?>> itemValueConverters = new ArrayList<>();
+	private boolean compressJson;
+	private final Set<String> entityCacheTypes = new LinkedHashSet<>();
+	private int entityCacheMaxSize = DEFAULT_ENTITY_CACHE_MAX_SIZE;
+	private long entityCacheTtl = DEFAULT_ENTITY_CACHE_TTL;
+	private int dqlCacheSize = DEFAULT_DQL_CACHE_SIZE;
+	private final Set<String> writeBehindTypes = new LinkedHashSet<>();
+	private int writeBehindQueueSize = DEFAULT_WRITE_BEHIND_QUEUE_SIZE;
+	private int writeBehindBatchSize = DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+	private long writeBehindFlushInterval = DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL;
+	private long writeBehindOfferTimeout = DEFAULT_WRITE_BEHIND_OFFER_TIMEOUT;
+	private final List<ProtonOperationListener> operationListeners = new ArrayList<>();
+	private Executor asyncExecutor;
+	private boolean asyncVirtualThreads;
+	private int asyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
+	private int asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+	private long operationTimeout;
+	private final Map<ProtonOperationEvent.Operation, Long> operationTimeouts = new EnumMap<>(ProtonOperationEvent.Operation.class);
+	private DatabaseSupplier hedgeSupplier;
+	private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+	private long hedgeMinDelay = DEFAULT_HEDGE_MIN_DELAY;
+	private long changeFeedPollInterval = DEFAULT_CHANGE_FEED_POLL_INTERVAL;
+	private long changeFeedDeletionScanInterval = DEFAULT_CHANGE_FEED_DELETION_SCAN_INTERVAL;
+	private long changeFeedOverlap = DEFAULT_CHANGE_FEED_OVERLAP;
+	private int changeFeedPageSize = DEFAULT_CHANGE_FEED_PAGE_SIZE;
+	private final Map<String, DatabaseSupplier> shards = new LinkedHashMap<>();
+	private ShardRouter shardRouter;
+	private long viewPreloadTtl;
+	private final Map<String, String> viewKeyColumns = new LinkedHashMap<>();
+
+	/**
+	 * Reads any recognized options from the provided {@link Settings}, using
+	 * defaults for values that are not present.
+	 *
+	 * @param settings the settings to read
+	 * @return a new options object
+	 */
+	public static ProtonDriverOptions fromSettings(Settings settings) {
+		ProtonDriverOptions result = new ProtonDriverOptions();
+		if(settings == null) {
+			return result;
+		}
+
+		readInt(settings, ProtonDocumentConfiguration.SETTING_INSERTBATCHSIZE).ifPresent(result::setInsertBatchSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_UPDATEBATCHSIZE).ifPresent(result::setUpdateBatchSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_DELETEBATCHSIZE).ifPresent(result::setDeleteBatchSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_DELETEPARALLELISM).ifPresent(result::setDeleteParallelism);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_DELETERETRIES).ifPresent(result::setDeleteRetries);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_GETBYIDSBATCHSIZE).ifPresent(result::setGetByIdsBatchSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_SELECTPAGESIZE).ifPresent(result::setSelectPageSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_COUNTPAGESIZE).ifPresent(result::setCountPageSize);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_COUNTCACHETTL).ifPresent(result::setCountCacheTtl);
+		settings.get(ProtonDocumentConfiguration.SETTING_ITEMVALUECONVERTERS)
+			.ifPresent(val -> {
+				if(val instanceof Collection) {
+					((Collection<?>)val).forEach(c -> result.addItemValueConverter((ItemValueConverter<?>)c));
+				} else {
+					result.addItemValueConverter((ItemValueConverter<?>)val);
+				}
+			});
+		readBoolean(settings, ProtonDocumentConfiguration.SETTING_COMPRESSJSON).ifPresent(result::setCompressJson);
+		readNames(settings, ProtonDocumentConfiguration.SETTING_ENTITYCACHETYPES).forEach(result::addEntityCacheType);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_ENTITYCACHEMAXSIZE).ifPresent(result::setEntityCacheMaxSize);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_ENTITYCACHETTL).ifPresent(result::setEntityCacheTtl);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_DQLCACHESIZE).ifPresent(result::setDqlCacheSize);
+		readNames(settings, ProtonDocumentConfiguration.SETTING_WRITEBEHINDTYPES).forEach(result::addWriteBehindType);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_WRITEBEHINDQUEUESIZE).ifPresent(result::setWriteBehindQueueSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_WRITEBEHINDBATCHSIZE).ifPresent(result::setWriteBehindBatchSize);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_WRITEBEHINDFLUSHINTERVAL).ifPresent(result::setWriteBehindFlushInterval);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_WRITEBEHINDOFFERTIMEOUT).ifPresent(result::setWriteBehindOfferTimeout);
+		settings.get(ProtonDocumentConfiguration.SETTING_OPERATIONLISTENERS)
+			.ifPresent(val -> {
+				if(val instanceof Collection) {
+					((Collection<?>)val).forEach(l -> result.addOperationListener((ProtonOperationListener)l));
+				} else {
+					result.addOperationListener((ProtonOperationListener)val);
+				}
+			});
+		settings.get(ProtonDocumentConfiguration.SETTING_ASYNCEXECUTOR)
+			.map(Executor.class::cast)
+			.ifPresent(result::setAsyncExecutor);
+		readBoolean(settings, ProtonDocumentConfiguration.SETTING_ASYNCVIRTUALTHREADS).ifPresent(result::setAsyncVirtualThreads);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_ASYNCPOOLSIZE).ifPresent(result::setAsyncPoolSize);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_ASYNCQUEUESIZE).ifPresent(result::setAsyncQueueSize);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_OPERATIONTIMEOUT).ifPresent(result::setOperationTimeout);
+		for(ProtonOperationEvent.Operation operation : ProtonOperationEvent.Operation.values()) {
+			readLong(settings, ProtonDocumentConfiguration.SETTING_OPERATIONTIMEOUT + '.' + operation.name())
+				.ifPresent(timeout -> result.setOperationTimeout(operation, timeout));
+		}
+		settings.get(ProtonDocumentConfiguration.SETTING_HEDGESUPPLIER)
+			.map(DatabaseSupplier.class::cast)
+			.ifPresent(result::setHedgeSupplier);
+		readDouble(settings, ProtonDocumentConfiguration.SETTING_HEDGEPERCENTILE).ifPresent(result::setHedgePercentile);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_HEDGEMINDELAY).ifPresent(result::setHedgeMinDelay);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_CHANGEFEEDPOLLINTERVAL).ifPresent(result::setChangeFeedPollInterval);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_CHANGEFEEDDELETIONSCANINTERVAL).ifPresent(result::setChangeFeedDeletionScanInterval);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_CHANGEFEEDOVERLAP).ifPresent(result::setChangeFeedOverlap);
+		readInt(settings, ProtonDocumentConfiguration.SETTING_CHANGEFEEDPAGESIZE).ifPresent(result::setChangeFeedPageSize);
+		settings.get(ProtonDocumentConfiguration.SETTING_SHARDS)
+			.ifPresent(val -> ((Map<?, ?>)val).forEach((name, supplier) -> result.addShard(String.valueOf(name), (DatabaseSupplier)supplier)));
+		settings.get(ProtonDocumentConfiguration.SETTING_SHARDROUTER)
+			.map(ShardRouter.class::cast)
+			.ifPresent(result::setShardRouter);
+		readLong(settings, ProtonDocumentConfiguration.SETTING_VIEWPRELOADTTL).ifPresent(result::setViewPreloadTtl);
+		settings.get(ProtonDocumentConfiguration.SETTING_VIEWKEYCOLUMNS)
+			.ifPresent(val -> ((Map<?, ?>)val).forEach((view, column) -> result.addViewKeyColumn(String.valueOf(view), String.valueOf(column))));
+
+		return result;
+	}
+
+	/**
+	 * @return the number of entities converted and sent to Proton in each
+	 *         multi-document create call
+	 */
+	public int getInsertBatchSize() {
+		return insertBatchSize;
+	}
+
+	public void setInsertBatchSize(int insertBatchSize) {
+		if(insertBatchSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("insertBatchSize must be positive; got {0}", insertBatchSize));
+		}
+		this.insertBatchSize = insertBatchSize;
+	}
+
+	/**
+	 * @return the number of UNID-based updates issued together before awaiting
+	 *         their results when updating in bulk
+	 */
+	public int getUpdateBatchSize() {
+		return updateBatchSize;
+	}
+
+	public void setUpdateBatchSize(int updateBatchSize) {
+		if(updateBatchSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("updateBatchSize must be positive; got {0}", updateBatchSize));
+		}
+		this.updateBatchSize = updateBatchSize;
+	}
+
+	/**
+	 * @return the number of UNIDs sent in each Proton delete call when
+	 *         deleting in bulk
+	 */
+	public int getDeleteBatchSize() {
+		return deleteBatchSize;
+	}
+
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		if(deleteBatchSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("deleteBatchSize must be positive; got {0}", deleteBatchSize));
+		}
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	/**
+	 * @return the maximum number of delete calls in flight at once when
+	 *         deleting in bulk
+	 */
+	public int getDeleteParallelism() {
+		return deleteParallelism;
+	}
+
+	public void setDeleteParallelism(int deleteParallelism) {
+		if(deleteParallelism < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("deleteParallelism must be positive; got {0}", deleteParallelism));
+		}
+		this.deleteParallelism = deleteParallelism;
+	}
+
+	/**
+	 * @return the number of times a delete call that failed for a transient
+	 *         reason, such as an I/O error or timeout, is retried
+	 */
+	public int getDeleteRetries() {
+		return deleteRetries;
+	}
+
+	public void setDeleteRetries(int deleteRetries) {
+		if(deleteRetries < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("deleteRetries must not be negative; got {0}", deleteRetries));
+		}
+		this.deleteRetries = deleteRetries;
+	}
+
+	/**
+	 * @return the number of UNIDs matched by each query when reading multiple
+	 *         documents by UNID
+	 */
+	public int getGetByIdsBatchSize() {
+		return getByIdsBatchSize;
+	}
+
+	public void setGetByIdsBatchSize(int getByIdsBatchSize) {
+		if(getByIdsBatchSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("getByIdsBatchSize must be positive; got {0}", getByIdsBatchSize));
+		}
+		this.getByIdsBatchSize = getByIdsBatchSize;
+	}
+
+	/**
+	 * @return the number of documents read per Proton call when streaming
+	 *         {@code select} results, or {@code 0} to read all results in a
+	 *         single call
+	 */
+	public int getSelectPageSize() {
+		return selectPageSize;
+	}
+
+	public void setSelectPageSize(int selectPageSize) {
+		if(selectPageSize < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("selectPageSize must not be negative; got {0}", selectPageSize));
+		}
+		this.selectPageSize = selectPageSize;
+	}
+
+	/**
+	 * @return the number of documents read per Proton call when scanning
+	 *         lightweight results, such as when counting a collection or
+	 *         reading sort keys
+	 */
+	public int getCountPageSize() {
+		return countPageSize;
+	}
+
+	public void setCountPageSize(int countPageSize) {
+		if(countPageSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("countPageSize must be positive; got {0}", countPageSize));
+		}
+		this.countPageSize = countPageSize;
+	}
+
+	/**
+	 * @return the time in milliseconds that collection counts are cached per
+	 *         collection and access token, or {@code 0} to disable caching
+	 */
+	public long getCountCacheTtl() {
+		return countCacheTtl;
+	}
+
+	public void setCountCacheTtl(long countCacheTtl) {
+		if(countCacheTtl < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("countCacheTtl must not be negative; got {0}", countCacheTtl));
+		}
+		this.countCacheTtl = countCacheTtl;
+	}
+
+	/**
+	 * @return an immutable view of the converters used for value types that
+	 *         Proton does not support natively, in priority order
+	 */
+	public List<ItemValueConverter<?>> getItemValueConverters() {
+		return Collections.unmodifiableList(itemValueConverters);
+	}
+
+	public void addItemValueConverter(ItemValueConverter<?> converter) {
+		this.itemValueConverters.add(Objects.requireNonNull(converter, "converter cannot be null")); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return whether items with {@code ItemStorage.Type.JSON} storage are
+	 *         written compressed; compressed items are read regardless
+	 */
+	public boolean isCompressJson() {
+		return compressJson;
+	}
+
+	public void setCompressJson(boolean compressJson) {
+		this.compressJson = compressJson;
+	}
+
+	/**
+	 * @return an immutable view of the entity names whose {@code getById}
+	 *         results are cached
+	 */
+	public Set<String> getEntityCacheTypes() {
+		return Collections.unmodifiableSet(entityCacheTypes);
+	}
+
+	public void addEntityCacheType(String entityName) {
+		this.entityCacheTypes.add(Objects.requireNonNull(entityName, "entityName cannot be null")); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the maximum number of documents cached per entity type, counting
+	 *         each access token's copy of a document separately
+	 */
+	public int getEntityCacheMaxSize() {
+		return entityCacheMaxSize;
+	}
+
+	public void setEntityCacheMaxSize(int entityCacheMaxSize) {
+		if(entityCacheMaxSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("entityCacheMaxSize must be positive; got {0}", entityCacheMaxSize));
+		}
+		this.entityCacheMaxSize = entityCacheMaxSize;
+	}
+
+	/**
+	 * @return the time in milliseconds for which cached entities are used
+	 */
+	public long getEntityCacheTtl() {
+		return entityCacheTtl;
+	}
+
+	public void setEntityCacheTtl(long entityCacheTtl) {
+		if(entityCacheTtl < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("entityCacheTtl must be positive; got {0}", entityCacheTtl));
+		}
+		this.entityCacheTtl = entityCacheTtl;
+	}
+
+	/**
+	 * @return the maximum number of query shapes whose rendered DQL templates
+	 *         are cached, or {@code 0} to render every query
+	 */
+	public int getDqlCacheSize() {
+		return dqlCacheSize;
+	}
+
+	public void setDqlCacheSize(int dqlCacheSize) {
+		if(dqlCacheSize < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("dqlCacheSize must not be negative; got {0}", dqlCacheSize));
+		}
+		this.dqlCacheSize = dqlCacheSize;
+	}
+
+	/**
+	 * @return an immutable view of the entity names whose single-entity
+	 *         inserts and updates are queued and written in batches
+	 */
+	public Set<String> getWriteBehindTypes() {
+		return Collections.unmodifiableSet(writeBehindTypes);
+	}
+
+	public void addWriteBehindType(String entityName) {
+		this.writeBehindTypes.add(Objects.requireNonNull(entityName, "entityName cannot be null")); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the maximum number of writes held in the write-behind queue
+	 *         before callers block
+	 */
+	public int getWriteBehindQueueSize() {
+		return writeBehindQueueSize;
+	}
+
+	public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+		if(writeBehindQueueSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("writeBehindQueueSize must be positive; got {0}", writeBehindQueueSize));
+		}
+		this.writeBehindQueueSize = writeBehindQueueSize;
+	}
+
+	/**
+	 * @return the number of queued writes that triggers a write-behind flush
+	 */
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		if(writeBehindBatchSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("writeBehindBatchSize must be positive; got {0}", writeBehindBatchSize));
+		}
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds that a write waits in the
+	 *         write-behind queue before being flushed
+	 */
+	public long getWriteBehindFlushInterval() {
+		return writeBehindFlushInterval;
+	}
+
+	public void setWriteBehindFlushInterval(long writeBehindFlushInterval) {
+		if(writeBehindFlushInterval < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("writeBehindFlushInterval must be positive; got {0}", writeBehindFlushInterval));
+		}
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
+
+	/**
+	 * @return the time in milliseconds that a write blocks while the
+	 *         write-behind queue is full before failing
+	 */
+	public long getWriteBehindOfferTimeout() {
+		return writeBehindOfferTimeout;
+	}
+
+	public void setWriteBehindOfferTimeout(long writeBehindOfferTimeout) {
+		if(writeBehindOfferTimeout < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("writeBehindOfferTimeout must not be negative; got {0}", writeBehindOfferTimeout));
+		}
+		this.writeBehindOfferTimeout = writeBehindOfferTimeout;
+	}
+
+	/**
+	 * @return an immutable view of the listeners notified after each operation
+	 */
+	public List<ProtonOperationListener> getOperationListeners() {
+		return Collections.unmodifiableList(operationListeners);
+	}
+
+	public void addOperationListener(ProtonOperationListener listener) {
+		this.operationListeners.add(Objects.requireNonNull(listener, "listener cannot be null")); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the executor used by {@link AsyncProtonDocumentCollectionManager}
+	 *         to await Proton and convert entities, or {@code null} to use one
+	 *         managed by the factory
+	 */
+	public Executor getAsyncExecutor() {
+		return asyncExecutor;
+	}
+
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * @return whether a factory-managed async executor should use virtual
+	 *         threads when the running JVM supports them
+	 */
+	public boolean isAsyncVirtualThreads() {
+		return asyncVirtualThreads;
+	}
+
+	public void setAsyncVirtualThreads(boolean asyncVirtualThreads) {
+		this.asyncVirtualThreads = asyncVirtualThreads;
+	}
+
+	/**
+	 * @return the number of platform threads in each factory-managed executor
+	 */
+	public int getAsyncPoolSize() {
+		return asyncPoolSize;
+	}
+
+	public void setAsyncPoolSize(int asyncPoolSize) {
+		if(asyncPoolSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("asyncPoolSize must be positive; got {0}", asyncPoolSize));
+		}
+		this.asyncPoolSize = asyncPoolSize;
+	}
+
+	/**
+	 * @return the number of tasks a factory-managed platform-thread executor
+	 *         queues before running further tasks on the submitting thread
+	 */
+	public int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	public void setAsyncQueueSize(int asyncQueueSize) {
+		if(asyncQueueSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("asyncQueueSize must be positive; got {0}", asyncQueueSize));
+		}
+		this.asyncQueueSize = asyncQueueSize;
+	}
+
+	/**
+	 * @return the default time in milliseconds after the start of an operation
+	 *         at which its outstanding Proton call is cancelled, or {@code 0}
+	 *         to wait indefinitely
+	 */
+	public long getOperationTimeout() {
+		return operationTimeout;
+	}
+
+	public void setOperationTimeout(long operationTimeout) {
+		if(operationTimeout < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("operationTimeout must not be negative; got {0}", operationTimeout));
+		}
+		this.operationTimeout = operationTimeout;
+	}
+
+	/**
+	 * @return the time in milliseconds after the start of the provided
+	 *         operation at which its outstanding Proton call is cancelled, or
+	 *         {@code 0} to wait indefinitely
+	 */
+	public long getOperationTimeout(ProtonOperationEvent.Operation operation) {
+		return operationTimeouts.getOrDefault(operation, operationTimeout);
+	}
+
+	public void setOperationTimeout(ProtonOperationEvent.Operation operation, long operationTimeout) {
+		Objects.requireNonNull(operation, "operation cannot be null"); //$NON-NLS-1$
+		if(operationTimeout < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("operationTimeout must not be negative; got {0}", operationTimeout));
+		}
+		this.operationTimeouts.put(operation, operationTimeout);
+	}
+
+	/**
+	 * @return the supplier of the alternate database used to hedge slow reads,
+	 *         or {@code null} if reads are not hedged
+	 */
+	public DatabaseSupplier getHedgeSupplier() {
+		return hedgeSupplier;
+	}
+
+	public void setHedgeSupplier(DatabaseSupplier hedgeSupplier) {
+		this.hedgeSupplier = hedgeSupplier;
+	}
+
+	/**
+	 * @return the percentile of recent read latencies after which a read is
+	 *         hedged against the alternate database
+	 */
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public void setHedgePercentile(double hedgePercentile) {
+		if(!(hedgePercentile > 0 && hedgePercentile < 100)) {
+			throw new IllegalArgumentException(MessageFormat.format("hedgePercentile must be greater than 0 and less than 100; got {0}", hedgePercentile));
+		}
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * @return the minimum time in milliseconds to wait for a read before
+	 *         hedging it
+	 */
+	public long getHedgeMinDelay() {
+		return hedgeMinDelay;
+	}
+
+	public void setHedgeMinDelay(long hedgeMinDelay) {
+		if(hedgeMinDelay < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("hedgeMinDelay must not be negative; got {0}", hedgeMinDelay));
+		}
+		this.hedgeMinDelay = hedgeMinDelay;
+	}
+
+	/**
+	 * @return the time in milliseconds between the polls of a change feed
+	 */
+	public long getChangeFeedPollInterval() {
+		return changeFeedPollInterval;
+	}
+
+	public void setChangeFeedPollInterval(long changeFeedPollInterval) {
+		if(changeFeedPollInterval < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("changeFeedPollInterval must be positive; got {0}", changeFeedPollInterval));
+		}
+		this.changeFeedPollInterval = changeFeedPollInterval;
+	}
+
+	/**
+	 * @return the time in milliseconds between the deletion scans of a change
+	 *         feed, or {@code 0} to only scan for deletions on request
+	 */
+	public long getChangeFeedDeletionScanInterval() {
+		return changeFeedDeletionScanInterval;
+	}
+
+	public void setChangeFeedDeletionScanInterval(long changeFeedDeletionScanInterval) {
+		if(changeFeedDeletionScanInterval < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("changeFeedDeletionScanInterval must not be negative; got {0}", changeFeedDeletionScanInterval));
+		}
+		this.changeFeedDeletionScanInterval = changeFeedDeletionScanInterval;
+	}
+
+	/**
+	 * @return the time in milliseconds by which each change feed poll reaches
+	 *         back before the start of the previous one, to tolerate clock
+	 *         skew between the client and the server
+	 */
+	public long getChangeFeedOverlap() {
+		return changeFeedOverlap;
+	}
+
+	public void setChangeFeedOverlap(long changeFeedOverlap) {
+		if(changeFeedOverlap < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("changeFeedOverlap must not be negative; got {0}", changeFeedOverlap));
+		}
+		this.changeFeedOverlap = changeFeedOverlap;
+	}
+
+	/**
+	 * @return the number of modified documents read per call and delivered
+	 *         together to a change feed listener
+	 */
+	public int getChangeFeedPageSize() {
+		return changeFeedPageSize;
+	}
+
+	public void setChangeFeedPageSize(int changeFeedPageSize) {
+		if(changeFeedPageSize < 1) {
+			throw new IllegalArgumentException(MessageFormat.format("changeFeedPageSize must be positive; got {0}", changeFeedPageSize));
+		}
+		this.changeFeedPageSize = changeFeedPageSize;
+	}
+
+	/**
+	 * @return an immutable view of the shard database suppliers keyed by shard
+	 *         name, in the order they were added, or an empty map when the
+	 *         driver is not sharded
+	 */
+	public Map<String, DatabaseSupplier> getShards() {
+		return Collections.unmodifiableMap(shards);
+	}
+
+	public void addShard(String name, DatabaseSupplier supplier) {
+		if(name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("name cannot be empty");
+		}
+		this.shards.put(name, Objects.requireNonNull(supplier, "supplier cannot be null")); //$NON-NLS-1$
+	}
+
+	/**
+	 * @return the router that chooses the shard for each written entity, or
+	 *         {@code null} if none is set
+	 */
+	public ShardRouter getShardRouter() {
+		return shardRouter;
+	}
+
+	public void setShardRouter(ShardRouter shardRouter) {
+		this.shardRouter = shardRouter;
+	}
+
+	/**
+	 * @return the time in milliseconds for which the set of documents in a
+	 *         view query is kept for paging through, or {@code 0} to read each
+	 *         page with its own query
+	 */
+	public long getViewPreloadTtl() {
+		return viewPreloadTtl;
+	}
+
+	public void setViewPreloadTtl(long viewPreloadTtl) {
+		if(viewPreloadTtl < 0) {
+			throw new IllegalArgumentException(MessageFormat.format("viewPreloadTtl must not be negative; got {0}", viewPreloadTtl));
+		}
+		this.viewPreloadTtl = viewPreloadTtl;
+	}
+
+	/**
+	 * @return an immutable view of the item names that view keys and
+	 *         categories are matched against, keyed by view name
+	 */
+	public Map<String, String> getViewKeyColumns() {
+		return Collections.unmodifiableMap(viewKeyColumns);
+	}
+
+	public void addViewKeyColumn(String viewName, String itemName) {
+		if(viewName == null || viewName.isEmpty()) {
+			throw new IllegalArgumentException("viewName cannot be empty");
+		}
+		if(itemName == null || itemName.isEmpty()) {
+			throw new IllegalArgumentException("itemName cannot be empty");
+		}
+		this.viewKeyColumns.put(viewName, itemName);
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	static Optional<Integer> readInt(Settings settings, String key) {
+		return settings.get(key)
+			.map(val -> {
+				if(val instanceof Number) {
+					return ((Number)val).intValue();
+				} else {
+					return Integer.valueOf(val.toString().trim());
+				}
+			});
+	}
+
+	static Optional<Long> readLong(Settings settings, String key) {
+		return settings.get(key)
+			.map(val -> {
+				if(val instanceof Number) {
+					return ((Number)val).longValue();
+				} else {
+					return Long.valueOf(val.toString().trim());
+				}
+			});
+	}
+
+	/**
+	 * Reads a setting given as a {@link Collection} or comma-separated
+	 * {@link String} of names.
+	 */
+	static List<String> readNames(Settings settings, String key) {
+		List<String> result = new ArrayList<>();
+		settings.get(key)
+			.ifPresent(val -> {
+				if(val instanceof Collection) {
+					((Collection<?>)val).forEach(name -> result.add(name.toString()));
+				} else {
+					for(String name : val.toString().split(",")) { //$NON-NLS-1$
+						if(!name.trim().isEmpty()) {
+							result.add(name.trim());
+						}
+					}
+				}
+			});
+		return result;
+	}
+
+	static Optional<Double> readDouble(Settings settings, String key) {
+		return settings.get(key)
+			.map(val -> {
+				if(val instanceof Number) {
+					return ((Number)val).doubleValue();
+				} else {
+					return Double.valueOf(val.toString().trim());
+				}
+			});
+	}
+
+	static Optional<Boolean> readBoolean(Settings settings, String key) {
+		return settings.get(key)
+			.map(val -> {
+				if(val instanceof Boolean) {
+					return (Boolean)val;
+				} else {
+					return Boolean.valueOf(val.toString().trim());
+				}
+			});
+	}
+}
@@ -20,69 +20,116 @@ import static java.util.Objects.requireNonNull;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.MessageFormat;
-import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.eclipse.jnosql.mapping.reflection.ClassMapping;
 import org.openntf.xsp.nosql.communication.driver.DominoConstants;
 import org.openntf.xsp.nosql.communication.driver.impl.AbstractEntityConverter;
+import org.openntf.xsp.nosql.communication.driver.proton.ItemValueConverter;
 import org.openntf.xsp.nosql.mapping.extension.ItemFlags;
 import org.openntf.xsp.nosql.mapping.extension.ItemStorage;
 
-import com.hcl.domino.db.model.DateItem;
-import com.hcl.domino.db.model.DateTimeItem;
 import com.hcl.domino.db.model.Document;
 import com.hcl.domino.db.model.Item;
-import com.hcl.domino.db.model.NumberItem;
 import com.hcl.domino.db.model.TextItem;
-import com.hcl.domino.db.model.TimeItem;
 
 import jakarta.json.bind.Jsonb;
 import jakarta.json.bind.JsonbBuilder;
 import jakarta.nosql.ServiceLoaderProvider;
 import jakarta.nosql.ValueWriter;
 import jakarta.nosql.document.DocumentEntity;
+import jakarta.nosql.mapping.Column;
 
-public class ProtonEntityConverter extends AbstractEntityConverter {
+/**
+ * Converts between Proton documents and NoSQL entities.
+ * 
+ * <p>Instances are thread-safe and are intended to be shared, since creating
+ * the underlying {@link Jsonb} instance is expensive.</p>
+ */
+public class ProtonEntityConverter extends AbstractEntityConverter implements AutoCloseable {
 
 	private final Jsonb jsonb;
+	private final Map<ClassMapping, EntityMetadata> metadata = new ConcurrentHashMap<>();
+	private final EntityMetadata emptyMetadata = new EntityMetadata(Collections.emptyList(), itemName -> EntityMetadata.ItemMetadata.DEFAULT);
+	private final List<ValueWriter<Object, Object>> writers;
+	private final ItemDispatcher itemDispatcher;
+	private final boolean compressJson;
+	/** Remembers which {@link ValueWriter}, if any, applies to a given value class */
+	private final ClassValue<Optional<ValueWriter<Object, Object>>> valueWriters = new ClassValue<Optional<ValueWriter<Object, Object>>>() {
+		@Override
+		protected Optional<ValueWriter<Object, Object>> computeValue(Class<?> type) {
+			for(ValueWriter<Object, Object> w : writers) {
+				if(w.test(type)) {
+					return Optional.of(w);
+				}
+			}
+			return Optional.empty();
+		}
+	};
 	
 	public ProtonEntityConverter() {
+		this(Collections.emptyList());
+	}
+	
+	/**
+	 * @param itemValueConverters converters for additional value types, which
+	 *        take priority over any registered via {@link java.util.ServiceLoader}
+	 * @since 1.0.0
+	 */
+	public ProtonEntityConverter(Collection<ItemValueConverter<?>> itemValueConverters) {
+		this(itemValueConverters, false);
+	}
+	
+	/**
+	 * @param itemValueConverters converters for additional value types, which
+	 *        take priority over any registered via {@link java.util.ServiceLoader}
+	 * @param compressJson whether to store {@link ItemStorage.Type#JSON JSON}
+	 *        items compressed
+	 * @since 1.0.0
+	 */
+	@SuppressWarnings("unchecked")
+	public ProtonEntityConverter(Collection<ItemValueConverter<?>> itemValueConverters, boolean compressJson) {
 		this.jsonb = JsonbBuilder.create();
+		this.compressJson = compressJson;
+		this.writers = ServiceLoaderProvider.getSupplierStream(ValueWriter.class)
+			.map(w -> (ValueWriter<Object, Object>)w)
+			.collect(Collectors.toList());
+		List<ItemValueConverter<?>> converters = new ArrayList<>(itemValueConverters);
+		ServiceLoaderProvider.getSupplierStream(ItemValueConverter.class)
+			.map(c -> (ItemValueConverter<?>)c)
+			.forEach(converters::add);
+		this.itemDispatcher = new ItemDispatcher(converters);
 	}
 	
 	public Stream<DocumentEntity> convertDocuments(String entityName, List<Document> docs, ClassMapping classMapping) {
-		return docs.stream()
-			.map(doc -> {
-				String id = doc.getUnid();
-				
-				List<jakarta.nosql.document.Document> resultDocs = new ArrayList<>();
-				resultDocs.add(jakarta.nosql.document.Document.of(DominoConstants.FIELD_ID, id));
-				
-				doc.getItems().forEach(item -> {
-					List<?> val = item.getValue();
-					Object value = val == null || val.isEmpty() ? null : val.size() == 1 ? val.get(0) : val;
-					resultDocs.add(jakarta.nosql.document.Document.of(item.getName(), value));
-				});
-				
-				return DocumentEntity.of(entityName, resultDocs);
-			});
+		return convertDocuments(entityName, docs.stream(), classMapping);
+	}
+	
+	public Stream<DocumentEntity> convertDocuments(String entityName, Stream<Document> docs, ClassMapping classMapping) {
+		return docs.map(doc -> convertDocument(entityName, doc, classMapping));
+	}
+	
+	/**
+	 * Wraps the provided Proton document in a {@link DocumentEntity} that
+	 * converts each item only when it is first accessed. Compressed JSON items
+	 * are also decompressed only when accessed.
+	 */
+	public DocumentEntity convertDocument(String entityName, Document doc, ClassMapping classMapping) {
+		return new ProtonDocumentEntity(entityName, doc, getMetadata(classMapping).getJsonItemNames(), jsonb);
 	}
 	
 	public Document convertNoSQLEntity(DocumentEntity entity, boolean inserting, ClassMapping classMapping) {
 		requireNonNull(entity, "entity is required"); //$NON-NLS-1$
-		@SuppressWarnings("unchecked")
-		List<ValueWriter<Object, Object>> writers = ServiceLoaderProvider.getSupplierStream(ValueWriter.class)
-			.map(w -> (ValueWriter<Object, Object>)w)
-			.collect(Collectors.toList());
+		EntityMetadata metadata = getMetadata(classMapping);
 
 		List<Item<?>> items = entity.getDocuments()
 			.stream()
@@ -90,15 +137,12 @@ public class ProtonEntityConverter extends AbstractEntityConverter {
 				// TODO attachment support
 				
 				if(!DominoConstants.SKIP_WRITING_FIELDS.contains(doc.getName())) {
-					Optional<ItemStorage> optStorage = getFieldAnnotation(classMapping, doc.getName(), ItemStorage.class);
+					EntityMetadata.ItemMetadata itemMetadata = metadata.getItem(doc.getName());
 					// Check if we should skip processing
-					if(optStorage.isPresent()) {
-						ItemStorage storage = optStorage.get();
-						if(!storage.insertable() && inserting) {
-							return null;
-						} else if(!storage.updatable() && !inserting) {
-							return null;
-						}
+					if(!itemMetadata.isInsertable() && inserting) {
+						return null;
+					} else if(!itemMetadata.isUpdatable() && !inserting) {
+						return null;
 					}
 					
 					Object value = doc.get();
@@ -106,50 +150,24 @@ public class ProtonEntityConverter extends AbstractEntityConverter {
 						return new TextItem(doc.getName(), (String)null);
 					} else {
 						Object val = value;
-						for(ValueWriter<Object, Object> w : writers) {
-							if(w.test(value.getClass())) {
-								val = w.write(value);
-								break;
-							}
+						ValueWriter<Object, Object> writer = valueWriters.get(value.getClass()).orElse(null);
+						if(writer != null) {
+							val = writer.write(value);
 						}
 						
-						// Check for a @ItemFlags annotation
-						Optional<ItemFlags> itemFlagsOpt = getFieldAnnotation(classMapping, doc.getName(), ItemFlags.class);
-						List<com.hcl.domino.db.model.ItemFlags> flags = new ArrayList<>();
-						if(itemFlagsOpt.isPresent()) {
-							ItemFlags itemFlags = itemFlagsOpt.get();
-							
-							if(!itemFlags.saveToDisk()) {
-								// Best handled by removing the item
-								return new TextItem(doc.getName(), (String)null);
-							}
-							
-							if(itemFlags.authors()) {
-								flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_AUTHORS);
-							}
-							if(itemFlags.readers()) {
-								flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_READERS);
-							}
-							if(itemFlags.authors() || itemFlags.readers() || itemFlags.names()) {
-								flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NAMES);
-							}
-							if(itemFlags.encrypted()) {
-								flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_ENCRYPT);
-							}
-							if(!itemFlags.summary()) {
-								flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NONSUMMARY);
-							}
+						if(!itemMetadata.isSaveToDisk()) {
+							// Best handled by removing the item
+							return new TextItem(doc.getName(), (String)null);
 						}
 						
 						// Check if the item is expected to be stored specially, which may be handled down the line
-						if(optStorage.isPresent() && optStorage.get().type() != ItemStorage.Type.Default) {
-							ItemStorage storage = optStorage.get();
-							switch(storage.type()) {
+						ItemStorage.Type storageType = itemMetadata.getStorageType();
+						if(storageType != ItemStorage.Type.Default) {
+							switch(storageType) {
 							case JSON:
 								Object fVal = val;
-								String json = AccessController.doPrivileged((PrivilegedAction<String>)() -> jsonb.toJson(fVal));
-								flags.add(com.hcl.domino.db.model.ItemFlags.ITEM_FLAG_NONSUMMARY);
-								return new TextItem(doc.getName(), json, flags.toArray(new com.hcl.domino.db.model.ItemFlags[flags.size()]));
+								String json = AccessController.doPrivileged((PrivilegedAction<String>)() -> compressJson ? CompressedJson.write(jsonb, fVal) : jsonb.toJson(fVal));
+								return new TextItem(doc.getName(), json, itemMetadata.getNonSummaryFlags());
 							case MIME:
 								throw new UnsupportedOperationException("MIME storage is unsupported");
 							case MIMEBean:
@@ -157,20 +175,18 @@ public class ProtonEntityConverter extends AbstractEntityConverter {
 							case Default:
 							default:
 								// Shouldn't get here
-								throw new UnsupportedOperationException(MessageFormat.format("Unable to handle storage type {0}", storage.type()));
+								throw new UnsupportedOperationException(MessageFormat.format("Unable to handle storage type {0}", storageType));
 							}
 						} else {
 							Object dominoVal = val;
 							
 							// Set number precision if applicable
-							if(optStorage.isPresent()) {
-								int precision = optStorage.get().precision();
-								if(precision > 0) {
-									dominoVal = applyPrecision(dominoVal, precision);
-								}
+							int precision = itemMetadata.getPrecision();
+							if(precision > 0) {
+								dominoVal = applyPrecision(dominoVal, precision);
 							}
 							
-							return toItem(doc.getName(), dominoVal, flags);
+							return toItem(doc.getName(), dominoVal, itemMetadata.getFlags());
 						}
 					}
 				}
@@ -183,41 +199,53 @@ public class ProtonEntityConverter extends AbstractEntityConverter {
 		return new Document(items);
 	}
 	
-	@SuppressWarnings("unchecked")
-	private Item<?> toItem(String name, Object value, List<com.hcl.domino.db.model.ItemFlags> flags) {
-		com.hcl.domino.db.model.ItemFlags[] flagsArray = flags.toArray(new com.hcl.domino.db.model.ItemFlags[flags.size()]);
-		
-		if(value instanceof Collection && ((Collection<?>)value).isEmpty()) {
-			return new TextItem(name, (String)null, flagsArray);
+	/**
+	 * Releases the {@link Jsonb} instance used by this converter.
+	 * 
+	 * @since 1.0.0
+	 */
+	@Override
+	public void close() {
+		try {
+			jsonb.close();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
 		}
-		
-		if(value instanceof String) {
-			return new TextItem(name, (String)value, flagsArray);
-		} else if(value instanceof Collection && ((Collection<?>)value).iterator().next() instanceof String) {
-			List<String> values = new ArrayList<>((Collection<String>)value);
-			return new TextItem(name, values, flagsArray);
-		} else if(value instanceof LocalDate) {
-			return new DateItem(name, (LocalDate)value, flagsArray);
-		} else if(value instanceof Collection && ((Collection<?>)value).iterator().next() instanceof LocalDate) {
-			List<LocalDate> values = new ArrayList<>((Collection<LocalDate>)value);
-			return new DateItem(name, values, false, flagsArray);
-		} else if(value instanceof LocalTime) {
-			return new TimeItem(name, (LocalTime)value, flagsArray);
-		} else if(value instanceof Collection && ((Collection<?>)value).iterator().next() instanceof LocalTime) {
-			List<LocalTime> values = new ArrayList<>((Collection<LocalTime>)value);
-			return new TimeItem(name, values, false, flagsArray);
-		} else if(value instanceof ZonedDateTime) {
-			return new DateTimeItem(name, (ZonedDateTime)value, flagsArray);
-		} else if(value instanceof Collection && ((Collection<?>)value).iterator().next() instanceof ZonedDateTime) {
-			List<ZonedDateTime> values = new ArrayList<>((Collection<ZonedDateTime>)value);
-			return new DateTimeItem(name, values, false, flagsArray);
-		} else if(value instanceof Number) {
-			return new NumberItem(name, (Number)value, flagsArray);
-		} else if(value instanceof Collection && ((Collection<?>)value).iterator().next() instanceof Number) {
-			List<Number> values = new ArrayList<>((Collection<Number>)value);
-			return new NumberItem(name, values, false, flagsArray);
+	}
+	
+	/**
+	 * Retrieves the cached mapping metadata for the provided entity class,
+	 * computing it on first use.
+	 * 
+	 * @param classMapping the entity class mapping, which may be {@code null}
+	 * @return the metadata for the entity
+	 * @since 1.0.0
+	 */
+	EntityMetadata getMetadata(ClassMapping classMapping) {
+		if(classMapping == null) {
+			return emptyMetadata;
 		}
-		
-		throw new UnsupportedOperationException(MessageFormat.format("Unable to convert value of type {0}", value.getClass().getName()));
+		return metadata.computeIfAbsent(classMapping, mapping -> {
+			List<String> itemNames = mapping.getFields()
+				.stream()
+				.map(f -> f.getNativeField())
+				.map(f -> {
+					Column col = f.getAnnotation(Column.class);
+					if(col == null) {
+						return null;
+					}
+					return col.value().isEmpty() ? f.getName() : col.value();
+				})
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+			return new EntityMetadata(itemNames, itemName -> new EntityMetadata.ItemMetadata(
+				getFieldAnnotation(mapping, itemName, ItemStorage.class).orElse(null),
+				getFieldAnnotation(mapping, itemName, ItemFlags.class).orElse(null)
+			));
+		});
+	}
+	
+	private Item<?> toItem(String name, Object value, com.hcl.domino.db.model.ItemFlags[] flagsArray) {
+		return itemDispatcher.toItem(name, value, flagsArray);
 	}
 }
@@ -0,0 +1,420 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationEvent.Operation;
+
+import com.hcl.domino.db.model.Database;
+
+/**
+ * Hedges idempotent Proton reads: when a read has not completed within a
+ * delay derived from recent read latencies, the same read is issued against
+ * an alternate database from a timer, and the first successful result is
+ * used, cancelling the other read. A read that fails before the delay is
+ * hedged immediately, and the result fails only when both reads fail.
+ *
+ * <p>Latencies are tracked per operation type in a sliding window, and the
+ * delay is the configured percentile of that window, but no less than the
+ * configured minimum. Until a window holds {@link #MIN_SAMPLES} samples, reads
+ * of that type are not hedged.</p>
+ *
+ * @since 1.0.0
+ */
+class ReadHedger {
+	/** The operations whose reads may be hedged */
+	private static final Set<Operation> HEDGED_OPERATIONS = EnumSet.of(Operation.GET_BY_ID, Operation.GET_BY_IDS, Operation.EXISTS_BY_ID, Operation.EXISTS_BY_IDS, Operation.SELECT, Operation.SELECT_PAGE, Operation.VIEW_QUERY, Operation.COUNT);
+	static final int WINDOW_SIZE = 1024;
+	static final int MIN_SAMPLES = 32;
+	/** The number of samples recorded between recomputations of the delay */
+	private static final int RECOMPUTE_INTERVAL = 32;
+	/** The interval at which to check for completion when futures cannot notify */
+	private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	/**
+	 * Issues hedged reads when their delay elapses. The thread only issues the
+	 * asynchronous calls, and exits when idle.
+	 */
+	private static final ScheduledThreadPoolExecutor SCHEDULER = newScheduler();
+
+	/**
+	 * Ring buffer of the latencies of recent reads of one operation type.
+	 */
+	private class LatencyWindow {
+		private final long[] samples = new long[WINDOW_SIZE];
+		private int next;
+		private int size;
+		private int sinceRecompute;
+		/** The current hedge delay in nanoseconds, or -1 when not yet known */
+		private long delayNanos = -1;
+
+		synchronized void record(long nanos) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			if(size < samples.length) {
+				size++;
+			}
+			if(size >= MIN_SAMPLES && (delayNanos < 0 || ++sinceRecompute >= RECOMPUTE_INTERVAL)) {
+				long[] sorted = Arrays.copyOf(samples, size);
+				Arrays.sort(sorted);
+				int index = (int)Math.ceil(percentile / 100 * size) - 1;
+				delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, Math.min(index, size - 1))]);
+				sinceRecompute = 0;
+			}
+		}
+
+		synchronized long getDelay() {
+			return delayNanos;
+		}
+	}
+
+	/**
+	 * Future that issues the hedged read from a timer once the hedge delay
+	 * elapses, or as soon as the primary read fails, and completes with the
+	 * first successful result. It fails only when both reads fail, or when the
+	 * primary fails and no hedge can be issued.
+	 */
+	private static class HedgedFuture<T> implements Future<T> {
+		private static final int HEDGE_NOT_ISSUED = 0;
+		private static final int HEDGE_RUNNING = 1;
+		private static final int HEDGE_FAILED = 2;
+
+		private final LatencyWindow window;
+		private final Future<T> primary;
+		/** Issues the hedged read, or {@code null} when the read cannot be hedged */
+		private final Supplier<Future<T>> hedgeCall;
+		private final long start;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+		private volatile ScheduledFuture<?> timer;
+		/** Set when the failure was thrown directly by the read's {@code get()} rather than wrapped */
+		private volatile RuntimeException directFailure;
+
+		// Guarded by this
+		private Future<T> hedge;
+		private int hedgeState = HEDGE_NOT_ISSUED;
+		private Throwable primaryFailure;
+		private boolean primaryDirect;
+		private Throwable hedgeFailure;
+
+		HedgedFuture(LatencyWindow window, Future<T> primary, Supplier<Future<T>> hedgeCall) {
+			this.window = window;
+			this.primary = primary;
+			this.hedgeCall = hedgeCall;
+			this.start = System.nanoTime();
+		}
+
+		void start(long delayNanos) {
+			if(hedgeCall != null) {
+				timer = SCHEDULER.schedule(this::issueHedge, delayNanos, TimeUnit.NANOSECONDS);
+			}
+			onDone(primary, () -> completed(primary));
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = result.cancel(mayInterruptIfRunning);
+			if(cancelled) {
+				finish();
+				primary.cancel(mayInterruptIfRunning);
+				Future<T> hedge = getHedge();
+				if(hedge != null) {
+					hedge.cancel(mayInterruptIfRunning);
+				}
+			}
+			return cancelled;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return result.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return result.isDone();
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException {
+			try {
+				return result.get();
+			} catch(ExecutionException e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			try {
+				return result.get(timeout, unit);
+			} catch(ExecutionException e) {
+				throw rethrow(e);
+			}
+		}
+
+		/**
+		 * Rethrows failures that the underlying read threw directly, such as
+		 * Proton's {@code BulkOperationException}, in the same way.
+		 */
+		private ExecutionException rethrow(ExecutionException e) {
+			RuntimeException direct = directFailure;
+			if(direct != null) {
+				throw direct;
+			}
+			return e;
+		}
+
+		private void issueHedge() {
+			synchronized(this) {
+				if(hedgeState != HEDGE_NOT_ISSUED || result.isDone()) {
+					return;
+				}
+				hedgeState = HEDGE_RUNNING;
+			}
+			Future<T> issued = null;
+			if(hedgeCall != null) {
+				try {
+					issued = hedgeCall.get();
+				} catch(RuntimeException e) {
+					// The alternate is unavailable, so the primary alone decides the result
+				}
+			}
+			if(issued == null) {
+				synchronized(this) {
+					hedgeState = HEDGE_FAILED;
+				}
+				failIfBothFailed();
+				return;
+			}
+			synchronized(this) {
+				hedge = issued;
+			}
+			if(result.isDone()) {
+				issued.cancel(true);
+				return;
+			}
+			Future<T> hedge = issued;
+			onDone(hedge, () -> completed(hedge));
+		}
+
+		private void completed(Future<T> source) {
+			T value;
+			try {
+				value = source.get();
+			} catch(ExecutionException e) {
+				failed(source, e.getCause() == null ? e : e.getCause(), false);
+				return;
+			} catch(CancellationException e) {
+				failed(source, e, false);
+				return;
+			} catch(RuntimeException e) {
+				failed(source, e, true);
+				return;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed(source, e, false);
+				return;
+			}
+			if(result.complete(value)) {
+				finish();
+				Future<T> other = source == primary ? getHedge() : primary;
+				if(other != null) {
+					other.cancel(true);
+				}
+			}
+		}
+
+		private void failed(Future<T> source, Throwable failure, boolean direct) {
+			boolean hedgeNow = false;
+			synchronized(this) {
+				if(source == primary) {
+					primaryFailure = failure;
+					primaryDirect = direct;
+					hedgeNow = hedgeState == HEDGE_NOT_ISSUED;
+				} else {
+					hedgeState = HEDGE_FAILED;
+					hedgeFailure = failure;
+				}
+			}
+			if(hedgeNow) {
+				// Don't wait out the delay when the primary has already failed
+				issueHedge();
+			}
+			failIfBothFailed();
+		}
+
+		/**
+		 * Fails the result with the primary's failure once neither read can
+		 * still succeed.
+		 */
+		private void failIfBothFailed() {
+			Throwable failure;
+			synchronized(this) {
+				if(primaryFailure == null || hedgeState != HEDGE_FAILED || result.isDone()) {
+					return;
+				}
+				failure = primaryFailure;
+				if(hedgeFailure != null && hedgeFailure != failure && !(hedgeFailure instanceof CancellationException)) {
+					failure.addSuppressed(hedgeFailure);
+				}
+				if(primaryDirect) {
+					directFailure = (RuntimeException)failure;
+				}
+			}
+			if(result.completeExceptionally(failure)) {
+				finish();
+			}
+		}
+
+		private synchronized Future<T> getHedge() {
+			return hedge;
+		}
+
+		/**
+		 * Records the latency of the read and stops the hedge timer. When the
+		 * hedge wins, the elapsed time is a lower bound for the primary's
+		 * latency.
+		 */
+		private void finish() {
+			ScheduledFuture<?> timer = this.timer;
+			if(timer != null) {
+				timer.cancel(false);
+			}
+			window.record(System.nanoTime() - start);
+		}
+
+		/**
+		 * Runs the callback once the future completes, by notification when the
+		 * future supports it and otherwise by polling from the timer thread.
+		 */
+		private static void onDone(Future<?> future, Runnable callback) {
+			if(future instanceof CompletableFuture) {
+				((CompletableFuture<?>)future).whenComplete((value, failure) -> callback.run());
+			} else if(future.isDone()) {
+				callback.run();
+			} else {
+				SCHEDULER.schedule(() -> onDone(future, callback), POLL_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	private final DatabaseSupplier alternate;
+	private final double percentile;
+	private final long minDelayNanos;
+	private final Map<Operation, LatencyWindow> windows;
+
+	/**
+	 * @param alternate the supplier of the database to send hedged reads to
+	 * @param percentile the percentile of recent latencies after which to hedge
+	 * @param minDelayMillis the minimum time in milliseconds before hedging
+	 */
+	public ReadHedger(DatabaseSupplier alternate, double percentile, long minDelayMillis) {
+		this.alternate = alternate;
+		this.percentile = percentile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+		this.windows = new EnumMap<>(Operation.class);
+		for(Operation operation : HEDGED_OPERATIONS) {
+			windows.put(operation, new LatencyWindow());
+		}
+	}
+
+	private ReadHedger(ReadHedger parent, DatabaseSupplier alternate) {
+		this.alternate = alternate;
+		this.percentile = parent.percentile;
+		this.minDelayNanos = parent.minDelayNanos;
+		this.windows = parent.windows;
+	}
+
+	/**
+	 * Resolves the alternate database now, for use when reads are issued from
+	 * a different thread than the one that has the contextual database. If the
+	 * alternate cannot be resolved, reads wait for the primary alone.
+	 *
+	 * @return a hedger that shares this hedger's latency statistics
+	 */
+	public ReadHedger bind() {
+		try {
+			Database database = alternate.get();
+			return new ReadHedger(this, () -> database);
+		} catch(RuntimeException e) {
+			return new ReadHedger(this, () -> {
+				throw e;
+			});
+		}
+	}
+
+	/**
+	 * Issues a read against the provided database, hedging it against the
+	 * alternate database if the operation is eligible.
+	 *
+	 * @param operation the operation issuing the read
+	 * @param database the primary database
+	 * @param call the read to issue, which must be idempotent
+	 * @return a future for the read
+	 */
+	public <T> Future<T> read(Operation operation, Database database, Function<Database, Future<T>> call) {
+		Future<T> primary = call.apply(database);
+		LatencyWindow window = windows.get(operation);
+		if(window == null) {
+			return primary;
+		}
+		long delayNanos = window.getDelay();
+		Supplier<Future<T>> hedgeCall = null;
+		if(delayNanos >= 0) {
+			// Resolve the alternate here, since the hedge is issued from the timer thread
+			try {
+				Database alternateDatabase = alternate.get();
+				hedgeCall = () -> call.apply(alternateDatabase);
+			} catch(RuntimeException e) {
+				// Wait for the primary alone
+			}
+		}
+		HedgedFuture<T> result = new HedgedFuture<>(window, primary, hedgeCall);
+		result.start(delayNanos);
+		return result;
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static ScheduledThreadPoolExecutor newScheduler() {
+		ScheduledThreadPoolExecutor result = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "proton-read-hedger"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		result.setRemoveOnCancelPolicy(true);
+		result.setKeepAliveTime(1, TimeUnit.MINUTES);
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.openntf.xsp.nosql.communication.driver.proton.DatabaseSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.ShardRouter;
+
+import com.hcl.domino.db.model.Database;
+
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Holds the named databases of a sharded configuration, routes entities to
+ * them, and runs operations against several of them in parallel.
+ *
+ * @since 1.0.0
+ */
+class ShardSet {
+	private final Map<String, DatabaseSupplier> shards;
+	/** The configured suppliers, which identify each shard across bound copies of this set */
+	private final Map<String, DatabaseSupplier> keys;
+	private final List<String> names;
+	private final ShardRouter router;
+	private final Executor executor;
+
+	/**
+	 * @param shards the database suppliers keyed by shard name, in the order
+	 *        in which unsorted results are returned
+	 * @param router the router for written entities, which may be {@code null}
+	 *        when there is only one shard
+	 * @param executor the executor used to run per-shard operations
+	 */
+	public ShardSet(Map<String, DatabaseSupplier> shards, ShardRouter router, Executor executor) {
+		this(shards, shards, router, executor);
+	}
+
+	private ShardSet(Map<String, DatabaseSupplier> shards, Map<String, DatabaseSupplier> keys, ShardRouter router, Executor executor) {
+		if(shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		if(router == null && shards.size() > 1) {
+			throw new IllegalArgumentException("A shard router is required when more than one shard is configured");
+		}
+		this.shards = new LinkedHashMap<>(shards);
+		this.keys = keys == shards ? this.shards : keys;
+		this.names = Collections.unmodifiableList(new ArrayList<>(shards.keySet()));
+		this.router = router;
+		this.executor = executor;
+	}
+
+	public List<String> getNames() {
+		return names;
+	}
+
+	public DatabaseSupplier getSupplier(String name) {
+		return shards.get(name);
+	}
+
+	/**
+	 * @return a value identifying the named shard's database, which is the
+	 *         same for this set and every set bound from it
+	 */
+	public Object getKey(String name) {
+		return keys.get(name);
+	}
+
+	/**
+	 * @param entity the entity to be written
+	 * @return the name of the shard that stores the entity
+	 * @throws IllegalArgumentException if the router names an unknown shard
+	 */
+	public String route(DocumentEntity entity) {
+		if(router == null) {
+			return names.get(0);
+		}
+		String name = router.route(entity);
+		if(name == null || !shards.containsKey(name)) {
+			throw new IllegalArgumentException(MessageFormat.format("Entity of type {0} was routed to unknown shard \"{1}\"", entity.getName(), name));
+		}
+		return name;
+	}
+
+	/**
+	 * Resolves the database of every shard on the calling thread.
+	 *
+	 * @return a new set whose suppliers return the resolved databases
+	 */
+	public ShardSet bind() {
+		Map<String, DatabaseSupplier> bound = new LinkedHashMap<>();
+		shards.forEach((name, supplier) -> {
+			Database database = supplier.get();
+			bound.put(name, () -> database);
+		});
+		return new ShardSet(bound, keys, router, executor);
+	}
+
+	/**
+	 * Runs the provided operation against every shard in parallel.
+	 *
+	 * @see #fanOut(Collection, Function)
+	 */
+	public <T> Map<String, T> fanOut(Function<String, T> op) {
+		return fanOut(names, op);
+	}
+
+	/**
+	 * Runs the provided operation against each of the named shards in
+	 * parallel, waiting for all of them to finish.
+	 *
+	 * @param shardNames the shards to run against
+	 * @param op the operation, which receives the shard name
+	 * @return the results keyed by shard name, in shard order
+	 * @throws RuntimeException the failure of the first failed shard, with
+	 *         those of any other failed shards suppressed
+	 */
+	public <T> Map<String, T> fanOut(Collection<String> shardNames, Function<String, T> op) {
+		Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+		for(String name : shardNames) {
+			futures.put(name, CompletableFuture.supplyAsync(() -> op.apply(name), executor));
+		}
+		Map<String, T> result = new LinkedHashMap<>();
+		RuntimeException failure = null;
+		for(Map.Entry<String, CompletableFuture<T>> entry : futures.entrySet()) {
+			try {
+				result.put(entry.getKey(), entry.getValue().join());
+			} catch(CompletionException e) {
+				RuntimeException cause = unwrap(e);
+				if(failure == null) {
+					failure = cause;
+				} else {
+					failure.addSuppressed(cause);
+				}
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the provided lookup against every shard in parallel, returning as
+	 * soon as one of them finds a value.
+	 *
+	 * @param op the lookup, which receives the shard name
+	 * @return the first value found, or an empty value if no shard found one
+	 * @throws RuntimeException if no shard found a value and at least one
+	 *         failed
+	 */
+	public <T> Optional<T> findAny(Function<String, Optional<T>> op) {
+		CompletableFuture<Optional<T>> result = new CompletableFuture<>();
+		AtomicInteger remaining = new AtomicInteger(names.size());
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		for(String name : names) {
+			CompletableFuture.supplyAsync(() -> op.apply(name), executor).whenComplete((value, t) -> {
+				if(t != null) {
+					failure.compareAndSet(null, unwrap(t));
+				} else if(value.isPresent()) {
+					result.complete(value);
+				}
+				if(remaining.decrementAndGet() == 0) {
+					RuntimeException e = failure.get();
+					if(e != null) {
+						result.completeExceptionally(e);
+					} else {
+						result.complete(Optional.empty());
+					}
+				}
+			});
+		}
+		try {
+			return result.join();
+		} catch(CompletionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static RuntimeException unwrap(Throwable t) {
+		Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+		if(cause instanceof RuntimeException) {
+			return (RuntimeException)cause;
+		} else if(cause instanceof Error) {
+			throw (Error)cause;
+		}
+		return new RuntimeException(cause);
+	}
+}
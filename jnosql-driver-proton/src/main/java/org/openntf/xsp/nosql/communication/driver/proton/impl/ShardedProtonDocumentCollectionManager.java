@@ -0,0 +1,671 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+import org.openntf.xsp.nosql.communication.driver.proton.AccessTokenSupplier;
+import org.openntf.xsp.nosql.communication.driver.proton.DeleteReport;
+import org.openntf.xsp.nosql.communication.driver.proton.KeysetPage;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkDeleteException;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkOperationException;
+import org.openntf.xsp.nosql.mapping.extension.ViewQuery;
+
+import jakarta.nosql.Sort;
+import jakarta.nosql.document.DocumentCondition;
+import jakarta.nosql.document.DocumentDeleteQuery;
+import jakarta.nosql.document.DocumentEntity;
+import jakarta.nosql.document.DocumentQuery;
+
+/**
+ * Spreads entities across the databases of a {@link ShardSet}, writing each
+ * entity to the shard chosen by the router and running reads, counts and
+ * deletes against all shards in parallel.
+ *
+ * <p>Each shard is accessed through its own {@link ProtonDocumentCollectionManager},
+ * so per-shard operations are reported to listeners individually. These are
+ * created for each operation with the shard databases and access token
+ * resolved on the calling thread, since the per-shard work runs on other
+ * threads. Read hedging is not applied to sharded databases.</p>
+ *
+ * @since 1.0.0
+ */
+class ShardedProtonDocumentCollectionManager extends ProtonDocumentCollectionManager {
+	/**
+	 * Delegates to another query with a different skip and limit, so that each
+	 * shard can be asked for enough results to satisfy the global window.
+	 */
+	private static class ShardQuery implements DocumentQuery {
+		private final DocumentQuery delegate;
+		private final long limit;
+
+		ShardQuery(DocumentQuery delegate, long limit) {
+			this.delegate = delegate;
+			this.limit = limit;
+		}
+
+		@Override
+		public long getLimit() {
+			return limit;
+		}
+
+		@Override
+		public long getSkip() {
+			return 0;
+		}
+
+		@Override
+		public String getDocumentCollection() {
+			return delegate.getDocumentCollection();
+		}
+
+		@Override
+		public Optional<DocumentCondition> getCondition() {
+			return delegate.getCondition();
+		}
+
+		@Override
+		public List<Sort> getSorts() {
+			return delegate.getSorts();
+		}
+
+		@Override
+		public List<String> getDocuments() {
+			return delegate.getDocuments();
+		}
+	}
+
+	/**
+	 * Reads several result iterators as one, either one after another or, when
+	 * a comparator is provided, as a merge of iterators that are each already
+	 * sorted by it. Ties are taken from the earlier shard first.
+	 */
+	private static class MergingIterator implements Iterator<DocumentEntity> {
+		private static class Head {
+			private final DocumentEntity entity;
+			private final int source;
+
+			Head(DocumentEntity entity, int source) {
+				this.entity = entity;
+				this.source = source;
+			}
+		}
+
+		private final List<Iterator<DocumentEntity>> sources;
+		private final PriorityQueue<Head> heads;
+		private int current;
+		private boolean started;
+
+		MergingIterator(List<Iterator<DocumentEntity>> sources, Comparator<DocumentEntity> comparator) {
+			this.sources = sources;
+			if(comparator == null) {
+				this.heads = null;
+			} else {
+				Comparator<Head> byEntity = (a, b) -> comparator.compare(a.entity, b.entity);
+				this.heads = new PriorityQueue<>(Math.max(1, sources.size()), byEntity.thenComparingInt(h -> h.source));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(heads == null) {
+				while(current < sources.size()) {
+					if(sources.get(current).hasNext()) {
+						return true;
+					}
+					current++;
+				}
+				return false;
+			}
+			if(!started) {
+				// Defer the first read from each shard until results are requested
+				for(int i = 0; i < sources.size(); i++) {
+					advance(i);
+				}
+				started = true;
+			}
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public DocumentEntity next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if(heads == null) {
+				return sources.get(current).next();
+			}
+			Head head = heads.poll();
+			advance(head.source);
+			return head.entity;
+		}
+
+		private void advance(int source) {
+			Iterator<DocumentEntity> iter = sources.get(source);
+			if(iter.hasNext()) {
+				heads.add(new Head(iter.next(), source));
+			}
+		}
+	}
+
+	/** The version of the continuation tokens produced by {@link #selectPage} */
+	private static final String PAGE_TOKEN_VERSION = "s1"; //$NON-NLS-1$
+	private static final char PAGE_TOKEN_SEPARATOR = '\u001f';
+
+	private final ShardSet shards;
+	private final AccessTokenSupplier tokenSupplier;
+	private final ProtonDriverOptions options;
+	private final ProtonEntityConverter entityConverter;
+	private final CountCache countCache;
+	private final EntityCache entityCache;
+	private final DqlTemplateCache dqlCache;
+	private final WriteBehindQueue writeBehind;
+	private final ViewPreloadCache viewCache;
+
+	/**
+	 * Creates a manager that uses shared components owned by the caller, which
+	 * are therefore not closed with this manager.
+	 */
+	ShardedProtonDocumentCollectionManager(ShardSet shards, AccessTokenSupplier tokenSupplier, ProtonDriverOptions options, ProtonEntityConverter entityConverter, CountCache countCache, EntityCache entityCache, DqlTemplateCache dqlCache, WriteBehindQueue writeBehind, ViewPreloadCache viewCache) {
+		super(() -> {
+			throw new IllegalStateException("A sharded manager has no single database");
+		}, tokenSupplier, options, entityConverter, null, entityCache, dqlCache, null, null, null);
+		this.shards = shards;
+		this.tokenSupplier = tokenSupplier;
+		this.options = options;
+		this.entityConverter = entityConverter;
+		this.countCache = countCache;
+		this.entityCache = entityCache;
+		this.dqlCache = dqlCache;
+		this.writeBehind = writeBehind;
+		this.viewCache = viewCache;
+	}
+
+	@Override
+	public DocumentEntity insert(DocumentEntity entity, boolean computeWithForm) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		try {
+			return delegates.get(shards.route(entity)).insert(entity, computeWithForm);
+		} finally {
+			invalidateCount(entity.getName());
+		}
+	}
+
+	/**
+	 * Writes the entity to the shard that holds its document, which is found
+	 * by probing the shards when it is not the one chosen by the router, such
+	 * as when a routed value has changed.
+	 */
+	@Override
+	public DocumentEntity update(DocumentEntity entity, boolean computeWithForm) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		try {
+			String name = groupByShard(delegates, Collections.singletonList(entity), true).keySet().iterator().next();
+			return delegates.get(name).update(entity, computeWithForm);
+		} finally {
+			invalidateCount(entity.getName());
+		}
+	}
+
+	@Override
+	public Iterable<DocumentEntity> insert(Iterable<DocumentEntity> entities) {
+		return writeAll(entities, false, ProtonDocumentCollectionManager::insert);
+	}
+
+	@Override
+	public Iterable<DocumentEntity> update(Iterable<DocumentEntity> entities) {
+		return writeAll(entities, true, ProtonDocumentCollectionManager::update);
+	}
+
+	@Override
+	public boolean existsById(String unid) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		return shards.findAny(name -> delegates.get(name).existsById(unid) ? Optional.of(Boolean.TRUE) : Optional.<Boolean>empty())
+			.isPresent();
+	}
+
+	@Override
+	public Optional<DocumentEntity> getById(String entityName, String id) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		return shards.findAny(name -> delegates.get(name).getById(entityName, id));
+	}
+
+	@Override
+	public Map<String, DocumentEntity> getByIds(String entityName, Collection<String> ids) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		Map<String, DocumentEntity> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		shards.fanOut(name -> delegates.get(name).getByIds(entityName, ids))
+			.values()
+			.forEach(found::putAll);
+		Map<String, DocumentEntity> result = new LinkedHashMap<>();
+		for(String unid : new LinkedHashSet<>(ids)) {
+			DocumentEntity entity = found.get(unid);
+			if(entity != null) {
+				result.put(unid, entity);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Boolean> existsByIds(Collection<String> ids) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		Set<String> existing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		shards.fanOut(name -> delegates.get(name).existsByIds(ids))
+			.values()
+			.forEach(shardResult -> shardResult.forEach((unid, exists) -> {
+				if(exists) {
+					existing.add(unid);
+				}
+			}));
+		Map<String, Boolean> result = new LinkedHashMap<>();
+		for(String unid : new LinkedHashSet<>(ids)) {
+			result.put(unid, existing.contains(unid));
+		}
+		return result;
+	}
+
+	@Override
+	public void delete(DocumentDeleteQuery query) {
+		DeleteReport report = deleteWithReport(query);
+		if(!report.isComplete()) {
+			throw new ProtonBulkDeleteException(report);
+		}
+	}
+
+	/**
+	 * Deletes the matching documents from all shards in parallel. A requested
+	 * UNID is reported as missing only when no shard held it.
+	 */
+	@Override
+	public DeleteReport deleteWithReport(DocumentDeleteQuery query) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		try {
+			Map<String, DeleteReport> reports = shards.fanOut(name -> delegates.get(name).deleteWithReport(query));
+			Set<String> deleted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			List<String> deletedOrder = new ArrayList<>();
+			for(DeleteReport report : reports.values()) {
+				for(String unid : report.getDeleted()) {
+					if(deleted.add(unid)) {
+						deletedOrder.add(unid);
+					}
+				}
+			}
+			Map<String, Throwable> failures = new LinkedHashMap<>();
+			Set<String> failed = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			for(DeleteReport report : reports.values()) {
+				report.getFailures().forEach((unid, cause) -> {
+					if(!deleted.contains(unid) && failed.add(unid)) {
+						failures.put(unid, cause);
+					}
+				});
+			}
+			Set<String> missing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			List<String> missingOrder = new ArrayList<>();
+			for(DeleteReport report : reports.values()) {
+				for(String unid : report.getMissing()) {
+					if(!deleted.contains(unid) && !failed.contains(unid) && missing.add(unid)) {
+						missingOrder.add(unid);
+					}
+				}
+			}
+			return new DeleteReport(deletedOrder, missingOrder, failures);
+		} finally {
+			invalidateCount(query.getDocumentCollection());
+		}
+	}
+
+	/**
+	 * Runs the query against all shards in parallel and merges the results.
+	 * Each shard is asked for up to {@code skip + limit} results, and the skip
+	 * and limit are then applied to the merged results. When the query has
+	 * sorts, the sorted results of each shard are merged in sort order;
+	 * otherwise, shards are read one after another.
+	 */
+	@Override
+	public Stream<DocumentEntity> select(DocumentQuery query) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		long skip = query.getSkip();
+		long limit = query.getLimit();
+		DocumentQuery shardQuery = query;
+		if(skip > 0 || limit > 0) {
+			shardQuery = new ShardQuery(query, limit > 0 ? skip + limit : 0);
+		}
+		DocumentQuery fShardQuery = shardQuery;
+		List<Stream<DocumentEntity>> results = new ArrayList<>(shards.fanOut(name -> delegates.get(name).select(fShardQuery)).values());
+		return merge(results, query.getSorts(), skip, limit);
+	}
+
+	/**
+	 * Reads the view from all shards in parallel and merges the results in
+	 * the same way as {@link #select(DocumentQuery)}.
+	 */
+	@Override
+	Stream<DocumentEntity> viewDocuments(String entityName, String viewName, long skip, long limit, List<Sort> sorts, ViewQuery viewQuery) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		long shardLimit = limit > 0 ? skip + limit : 0;
+		List<Stream<DocumentEntity>> results = new ArrayList<>(shards.fanOut(name -> delegates.get(name).viewDocuments(entityName, viewName, 0, shardLimit, sorts, viewQuery)).values());
+		return merge(results, sorts, skip, limit);
+	}
+
+	/**
+	 * Reads a page from each shard in parallel and merges them in the same
+	 * way as {@link #select(DocumentQuery)}. The continuation token holds the
+	 * position reached in each shard that has results left, so each following
+	 * page reads only the results after those positions. The query's skip is
+	 * applied to the merged results of the first page.
+	 */
+	@Override
+	public KeysetPage selectPage(DocumentQuery query, String continuationToken) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		int pageSize = getKeysetPageSize(query);
+		long skip;
+		Map<String, String> positions;
+		if(continuationToken == null || continuationToken.isEmpty()) {
+			skip = query.getSkip();
+			positions = new LinkedHashMap<>();
+			delegates.keySet().forEach(name -> positions.put(name, null));
+		} else {
+			skip = 0;
+			positions = parsePageToken(continuationToken, delegates.keySet());
+		}
+		int shardPageSize = (int)Math.min(skip + pageSize, Integer.MAX_VALUE - 1);
+		Map<String, Page> pages = shards.fanOut(positions.keySet(), name -> delegates.get(name).selectPage(query, positions.get(name), 0, shardPageSize));
+
+		// Track the shard of each entity to find how many of each page were used
+		Map<DocumentEntity, String> sources = new IdentityHashMap<>();
+		List<Stream<DocumentEntity>> results = new ArrayList<>();
+		pages.forEach((name, page) -> {
+			page.getEntities().forEach(entity -> sources.put(entity, name));
+			results.add(page.getEntities().stream());
+		});
+		Map<String, Integer> used = new HashMap<>();
+		List<DocumentEntity> entities = new ArrayList<>();
+		Iterator<DocumentEntity> merged = merge(results, query.getSorts(), 0, skip + pageSize).iterator();
+		for(long i = 0; merged.hasNext(); i++) {
+			DocumentEntity entity = merged.next();
+			used.merge(sources.get(entity), 1, Integer::sum);
+			if(i >= skip) {
+				entities.add(entity);
+			}
+		}
+
+		Map<String, String> next = new LinkedHashMap<>();
+		pages.forEach((name, page) -> {
+			int count = used.getOrDefault(name, 0);
+			if(count == 0 && !page.getEntities().isEmpty()) {
+				// Nothing was used from this shard, so it resumes where it was
+				next.put(name, positions.get(name));
+			} else {
+				String position = page.getTokenAfter(count);
+				if(position != null) {
+					next.put(name, position);
+				}
+			}
+		});
+		return new KeysetPage(entities, next.isEmpty() ? null : toPageToken(next));
+	}
+
+	@Override
+	public long count(String documentCollection) {
+		if(countCache != null) {
+			return countCache.get(documentCollection, tokenSupplier.get(), () -> countAll(documentCollection));
+		}
+		return countAll(documentCollection);
+	}
+
+	@Override
+	void readModifiedSince(String entityName, Instant since, int pageSize, Consumer<Map<String, DocumentEntity>> consumer) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		// Read shards in turn so that the consumer is never called concurrently
+		for(ProtonDocumentCollectionManager delegate : delegates.values()) {
+			delegate.readModifiedSince(entityName, since, pageSize, consumer);
+		}
+	}
+
+	@Override
+	List<String> readEntityUnids(String entityName) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		List<String> result = new ArrayList<>();
+		shards.fanOut(name -> delegates.get(name).readEntityUnids(entityName))
+			.values()
+			.forEach(result::addAll);
+		return result;
+	}
+
+	@Override
+	public void close() {
+		// Per-operation delegates share this manager's components, so there is nothing else to release
+		super.close();
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static Stream<DocumentEntity> merge(List<Stream<DocumentEntity>> results, List<Sort> sorts, long skip, long limit) {
+		List<Iterator<DocumentEntity>> iterators = results.stream()
+			.map(Stream::iterator)
+			.collect(Collectors.toList());
+		Comparator<DocumentEntity> comparator = sorts.isEmpty() ? null : new DocumentSorter(sorts).toEntityComparator();
+		Spliterator<DocumentEntity> merged = Spliterators.spliteratorUnknownSize(new MergingIterator(iterators, comparator), Spliterator.ORDERED | Spliterator.NONNULL);
+		Stream<DocumentEntity> result = StreamSupport.stream(merged, false)
+			.onClose(() -> results.forEach(Stream::close));
+		if(skip > 0) {
+			result = result.skip(skip);
+		}
+		if(limit > 0) {
+			result = result.limit(limit);
+		}
+		return result;
+	}
+
+	/**
+	 * Encodes the position reached in each shard, using an empty position for
+	 * a shard that is to be read from its first result.
+	 */
+	private static String toPageToken(Map<String, String> positions) {
+		StringBuilder result = new StringBuilder(PAGE_TOKEN_VERSION);
+		positions.forEach((name, position) -> {
+			result.append(PAGE_TOKEN_SEPARATOR).append(name);
+			result.append(PAGE_TOKEN_SEPARATOR).append(position == null ? "" : position); //$NON-NLS-1$
+		});
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(result.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a token produced by {@link #toPageToken(Map)}, whose shard
+	 * positions are validated by the shards when they are read.
+	 *
+	 * @throws IllegalArgumentException if the token is malformed or names a
+	 *         shard that is not configured
+	 */
+	private static Map<String, String> parsePageToken(String token, Set<String> shardNames) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		}
+		String[] parts = decoded.split(String.valueOf(PAGE_TOKEN_SEPARATOR), -1);
+		if(!PAGE_TOKEN_VERSION.equals(parts[0]) || parts.length % 2 != 1) {
+			throw new IllegalArgumentException("Invalid continuation token");
+		}
+		Map<String, String> result = new LinkedHashMap<>();
+		for(int i = 1; i < parts.length; i += 2) {
+			if(!shardNames.contains(parts[i]) || result.containsKey(parts[i])) {
+				throw new IllegalArgumentException("Continuation token does not match the configured shards");
+			}
+			result.put(parts[i], parts[i + 1].isEmpty() ? null : parts[i + 1]);
+		}
+		return result;
+	}
+
+	/**
+	 * Groups the entities by shard and writes each group with the provided
+	 * operation in parallel, combining any partial failures into a single
+	 * {@link ProtonBulkOperationException}.
+	 */
+	private Iterable<DocumentEntity> writeAll(Iterable<DocumentEntity> entities, boolean updating, BiFunction<ProtonDocumentCollectionManager, List<DocumentEntity>, Iterable<DocumentEntity>> op) {
+		List<DocumentEntity> all = StreamSupport.stream(entities.spliterator(), false)
+			.collect(Collectors.toList());
+		if(all.isEmpty()) {
+			return all;
+		}
+
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		Map<String, List<DocumentEntity>> byShard = groupByShard(delegates, all, updating);
+		try {
+			Map<String, Optional<ProtonBulkOperationException>> outcomes = shards.fanOut(byShard.keySet(), name -> {
+				try {
+					op.apply(delegates.get(name), byShard.get(name));
+					return Optional.<ProtonBulkOperationException>empty();
+				} catch(ProtonBulkOperationException e) {
+					return Optional.of(e);
+				}
+			});
+
+			Map<DocumentEntity, ProtonBulkOperationException.Failure> failures = new IdentityHashMap<>();
+			outcomes.values().forEach(outcome -> outcome.ifPresent(e -> e.getFailures().forEach(failure -> failures.put(failure.getEntity(), failure))));
+			if(!failures.isEmpty()) {
+				List<DocumentEntity> succeeded = new ArrayList<>(all.size());
+				List<ProtonBulkOperationException.Failure> orderedFailures = new ArrayList<>(failures.size());
+				for(DocumentEntity entity : all) {
+					ProtonBulkOperationException.Failure failure = failures.get(entity);
+					if(failure == null) {
+						succeeded.add(entity);
+					} else {
+						orderedFailures.add(failure);
+					}
+				}
+				throw new ProtonBulkOperationException(succeeded, orderedFailures);
+			}
+			return all;
+		} finally {
+			byShard.values().forEach(batch -> invalidateCount(batch.get(0).getName()));
+		}
+	}
+
+	/**
+	 * Creates the per-shard managers for an operation, resolving the shard
+	 * databases and the access token on the calling thread.
+	 */
+	private Map<String, ProtonDocumentCollectionManager> bindDelegates() {
+		ShardSet bound = shards.bind();
+		String token = tokenSupplier.get();
+		Map<String, ProtonDocumentCollectionManager> result = new LinkedHashMap<>();
+		for(String name : bound.getNames()) {
+			// Counts are cached here as totals, so the shards must not cache their own under the same keys
+			result.put(name, new ProtonDocumentCollectionManager(bound.getSupplier(name), bound.getKey(name), () -> token, options, entityConverter, null, entityCache, dqlCache, writeBehind, null, viewCache == null ? null : viewCache.forScope(name)));
+		}
+		return result;
+	}
+
+	/**
+	 * Groups the entities by the shard to write them to. New entities go to
+	 * the shard chosen by the router. When updating, an entity with an ID goes
+	 * to the shard that holds its document: the routed shard is checked first,
+	 * and the UNIDs not found there are looked for in all shards. Entities
+	 * whose documents are not found in any shard are left on the routed shard.
+	 */
+	private Map<String, List<DocumentEntity>> groupByShard(Map<String, ProtonDocumentCollectionManager> delegates, List<DocumentEntity> entities, boolean updating) {
+		Map<DocumentEntity, String> routed = new IdentityHashMap<>();
+		Map<String, List<String>> probes = new LinkedHashMap<>();
+		for(DocumentEntity entity : entities) {
+			String name = shards.route(entity);
+			routed.put(entity, name);
+			if(updating) {
+				getId(entity).ifPresent(unid -> probes.computeIfAbsent(name, key -> new ArrayList<>()).add(unid));
+			}
+		}
+
+		Map<String, String> located = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		if(!probes.isEmpty()) {
+			Set<String> unresolved = new LinkedHashSet<>();
+			shards.fanOut(probes.keySet(), name -> delegates.get(name).existsByIds(probes.get(name)))
+				.forEach((name, result) -> result.forEach((unid, exists) -> {
+					if(exists) {
+						located.put(unid, name);
+					} else {
+						unresolved.add(unid);
+					}
+				}));
+			if(!unresolved.isEmpty()) {
+				shards.fanOut(name -> delegates.get(name).existsByIds(unresolved))
+					.forEach((name, result) -> result.forEach((unid, exists) -> {
+						if(exists) {
+							located.putIfAbsent(unid, name);
+						}
+					}));
+			}
+		}
+
+		Map<String, List<DocumentEntity>> result = new LinkedHashMap<>();
+		for(DocumentEntity entity : entities) {
+			String name = getId(entity).map(located::get).orElse(routed.get(entity));
+			result.computeIfAbsent(name, key -> new ArrayList<>()).add(entity);
+		}
+		return result;
+	}
+
+	private static Optional<String> getId(DocumentEntity entity) {
+		return entity.find(DominoConstants.FIELD_ID)
+			.map(doc -> doc.get(String.class))
+			.filter(unid -> !unid.isEmpty());
+	}
+
+	private long countAll(String documentCollection) {
+		Map<String, ProtonDocumentCollectionManager> delegates = bindDelegates();
+		return shards.fanOut(name -> delegates.get(name).count(documentCollection))
+			.values()
+			.stream()
+			.mapToLong(Long::longValue)
+			.sum();
+	}
+
+	private void invalidateCount(String documentCollection) {
+		if(countCache != null && documentCollection != null) {
+			countCache.invalidate(documentCollection);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the UNIDs matched by view-scoped queries, in result
+ * order, keyed by DQL and access token so that results are never shared
+ * across differing reader access.
+ *
+ * <p>Writes made through the driver discard the entries for the written
+ * entity in every scope, and a load that overlaps such a write is not kept.
+ * Changes made outside the driver are not seen until the entries expire.</p>
+ *
+ * @since 1.0.0
+ */
+class ViewPreloadCache {
+	private static final int MAX_ENTRIES = 256;
+
+	private static class Key {
+		private final String scope;
+		private final String entityName;
+		private final String dql;
+		private final String token;
+
+		Key(String scope, String entityName, String dql, String token) {
+			this.scope = scope;
+			this.entityName = entityName;
+			this.dql = dql;
+			this.token = token == null ? "" : token; //$NON-NLS-1$
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(scope, entityName, dql, token);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return scope.equals(other.scope) && Objects.equals(entityName, other.entityName) && dql.equals(other.dql) && Objects.equals(token, other.token);
+		}
+	}
+
+	private static class Entry {
+		private final List<String> unids;
+		private final long expires;
+
+		Entry(List<String> unids, long expires) {
+			this.unids = unids;
+			this.expires = expires;
+		}
+	}
+
+	private final long ttlNanos;
+	private final Map<Key, Entry> entries;
+	/** Incremented by each invalidation, shared across scopes */
+	private final AtomicLong generation;
+	private final String scope;
+
+	public ViewPreloadCache(long ttlMillis) {
+		this(ttlMillis * 1000 * 1000, new ConcurrentHashMap<>(), new AtomicLong(), ""); //$NON-NLS-1$
+	}
+
+	private ViewPreloadCache(long ttlNanos, Map<Key, Entry> entries, AtomicLong generation, String scope) {
+		this.ttlNanos = ttlNanos;
+		this.entries = entries;
+		this.generation = generation;
+		this.scope = scope;
+	}
+
+	/**
+	 * @param scope a name distinguishing a database, such as a shard name
+	 * @return a view of this cache whose entries are kept apart from those of
+	 *         other scopes
+	 */
+	public ViewPreloadCache forScope(String scope) {
+		return new ViewPreloadCache(ttlNanos, entries, generation, scope);
+	}
+
+	/**
+	 * @return an immutable list of the UNIDs matched by the query, loading
+	 *         them when not cached or expired
+	 */
+	public List<String> get(String entityName, String dql, String token, Supplier<List<String>> loader) {
+		Key key = new Key(scope, entityName, dql, token);
+		long now = System.nanoTime();
+		Entry entry = entries.get(key);
+		if(entry != null && now - entry.expires < 0) {
+			return entry.unids;
+		}
+
+		long loadGeneration = generation.get();
+		List<String> unids = Collections.unmodifiableList(loader.get());
+		if(generation.get() != loadGeneration) {
+			// A write may have been missed by the load
+			return unids;
+		}
+		if(entries.size() >= MAX_ENTRIES) {
+			entries.values().removeIf(e -> now - e.expires >= 0);
+			if(entries.size() >= MAX_ENTRIES) {
+				entries.clear();
+			}
+		}
+		entries.put(key, new Entry(unids, now + ttlNanos));
+		return unids;
+	}
+
+	/**
+	 * Discards the entries for the provided entity in every scope, as the
+	 * written documents may belong to any of them.
+	 */
+	public void invalidate(String entityName) {
+		generation.incrementAndGet();
+		entries.keySet().removeIf(key -> Objects.equals(key.entityName, entityName));
+	}
+
+	public void clear() {
+		generation.incrementAndGet();
+		entries.clear();
+	}
+}
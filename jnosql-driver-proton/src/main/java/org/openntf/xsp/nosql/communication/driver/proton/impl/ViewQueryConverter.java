@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+import org.openntf.xsp.nosql.communication.driver.impl.DQL;
+import org.openntf.xsp.nosql.mapping.extension.ViewQuery;
+
+/**
+ * Translates a view name and {@link ViewQuery} into DQL that is restricted to
+ * the contents of the view, so that Domino can answer it from the view's
+ * index. As with other queries, only documents of the requested entity's form
+ * are matched, since a view may contain documents of several forms.
+ *
+ * @since 1.0.0
+ */
+final class ViewQueryConverter {
+	/** Sorts after any character expected in a key, for prefix matching */
+	private static final String PREFIX_UPPER_BOUND = "\uffff"; //$NON-NLS-1$
+
+	private ViewQueryConverter() {
+	}
+
+	/**
+	 * Renders the DQL for the documents of the provided entity in the provided
+	 * view, optionally filtered by the key or category in {@code viewQuery}.
+	 *
+	 * @param entityName the entity name, matched against the documents' form
+	 * @param viewName the name or alias of the view
+	 * @param viewQuery the key and category filters, which may be {@code null}
+	 * @param keyColumn the programmatic name of the view's first sorted column,
+	 *        or {@code null} if it is not known
+	 * @return the DQL statement
+	 * @throws IllegalArgumentException if a filter is requested but the key
+	 *         column is not known, or if a key cannot be expressed in DQL
+	 */
+	public static String toDql(String entityName, String viewName, ViewQuery viewQuery, String keyColumn) {
+		String form = DQL.item(DominoConstants.FIELD_NAME).isEqualTo(entityName).toString();
+		String category = viewQuery == null ? null : viewQuery.getCategory();
+		Object key = viewQuery == null ? null : viewQuery.getKey();
+		boolean hasCategory = category != null && !category.isEmpty();
+		if(!hasCategory && key == null) {
+			return form + " and in (" + quote(viewName) + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if(keyColumn == null || keyColumn.isEmpty()) {
+			throw new IllegalArgumentException(MessageFormat.format("Filtering view {0} by key or category requires its first sorted column to be configured in viewKeyColumns", viewName));
+		}
+
+		String column = quote(viewName) + '.' + keyColumn;
+		List<String> clauses = new ArrayList<>();
+		clauses.add(form);
+		if(hasCategory) {
+			clauses.add(column + " = " + KeysetToken.toLiteral(category)); //$NON-NLS-1$
+		}
+		if(key != null) {
+			clauses.add(keyPredicate(column, key, viewQuery.isExact()));
+		}
+		return String.join(" and ", clauses); //$NON-NLS-1$
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static String keyPredicate(String column, Object key, boolean exact) {
+		Collection<?> keys = key instanceof Collection ? (Collection<?>)key : Collections.singleton(key);
+		List<String> alternatives = new ArrayList<>(keys.size());
+		for(Object k : keys) {
+			if(!KeysetToken.isLiteral(k)) {
+				throw new IllegalArgumentException(MessageFormat.format("Unable to query a view by a key of type {0}", k == null ? null : k.getClass().getName()));
+			}
+			if(!exact && k instanceof String) {
+				// Non-exact keys match entries that begin with the key
+				alternatives.add("(" + column + " >= " + KeysetToken.toLiteral(k) + " and " + column + " < " + KeysetToken.toLiteral(k + PREFIX_UPPER_BOUND) + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			} else {
+				alternatives.add(column + " = " + KeysetToken.toLiteral(k)); //$NON-NLS-1$
+			}
+		}
+		if(alternatives.size() == 1) {
+			return alternatives.get(0);
+		}
+		return "(" + String.join(" or ", alternatives) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private static String quote(String name) {
+		return "'" + name.replace("'", "''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+}
@@ -0,0 +1,505 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkOperationException;
+
+import com.hcl.domino.db.model.Database;
+
+import jakarta.nosql.document.Document;
+import jakarta.nosql.document.DocumentEntity;
+
+/**
+ * Buffers inserts and updates for the entity types that opted into
+ * write-behind, writing them to Proton in batches from a background thread.
+ *
+ * <p>Writes are grouped by the database key, access token, and converter that
+ * were current when they were queued, so that they are performed with the
+ * same context as a direct write. The database key identifies the logical
+ * database, such as the configured supplier, since suppliers may return a new
+ * {@link Database} for each request; each group is written with the
+ * {@code Database} of its first queued write. Repeated updates to the same
+ * UNID with the same access token are merged into a single pending update.
+ * Because the {@link Database} is resolved on the queuing thread and used
+ * later from the flusher thread, the database supplier must return databases
+ * that remain usable after the queuing request has ended.</p>
+ *
+ * <p>A queued insert works on a copy of the caller's entity. Once the copy
+ * has been written, its UNID is added to the caller's entity from the thread
+ * performing the flush, so callers must not rely on the ID, or read the
+ * entity concurrently, before calling {@link #flush()}. Inserting the same
+ * entity again while its insert is queued replaces the queued values, and
+ * doing so while its insert is being written waits for the write and then
+ * queues an update to the new document, so that an entity updated before it
+ * has received its ID is not created twice.</p>
+ *
+ * <p>Failures from background flushes, including unexpected errors, are
+ * retained and reported by the next call to {@link #flush()} or
+ * {@link #close()}; the background thread keeps running after them.</p>
+ *
+ * @since 1.0.0
+ */
+class WriteBehindQueue implements AutoCloseable {
+	/**
+	 * Opens a manager that writes directly to Proton with the provided context.
+	 */
+	@FunctionalInterface
+	interface Writer {
+		ProtonDocumentCollectionManager open(Database database, String token, ProtonEntityConverter entityConverter);
+	}
+
+	private static class Group {
+		private final Object databaseKey;
+		/** The database used to write the group, which is not part of its identity */
+		private final Database database;
+		private final String token;
+		private final ProtonEntityConverter entityConverter;
+
+		Group(Object databaseKey, Database database, String token, ProtonEntityConverter entityConverter) {
+			this.databaseKey = databaseKey;
+			this.database = database;
+			this.token = token;
+			this.entityConverter = entityConverter;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Group)) {
+				return false;
+			}
+			Group other = (Group)obj;
+			return Objects.equals(databaseKey, other.databaseKey) && entityConverter == other.entityConverter && Objects.equals(token, other.token);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(databaseKey, System.identityHashCode(entityConverter), token);
+		}
+	}
+
+	/**
+	 * Identifies a queued insert by the identity of the caller's entity.
+	 */
+	private static class InsertKey {
+		private final DocumentEntity original;
+
+		InsertKey(DocumentEntity original) {
+			this.original = original;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof InsertKey && ((InsertKey)obj).original == original;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(original);
+		}
+	}
+
+	private static class PendingWrite {
+		private final Group group;
+		/** The caller's entity for an insert, which receives the UNID once written */
+		private final DocumentEntity original;
+		private DocumentEntity entity;
+
+		PendingWrite(Group group, DocumentEntity original, DocumentEntity entity) {
+			this.group = group;
+			this.original = original;
+			this.entity = entity;
+		}
+
+		boolean isInsert() {
+			return original != null;
+		}
+	}
+
+	/** The maximum number of background failures retained for reporting */
+	private static final int MAX_RETAINED_FAILURES = 10000;
+
+	private final Set<String> entityNames;
+	private final int capacity;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final long offerTimeoutNanos;
+	private final Writer writer;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final Condition flushNeeded = lock.newCondition();
+	/** Signalled when a write has added the UNIDs of its inserts to the callers' entities */
+	private final Condition written = lock.newCondition();
+	/** Held while draining and writing, so that batches are written in the order they were queued */
+	private final Object writeLock = new Object();
+	/** Pending writes in queue order, keyed by UNID and token for updates and by a unique object for inserts */
+	private final Map<Object, PendingWrite> pending = new LinkedHashMap<>();
+	/** Inserts that have been drained and whose UNIDs have not yet been written back */
+	private final Set<InsertKey> inFlight = new HashSet<>();
+	private long oldestQueued;
+	private boolean closed;
+
+	private final List<ProtonBulkOperationException.Failure> failures = new ArrayList<>();
+	private final Thread flusher;
+
+	/**
+	 * @param options the options providing write-behind configuration
+	 * @param writer the source of managers used to perform writes
+	 */
+	public WriteBehindQueue(ProtonDriverOptions options, Writer writer) {
+		this.entityNames = new HashSet<>(options.getWriteBehindTypes());
+		this.capacity = options.getWriteBehindQueueSize();
+		this.batchSize = options.getWriteBehindBatchSize();
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(options.getWriteBehindFlushInterval());
+		this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(options.getWriteBehindOfferTimeout());
+		this.writer = writer;
+
+		this.flusher = new Thread(this::runFlusher, "proton-write-behind"); //$NON-NLS-1$
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	public boolean isWriteBehind(String entityName) {
+		return entityName != null && entityNames.contains(entityName);
+	}
+
+	/**
+	 * Queues an entity to be created, blocking while the queue is full. The
+	 * entity's UNID is added to it once the queued write has been performed.
+	 *
+	 * @param databaseKey a value identifying the database across requests
+	 * @throws IllegalStateException if the queue remains full for longer than
+	 *         the configured offer timeout, or if the queue is closed
+	 */
+	public void insert(Object databaseKey, Database database, String token, ProtonEntityConverter entityConverter, DocumentEntity entity) {
+		InsertKey key = new InsertKey(entity);
+		Optional<Document> id;
+		lock.lock();
+		try {
+			// UNIDs are written back while holding the lock
+			id = entity.find(DominoConstants.FIELD_ID);
+			while(!id.isPresent() && inFlight.contains(key)) {
+				// The entity is being written, so wait for it to receive its UNID
+				try {
+					written.await();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				}
+				id = entity.find(DominoConstants.FIELD_ID);
+			}
+			if(!id.isPresent()) {
+				offer(key, new PendingWrite(new Group(databaseKey, database, token, entityConverter), entity, entity.copy()));
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		update(databaseKey, database, token, entityConverter, id.get().get(String.class), entity);
+	}
+
+	/**
+	 * Queues an update to the entity with the provided UNID, merging it into
+	 * any update already pending for the same UNID and access token.
+	 *
+	 * @param databaseKey a value identifying the database across requests
+	 * @throws IllegalStateException if the queue remains full for longer than
+	 *         the configured offer timeout, or if the queue is closed
+	 */
+	public void update(Object databaseKey, Database database, String token, ProtonEntityConverter entityConverter, String unid, DocumentEntity entity) {
+		String key = unid + '\u0000' + (token == null ? "" : token); //$NON-NLS-1$
+		offer(key, new PendingWrite(new Group(databaseKey, database, token, entityConverter), null, entity.copy()));
+	}
+
+	/**
+	 * Writes all currently-queued entities on the calling thread.
+	 *
+	 * @throws ProtonBulkOperationException if any queued write failed, either
+	 *         during this flush or during a previous background flush
+	 */
+	public void flush() {
+		synchronized(writeLock) {
+			write(drain());
+			throwFailures();
+		}
+	}
+
+	/**
+	 * Stops accepting writes and writes any that remain queued.
+	 *
+	 * @throws ProtonBulkOperationException if any queued write failed
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notFull.signalAll();
+			flushNeeded.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			flusher.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private void offer(Object key, PendingWrite write) {
+		lock.lock();
+		try {
+			if(closed) {
+				throw new IllegalStateException("Write-behind queue is closed");
+			}
+			if(write.isInsert()) {
+				if(pending.containsKey(key)) {
+					// Re-inserting a queued entity replaces its values and context in place
+					pending.put(key, write);
+					return;
+				}
+			} else {
+				PendingWrite existing = pending.get(key);
+				if(existing != null && existing.group.equals(write.group)) {
+					existing.entity = merge(existing.entity, write.entity);
+					return;
+				}
+			}
+			long remaining = offerTimeoutNanos;
+			while(pending.size() >= capacity) {
+				if(closed) {
+					throw new IllegalStateException("Write-behind queue is closed");
+				}
+				if(remaining <= 0) {
+					throw new IllegalStateException(MessageFormat.format("Write-behind queue remained full for {0}ms", TimeUnit.NANOSECONDS.toMillis(offerTimeoutNanos)));
+				}
+				try {
+					remaining = notFull.awaitNanos(remaining);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				}
+			}
+			if(pending.isEmpty()) {
+				oldestQueued = System.nanoTime();
+				// Let the flusher schedule its wait from this write
+				flushNeeded.signal();
+			}
+			// An update pending for a different context is written first, so queue this after it
+			PendingWrite displaced = pending.remove(key);
+			if(displaced != null) {
+				pending.put(new Object(), displaced);
+			}
+			pending.put(key, write);
+			if(pending.size() >= batchSize) {
+				flushNeeded.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void runFlusher() {
+		while(true) {
+			lock.lock();
+			try {
+				while(!closed && !isFlushDue()) {
+					long wait = pending.isEmpty() ? flushIntervalNanos : oldestQueued + flushIntervalNanos - System.nanoTime();
+					flushNeeded.awaitNanos(Math.max(wait, 1));
+				}
+				if(closed) {
+					return;
+				}
+			} catch(InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+			synchronized(writeLock) {
+				List<PendingWrite> writes = drain();
+				try {
+					write(writes);
+				} catch(Throwable t) {
+					// write reports failures itself; this only keeps the flusher alive
+					recordFailures(toWriteFailures(writes, t));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding {@link #lock}.
+	 */
+	private boolean isFlushDue() {
+		if(pending.isEmpty()) {
+			return false;
+		}
+		return pending.size() >= batchSize || System.nanoTime() - oldestQueued >= flushIntervalNanos;
+	}
+
+	private List<PendingWrite> drain() {
+		lock.lock();
+		try {
+			List<PendingWrite> result = new ArrayList<>(pending.values());
+			for(Object key : pending.keySet()) {
+				if(key instanceof InsertKey) {
+					inFlight.add((InsertKey)key);
+				}
+			}
+			pending.clear();
+			notFull.signalAll();
+			return result;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the provided entities grouped by context, keeping inserts and
+	 * updates for each group in their queued order, and then adds the UNIDs of
+	 * the written inserts to the callers' entities. Failures are recorded
+	 * rather than thrown. Must be called while holding {@link #writeLock}.
+	 */
+	private void write(List<PendingWrite> writes) {
+		try {
+			Map<Group, List<PendingWrite>> groups = new LinkedHashMap<>();
+			for(PendingWrite write : writes) {
+				groups.computeIfAbsent(write.group, key -> new ArrayList<>()).add(write);
+			}
+			for(Map.Entry<Group, List<PendingWrite>> entry : groups.entrySet()) {
+				Group group = entry.getKey();
+				List<DocumentEntity> inserts = new ArrayList<>();
+				List<DocumentEntity> updates = new ArrayList<>();
+				for(PendingWrite write : entry.getValue()) {
+					(write.isInsert() ? inserts : updates).add(write.entity);
+				}
+				boolean insertsWritten = false;
+				boolean updatesWritten = false;
+				try(ProtonDocumentCollectionManager manager = writer.open(group.database, group.token, group.entityConverter)) {
+					if(!inserts.isEmpty()) {
+						writeAll(() -> manager.insert(inserts), inserts);
+					}
+					insertsWritten = true;
+					if(!updates.isEmpty()) {
+						writeAll(() -> manager.update(updates), updates);
+					}
+					updatesWritten = true;
+				} catch(Throwable t) {
+					// Opening or closing the manager failed
+					List<DocumentEntity> unwritten = new ArrayList<>();
+					if(!insertsWritten) {
+						unwritten.addAll(inserts);
+					}
+					if(!updatesWritten) {
+						unwritten.addAll(updates);
+					}
+					recordFailures(toFailures(unwritten, t));
+				}
+			}
+		} finally {
+			lock.lock();
+			try {
+				for(PendingWrite write : writes) {
+					if(write.isInsert()) {
+						write.entity.find(DominoConstants.FIELD_ID).ifPresent(write.original::add);
+						inFlight.remove(new InsertKey(write.original));
+					}
+				}
+				written.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void writeAll(Runnable op, Collection<DocumentEntity> entities) {
+		try {
+			op.run();
+		} catch(ProtonBulkOperationException e) {
+			recordFailures(e.getFailures());
+		} catch(Throwable t) {
+			recordFailures(toFailures(entities, t));
+		}
+	}
+
+	private static List<ProtonBulkOperationException.Failure> toFailures(Collection<DocumentEntity> entities, Throwable t) {
+		List<ProtonBulkOperationException.Failure> result = new ArrayList<>(entities.size());
+		entities.forEach(entity -> result.add(new ProtonBulkOperationException.Failure(entity, t)));
+		return result;
+	}
+
+	private static List<ProtonBulkOperationException.Failure> toWriteFailures(List<PendingWrite> writes, Throwable t) {
+		List<DocumentEntity> entities = new ArrayList<>(writes.size());
+		writes.forEach(write -> entities.add(write.entity));
+		return toFailures(entities, t);
+	}
+
+	private void recordFailures(List<ProtonBulkOperationException.Failure> newFailures) {
+		synchronized(failures) {
+			for(ProtonBulkOperationException.Failure failure : newFailures) {
+				if(failures.size() >= MAX_RETAINED_FAILURES) {
+					break;
+				}
+				failures.add(failure);
+			}
+		}
+	}
+
+	private void throwFailures() {
+		List<ProtonBulkOperationException.Failure> result;
+		synchronized(failures) {
+			if(failures.isEmpty()) {
+				return;
+			}
+			result = new ArrayList<>(failures);
+			failures.clear();
+		}
+		throw new ProtonBulkOperationException(Collections.emptyList(), result);
+	}
+
+	/**
+	 * Merges a later update into an earlier one, with the later values taking
+	 * precedence.
+	 */
+	private static DocumentEntity merge(DocumentEntity earlier, DocumentEntity later) {
+		for(Document doc : later.getDocuments()) {
+			earlier.remove(doc.getName());
+			earlier.add(doc);
+		}
+		return earlier;
+	}
+}
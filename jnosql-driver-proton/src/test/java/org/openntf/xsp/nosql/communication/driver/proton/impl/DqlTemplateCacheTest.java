@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.impl.QueryConverter;
+import org.openntf.xsp.nosql.communication.driver.proton.CacheStatistics;
+
+import jakarta.nosql.document.Document;
+import jakarta.nosql.document.DocumentCondition;
+import jakarta.nosql.document.DocumentQuery;
+
+@SuppressWarnings("nls")
+public class DqlTemplateCacheTest {
+	@Test
+	public void testNumbersShareTemplate() {
+		DqlTemplateCache cache = new DqlTemplateCache(16);
+		for(int age : new int[] { 5, 6, 123456789, -1 }) {
+			assertRendered(cache, DocumentCondition.and(
+				DocumentCondition.eq(Document.of("Age", age)),
+				DocumentCondition.gte(Document.of("Score", age / 2d))
+			));
+		}
+
+		CacheStatistics stats = cache.getStatistics();
+		assertEquals(1, stats.getSize());
+		assertEquals(3, stats.getHitCount());
+	}
+
+	@Test
+	public void testStringsMatchRendering() {
+		DqlTemplateCache cache = new DqlTemplateCache(16);
+		for(String name : Arrays.asList("plain", "O'Brien", "back\\slash \"quoted\"", "", "multi\nline")) {
+			assertRendered(cache, DocumentCondition.or(
+				DocumentCondition.eq(Document.of("Name", name)),
+				DocumentCondition.in(Document.of("Alias", Arrays.asList(name, "other")))
+			));
+		}
+
+		assertEquals(1, cache.getStatistics().getSize());
+	}
+
+	@Test
+	public void testQuoteAndEscapeEdgeCases() {
+		DqlTemplateCache cache = new DqlTemplateCache(16);
+		List<String> values = Arrays.asList("'", "''", "'leading", "trailing'", "a''b", "\\'", "\\", "\"", "'); or (1 = 1", "{0} ?1 @dt('x')", "\u00fc\u20ac\ud83d\ude00", "tab\tcr\r");
+		for(String value : values) {
+			assertRendered(cache, DocumentCondition.and(
+				DocumentCondition.eq(Document.of("Name", value)),
+				DocumentCondition.eq(Document.of("Other", value + value))
+			));
+		}
+		assertEquals(1, cache.getStatistics().getSize());
+		assertEquals(values.size() - 1, cache.getStatistics().getHitCount());
+	}
+
+	@Test
+	public void testQuotesInSelectStatement() {
+		DqlTemplateCache cache = new DqlTemplateCache(16);
+		for(String value : Arrays.asList("O'Brien", "Person", "'Person'", "")) {
+			DocumentQuery query = DocumentQuery.select().from("Person").where("Name").eq(value).build();
+			assertEquals(QueryConverter.select(query).getStatement().toString(), cache.select(query));
+		}
+	}
+
+	@Test
+	public void testDateLiteralsArePartOfShape() {
+		DqlTemplateCache cache = new DqlTemplateCache(16);
+		List<Object> dates = Arrays.asList(
+			LocalDate.of(2022, 1, 31),
+			LocalDate.of(2022, 2, 1),
+			LocalDateTime.of(2022, 2, 1, 13, 45, 30),
+			ZonedDateTime.of(2022, 2, 1, 13, 45, 30, 0, ZoneId.of("America/New_York")),
+			LocalDate.of(2022, 1, 31)
+		);
+		for(Object date : dates) {
+			assertRendered(cache, DocumentCondition.and(
+				DocumentCondition.gte(Document.of("Created", date)),
+				DocumentCondition.eq(Document.of("Name", "O'Brien"))
+			));
+		}
+
+		// Each distinct date is its own shape, and only the repeated one is a hit
+		CacheStatistics stats = cache.getStatistics();
+		assertEquals(4, stats.getSize());
+		assertEquals(1, stats.getHitCount());
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static void assertRendered(DqlTemplateCache cache, DocumentCondition condition) {
+		assertEquals(QueryConverter.getCondition(condition).toString(), cache.condition(condition));
+	}
+}
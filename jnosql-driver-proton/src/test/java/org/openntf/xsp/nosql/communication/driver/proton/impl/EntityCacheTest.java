@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.proton.CacheStatistics;
+
+import jakarta.nosql.document.DocumentEntity;
+
+@SuppressWarnings("nls")
+public class EntityCacheTest {
+	private static final String ENTITY_NAME = "Person";
+	private static final String UNID = "0123456789ABCDEF0123456789ABCDEF";
+
+	@Test
+	public void testPutAfterInvalidateIsDiscarded() {
+		EntityCache cache = newCache(10);
+		long stamp = cache.stamp();
+		// A write completes while the read is in progress
+		cache.invalidate(UNID);
+		cache.put(ENTITY_NAME, UNID, null, DocumentEntity.of(ENTITY_NAME), stamp);
+		assertFalse(cache.get(ENTITY_NAME, UNID, null).isPresent());
+
+		cache.put(ENTITY_NAME, UNID, null, DocumentEntity.of(ENTITY_NAME), cache.stamp());
+		assertTrue(cache.get(ENTITY_NAME, UNID, null).isPresent());
+	}
+
+	@Test
+	public void testInvalidateIgnoresUnidCase() {
+		EntityCache cache = newCache(10);
+		String lower = UNID.toLowerCase();
+		cache.put(ENTITY_NAME, lower, null, DocumentEntity.of(ENTITY_NAME), cache.stamp());
+		assertTrue(cache.get(ENTITY_NAME, UNID, null).isPresent());
+
+		// Writes invalidate with the UNID as Proton returns it
+		cache.invalidate(UNID);
+		assertFalse(cache.get(ENTITY_NAME, lower, null).isPresent());
+
+		cache.put(ENTITY_NAME, lower, null, DocumentEntity.of(ENTITY_NAME), cache.stamp());
+		cache.invalidateAll(Collections.singletonList(UNID));
+		assertFalse(cache.contains(lower, null));
+	}
+
+	@Test
+	public void testContainsCountsMisses() {
+		EntityCache cache = newCache(10);
+		cache.put(ENTITY_NAME, UNID, null, DocumentEntity.of(ENTITY_NAME), cache.stamp());
+		assertTrue(cache.contains(UNID, null));
+		assertFalse(cache.contains(UNID, "other"));
+
+		CacheStatistics stats = cache.getStatistics();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+	}
+
+	@Test
+	public void testSizeCountsEachToken() {
+		EntityCache cache = newCache(3);
+		for(int i = 0; i < 10; i++) {
+			cache.put(ENTITY_NAME, UNID, "token" + i, DocumentEntity.of(ENTITY_NAME), cache.stamp());
+		}
+		CacheStatistics stats = cache.getStatistics();
+		assertEquals(3, stats.getSize());
+		assertEquals(7, stats.getEvictionCount());
+		// The newest copies are kept
+		assertTrue(cache.get(ENTITY_NAME, UNID, "token9").isPresent());
+		assertFalse(cache.get(ENTITY_NAME, UNID, "token0").isPresent());
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static EntityCache newCache(int maxSize) {
+		return new EntityCache(Collections.singleton(ENTITY_NAME), maxSize, 60000);
+	}
+}
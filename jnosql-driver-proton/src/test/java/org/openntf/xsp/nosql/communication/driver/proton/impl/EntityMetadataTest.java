@@ -0,0 +1,45 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("nls")
+public class EntityMetadataTest {
+	@Test
+	public void testUnmappedItemsUseDefault() {
+		AtomicInteger loads = new AtomicInteger();
+		EntityMetadata metadata = new EntityMetadata(Arrays.asList("Name", "Age"), itemName -> {
+			loads.incrementAndGet();
+			return new EntityMetadata.ItemMetadata(null, null);
+		});
+		assertEquals(2, loads.get());
+
+		assertNotSame(EntityMetadata.ItemMetadata.DEFAULT, metadata.getItem("Name"));
+		for(int i = 0; i < 1000; i++) {
+			assertSame(EntityMetadata.ItemMetadata.DEFAULT, metadata.getItem("Unmapped" + i));
+		}
+		// Unmapped names are neither loaded nor remembered
+		assertEquals(2, loads.get());
+	}
+}
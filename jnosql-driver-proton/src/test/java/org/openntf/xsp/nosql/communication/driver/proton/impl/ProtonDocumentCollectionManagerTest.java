@@ -0,0 +1,435 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.eclipse.jnosql.mapping.reflection.ClassMapping;
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+import org.openntf.xsp.nosql.communication.driver.proton.DeleteReport;
+import org.openntf.xsp.nosql.communication.driver.proton.KeysetPage;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkOperationException;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonTimeoutException;
+
+import com.hcl.domino.db.model.Database;
+import com.hcl.domino.db.model.Document;
+import com.hcl.domino.db.model.Item;
+import com.hcl.domino.db.model.NumberItem;
+import com.hcl.domino.db.model.TextItem;
+
+import jakarta.nosql.SortType;
+import jakarta.nosql.document.DocumentDeleteQuery;
+import jakarta.nosql.document.DocumentEntity;
+import jakarta.nosql.document.DocumentQuery;
+
+@SuppressWarnings("nls")
+public class ProtonDocumentCollectionManagerTest {
+	private static final String ENTITY_NAME = "Person";
+	/** Documents with this item are rejected by the fake database */
+	private static final String FAIL_ITEM = "Fail";
+
+	/**
+	 * A database whose multi-document create creates every document that is
+	 * not marked to fail, returning a result without a UNID in the position
+	 * of each document that was not created.
+	 */
+	private static class PartialFailureDatabase {
+		private final Map<String, List<Item<?>>> documents = new LinkedHashMap<>();
+		private int createDocumentsCalls;
+		private int nextUnid;
+		/** Whether the multi-document create fails as a whole after creating */
+		private boolean failCall;
+
+		@SuppressWarnings("unchecked")
+		Database mock() {
+			return org.mockito.Mockito.mock(Database.class, invocation -> {
+				switch(invocation.getMethod().getName()) {
+				case "createDocuments": {
+					createDocumentsCalls++;
+					List<Document> results = new ArrayList<>();
+					for(Document doc : (List<Document>)invocation.getArgument(0)) {
+						results.add(hasItem(doc.getItems(), FAIL_ITEM) ? document(null, doc.getItems()) : store(doc));
+					}
+					if(failCall) {
+						return failed(new IllegalStateException("Bulk create failed"));
+					}
+					return CompletableFuture.completedFuture(results);
+				}
+				case "createDocument": {
+					Document doc = invocation.getArgument(0);
+					if(hasItem(doc.getItems(), FAIL_ITEM)) {
+						return failed(new IllegalStateException("Create failed"));
+					}
+					return CompletableFuture.completedFuture(store(doc));
+				}
+				default:
+					throw new UnsupportedOperationException(invocation.getMethod().getName());
+				}
+			});
+		}
+
+		private Document store(Document doc) {
+			String unid = String.format("%032X", ++nextUnid);
+			documents.put(unid, new ArrayList<>(doc.getItems()));
+			return document(unid, doc.getItems());
+		}
+	}
+
+	/**
+	 * A database that answers every query with all of its documents, for
+	 * queries that are expected to need no DQL filtering.
+	 */
+	private static class StaticDatabase {
+		private final Map<String, List<Item<?>>> documents = new LinkedHashMap<>();
+		private final List<String> queries = new ArrayList<>();
+
+		void add(String key, Item<?> sortItem) {
+			List<Item<?>> items = new ArrayList<>();
+			items.add(new TextItem("Key", key));
+			if(sortItem != null) {
+				items.add(sortItem);
+			}
+			// Store in an order unrelated to the sort order
+			documents.put(String.format("%032X", (key.hashCode() & 0xffff) * 1000 + documents.size()), items);
+		}
+
+		Database mock() {
+			return org.mockito.Mockito.mock(Database.class, invocation -> {
+				switch(invocation.getMethod().getName()) {
+				case "readDocuments":
+					queries.add(invocation.getArgument(0));
+					return CompletableFuture.completedFuture(documents.entrySet()
+						.stream()
+						.map(entry -> document(entry.getKey(), entry.getValue()))
+						.collect(Collectors.toList()));
+				case "readDocumentByUnid": {
+					String unid = invocation.getArgument(0);
+					return CompletableFuture.completedFuture(document(unid, documents.get(unid)));
+				}
+				default:
+					throw new UnsupportedOperationException(invocation.getMethod().getName());
+				}
+			});
+		}
+	}
+
+	@Test
+	public void testInsertBatchFailureDoesNotDuplicate() {
+		PartialFailureDatabase fake = new PartialFailureDatabase();
+		Database database = fake.mock();
+		ProtonDocumentCollectionManager manager = newManager(database);
+
+		List<DocumentEntity> entities = new ArrayList<>();
+		for(int i = 0; i < 5; i++) {
+			DocumentEntity entity = DocumentEntity.of(ENTITY_NAME);
+			entity.add(jakarta.nosql.document.Document.of("Index", i));
+			if(i == 2) {
+				entity.add(jakarta.nosql.document.Document.of(FAIL_ITEM, "yes"));
+			}
+			entities.add(entity);
+		}
+
+		ProtonBulkOperationException e = assertThrows(ProtonBulkOperationException.class, () -> manager.insert(entities));
+
+		assertEquals(1, fake.createDocumentsCalls);
+		assertEquals(4, fake.documents.size(), "Each succeeding entity should be stored exactly once");
+		assertEquals(1, e.getFailures().size());
+		assertSame(entities.get(2), e.getFailures().get(0).getEntity());
+		assertEquals(4, e.getSucceeded().size());
+
+		Set<String> assigned = new HashSet<>();
+		for(DocumentEntity entity : e.getSucceeded()) {
+			String unid = entity.find(DominoConstants.FIELD_ID).map(doc -> doc.get(String.class)).orElse(null);
+			assertNotNull(unid);
+			assertTrue(fake.documents.containsKey(unid));
+			assertTrue(assigned.add(unid), "Each entity should receive its own document");
+		}
+	}
+
+	@Test
+	public void testInsertBatchCallFailureIsNotRetried() {
+		PartialFailureDatabase fake = new PartialFailureDatabase();
+		fake.failCall = true;
+		ProtonDocumentCollectionManager manager = newManager(fake.mock());
+
+		List<DocumentEntity> entities = new ArrayList<>();
+		for(int i = 0; i < 3; i++) {
+			DocumentEntity entity = DocumentEntity.of(ENTITY_NAME);
+			entity.add(jakarta.nosql.document.Document.of("Index", i));
+			entities.add(entity);
+		}
+
+		ProtonBulkOperationException e = assertThrows(ProtonBulkOperationException.class, () -> manager.insert(entities));
+
+		assertEquals(1, fake.createDocumentsCalls);
+		assertEquals(3, fake.documents.size(), "No entity should be created a second time");
+		assertEquals(3, e.getFailures().size());
+		assertTrue(e.getSucceeded().isEmpty());
+	}
+
+	@Test
+	public void testSelectPageTextKeysWithCaseAndMissingValues() {
+		StaticDatabase fake = new StaticDatabase();
+		String[] names = { "alice", "Bob", "ALICE", null, "bob", "Alice", null, "carol", "Carol", "aLiCe" };
+		for(int i = 0; i < names.length; i++) {
+			fake.add("d" + i, names[i] == null ? null : new TextItem("Name", names[i]));
+		}
+
+		List<String> keys = readAllPages(fake, DocumentQuery.select().from(ENTITY_NAME).orderBy("Name").asc().limit(3).build());
+
+		assertEquals(names.length, keys.size());
+		assertEquals(names.length, new HashSet<>(keys).size(), "No document should be returned twice");
+		// Case-insensitive groups in order, with missing values last
+		assertEquals(new HashSet<>(Arrays.asList("d0", "d2", "d5", "d9")), new HashSet<>(keys.subList(0, 4)));
+		assertEquals(new HashSet<>(Arrays.asList("d1", "d4")), new HashSet<>(keys.subList(4, 6)));
+		assertEquals(new HashSet<>(Arrays.asList("d7", "d8")), new HashSet<>(keys.subList(6, 8)));
+		assertEquals(new HashSet<>(Arrays.asList("d3", "d6")), new HashSet<>(keys.subList(8, 10)));
+		// Text keys are never compared in DQL
+		fake.queries.forEach(dql -> assertFalse(dql.contains("Name"), dql));
+	}
+
+	@Test
+	public void testSelectPageNumberKeysWithMissingValues() {
+		StaticDatabase fake = new StaticDatabase();
+		Double[] ranks = { 3.0, null, 1.0, 2.0, null, 2.0, 5.0 };
+		for(int i = 0; i < ranks.length; i++) {
+			fake.add("d" + i, ranks[i] == null ? null : new NumberItem("Rank", ranks[i]));
+		}
+
+		for(SortType type : SortType.values()) {
+			fake.queries.clear();
+			DocumentQuery query = type == SortType.ASC
+				? DocumentQuery.select().from(ENTITY_NAME).orderBy("Rank").asc().limit(2).build()
+				: DocumentQuery.select().from(ENTITY_NAME).orderBy("Rank").desc().limit(2).build();
+			List<String> keys = readAllPages(fake, query);
+
+			assertEquals(ranks.length, keys.size(), type.name());
+			assertEquals(ranks.length, new HashSet<>(keys).size(), type.name());
+			// With missing values present, pages must not be selected by a DQL comparison
+			fake.queries.forEach(dql -> assertFalse(dql.contains("Rank"), dql));
+		}
+	}
+
+	@Test
+	public void testSelectDescendingKeepsMissingValuesLast() {
+		StaticDatabase fake = new StaticDatabase();
+		Double[] ranks = { 3.0, null, 1.0, 5.0, null };
+		for(int i = 0; i < ranks.length; i++) {
+			fake.add("d" + i, ranks[i] == null ? null : new NumberItem("Rank", ranks[i]));
+		}
+		ProtonDocumentCollectionManager manager = newManager(fake.mock());
+
+		List<String> keys = manager.select(DocumentQuery.select().from(ENTITY_NAME).orderBy("Rank").desc().build())
+			.map(entity -> entity.find("Key").map(doc -> doc.get(String.class)).orElse(null))
+			.collect(Collectors.toList());
+
+		assertEquals(Arrays.asList("d3", "d0", "d2"), keys.subList(0, 3));
+		assertEquals(new HashSet<>(Arrays.asList("d1", "d4")), new HashSet<>(keys.subList(3, 5)));
+
+		// Pages follow the same order
+		List<String> paged = readAllPages(fake, DocumentQuery.select().from(ENTITY_NAME).orderBy("Rank").desc().limit(2).build());
+		assertEquals(Arrays.asList("d3", "d0", "d2"), paged.subList(0, 3));
+	}
+
+	@Test
+	public void testSelectPageResumesAfterAnyEntity() {
+		StaticDatabase fake = new StaticDatabase();
+		String[] names = { "dave", "alice", "carol", "bob", "erin" };
+		for(int i = 0; i < names.length; i++) {
+			fake.add(names[i], new TextItem("Name", names[i]));
+		}
+		ProtonDocumentCollectionManager manager = newManager(fake.mock());
+		DocumentQuery query = DocumentQuery.select().from(ENTITY_NAME).orderBy("Name").asc().build();
+
+		ProtonDocumentCollectionManager.Page first = manager.selectPage(query, null, 0, 3);
+		assertEquals(3, first.getEntities().size());
+		ProtonDocumentCollectionManager.Page resumed = manager.selectPage(query, first.getTokenAfter(1), 0, 3);
+
+		List<String> keys = resumed.getEntities().stream()
+			.map(entity -> entity.find("Key").get().get(String.class))
+			.collect(Collectors.toList());
+		assertEquals(Arrays.asList("bob", "carol", "dave"), keys);
+		assertNotNull(resumed.getTokenAfter(3));
+		assertNull(manager.selectPage(query, resumed.getTokenAfter(3), 0, 3).getTokenAfter(1));
+	}
+
+	@Test
+	public void testKeysetTokenFallsBackForText() {
+		assertFalse(KeysetToken.after(1, 10, new Object[] { "Alice" }, "0123456789ABCDEF0123456789ABCDEF").isKeyset());
+		assertFalse(KeysetToken.after(1, 10, new Object[] { null }, "0123456789ABCDEF0123456789ABCDEF").isKeyset());
+		assertTrue(KeysetToken.after(1, 10, new Object[] { 2.0 }, "0123456789ABCDEF0123456789ABCDEF").isKeyset());
+
+		KeysetToken token = KeysetToken.parse(KeysetToken.offset(1, 10).toString(), 1);
+		assertFalse(token.isKeyset());
+		assertEquals(10, token.getOffset());
+	}
+
+	@Test
+	public void testMalformedKeysetTokensAreRejected() {
+		String[] tokens = {
+			"1\u001f1\u001f10\u001fk",
+			"1\u001fx\u001f10\u001fo",
+			"1\u001f1\u001ften\u001fo",
+			"1\u001f1\u001f-1\u001fo",
+			"1\u001f1\u001f10\u001fk\u001f0123456789ABCDEF0123456789ABCDEF\u001fnabc",
+			"1\u001f1\u001f10\u001fk\u001f0123456789ABCDEF0123456789ABCDEF\u001fd2022-13-45"
+		};
+		for(String token : tokens) {
+			String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+			assertThrows(IllegalArgumentException.class, () -> KeysetToken.parse(encoded, 1), token);
+		}
+	}
+
+	@Test
+	public void testDeleteTimeoutReportsFailures() {
+		List<Set<String>> issued = new ArrayList<>();
+		Database database = org.mockito.Mockito.mock(Database.class, invocation -> {
+			switch(invocation.getMethod().getName()) {
+			case "deleteDocumentsByUnid":
+				issued.add(invocation.getArgument(0));
+				// Never completes
+				return new CompletableFuture<>();
+			default:
+				throw new UnsupportedOperationException(invocation.getMethod().getName());
+			}
+		});
+		ProtonDriverOptions options = new ProtonDriverOptions();
+		options.setOperationTimeout(100);
+		options.setDeleteBatchSize(2);
+		options.setDeleteParallelism(1);
+		ProtonDocumentCollectionManager manager = newManager(database, options);
+
+		String[] unids = { "A1", "A2", "A3", "A4", "A5" };
+		long t0 = System.nanoTime();
+		DeleteReport report = manager.deleteWithReport(DocumentDeleteQuery.delete(unids).from(ENTITY_NAME).build());
+		long elapsedMillis = (System.nanoTime() - t0) / 1000000;
+
+		assertTrue(report.getDeleted().isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList(unids)), report.getFailures().keySet());
+		report.getFailures().values().forEach(cause -> assertTrue(cause instanceof ProtonTimeoutException, String.valueOf(cause)));
+		// The deadline covers the whole operation, so later chunks are not issued
+		assertEquals(1, issued.size());
+		assertTrue(elapsedMillis < 1000, "Timed out after " + elapsedMillis + " ms");
+	}
+
+	@Test
+	public void testDeleteRetriesOnlyTransientFailures() {
+		for(boolean transientFailure : new boolean[] { true, false }) {
+			AtomicInteger calls = new AtomicInteger();
+			Throwable cause = transientFailure ? new IOException("Connection reset") : new IllegalStateException("Not authorized");
+			Database database = org.mockito.Mockito.mock(Database.class, invocation -> {
+				switch(invocation.getMethod().getName()) {
+				case "deleteDocumentsByUnid":
+					calls.incrementAndGet();
+					return failed(cause);
+				default:
+					throw new UnsupportedOperationException(invocation.getMethod().getName());
+				}
+			});
+			ProtonDriverOptions options = new ProtonDriverOptions();
+			options.setDeleteRetries(2);
+			ProtonDocumentCollectionManager manager = newManager(database, options);
+
+			DeleteReport report = manager.deleteWithReport(DocumentDeleteQuery.delete("A1").from(ENTITY_NAME).build());
+
+			assertEquals(transientFailure ? 3 : 1, calls.get());
+			assertSame(cause, report.getFailures().get("A1"));
+		}
+	}
+
+	@Test
+	public void testDeleteBlankUnidsWithoutCondition() {
+		Database database = org.mockito.Mockito.mock(Database.class, invocation -> {
+			throw new UnsupportedOperationException(invocation.getMethod().getName());
+		});
+		ProtonDocumentCollectionManager manager = newManager(database);
+
+		assertThrows(IllegalArgumentException.class, () -> manager.deleteWithReport(DocumentDeleteQuery.delete("", " ").from(ENTITY_NAME).build()));
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static ProtonDocumentCollectionManager newManager(Database database) {
+		return newManager(database, new ProtonDriverOptions());
+	}
+
+	private static ProtonDocumentCollectionManager newManager(Database database, ProtonDriverOptions options) {
+		return new ProtonDocumentCollectionManager(() -> database, () -> null, options) {
+			@Override
+			protected ClassMapping getClassMapping(String entityName) {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Reads every page of the query, returning the {@code Key} values of the
+	 * entities in the order they were returned.
+	 */
+	private static List<String> readAllPages(StaticDatabase fake, DocumentQuery query) {
+		ProtonDocumentCollectionManager manager = newManager(fake.mock());
+		List<String> result = new ArrayList<>();
+		String token = null;
+		do {
+			KeysetPage page = manager.selectPage(query, token);
+			page.getEntities().forEach(entity -> result.add(entity.find("Key").get().get(String.class)));
+			token = page.getContinuationToken().orElse(null);
+		} while(token != null && result.size() <= 100);
+		return result;
+	}
+
+	private static Document document(String unid, List<Item<?>> items) {
+		Document doc = mock(Document.class);
+		when(doc.getUnid()).thenReturn(unid);
+		when(doc.getItems()).thenReturn(new ArrayList<>(items));
+		return doc;
+	}
+
+	private static boolean hasItem(List<Item<?>> items, String name) {
+		return items.stream().anyMatch(item -> name.equalsIgnoreCase(item.getName()));
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		result.completeExceptionally(t);
+		return result;
+	}
+}
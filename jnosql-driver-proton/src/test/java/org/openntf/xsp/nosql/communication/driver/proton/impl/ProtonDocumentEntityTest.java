@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+
+import com.hcl.domino.db.model.Document;
+import com.hcl.domino.db.model.Item;
+import com.hcl.domino.db.model.TextItem;
+
+import jakarta.nosql.document.DocumentEntity;
+
+@SuppressWarnings("nls")
+public class ProtonDocumentEntityTest {
+	private static final String ENTITY_NAME = "Person";
+	private static final String UNID = "0123456789ABCDEF0123456789ABCDEF";
+
+	@Test
+	public void testRepeatedItemKeepsFirst() {
+		ProtonDocumentEntity entity = new ProtonDocumentEntity(ENTITY_NAME, document(new TextItem("Name", "first"), new TextItem("Name", "second")));
+
+		assertEquals("first", entity.find("Name", String.class).orElse(null));
+		assertEquals(Arrays.asList(DominoConstants.FIELD_ID, "Name"), entity.getDocumentNames());
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		ProtonDocumentEntity entity = new ProtonDocumentEntity(ENTITY_NAME, document(new TextItem("Name", "value")));
+		DocumentEntity copy = entity.copy();
+		assertFalse(copy instanceof ProtonDocumentEntity);
+
+		entity.remove("Name");
+		assertEquals("value", copy.find("Name", String.class).orElse(null));
+		assertEquals(UNID, copy.find(DominoConstants.FIELD_ID, String.class).orElse(null));
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static Document document(Item<?>... items) {
+		List<Item<?>> list = Arrays.asList(items);
+		Document doc = mock(Document.class);
+		when(doc.getUnid()).thenReturn(UNID);
+		when(doc.getItems()).thenReturn(list);
+		return doc;
+	}
+}
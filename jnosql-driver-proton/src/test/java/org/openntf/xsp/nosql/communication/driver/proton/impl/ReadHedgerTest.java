@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonOperationEvent.Operation;
+
+import com.hcl.domino.db.model.Database;
+
+@SuppressWarnings("nls")
+public class ReadHedgerTest {
+	private final Database primaryDatabase = mock(Database.class);
+	private final Database alternateDatabase = mock(Database.class);
+
+	@Test
+	public void testHedgeIssuedWithoutCallerWaiting() throws Exception {
+		ReadHedger hedger = newHedger();
+		CompletableFuture<String> primary = new CompletableFuture<>();
+		Future<String> result = hedger.read(Operation.GET_BY_ID, primaryDatabase, db -> db == primaryDatabase ? primary : CompletableFuture.completedFuture("alternate"));
+
+		waitFor(result);
+		assertEquals("alternate", result.get());
+		assertTrue(primary.isCancelled());
+	}
+
+	@Test
+	public void testPrimaryFailureUsesHedge() throws Exception {
+		ReadHedger hedger = newHedger();
+		CompletableFuture<String> primary = failed(new IllegalStateException("primary"));
+		CompletableFuture<String> alternate = new CompletableFuture<>();
+		Future<String> result = hedger.read(Operation.GET_BY_ID, primaryDatabase, db -> db == primaryDatabase ? primary : alternate);
+
+		alternate.complete("alternate");
+		assertEquals("alternate", result.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFailsWhenBothFail() {
+		ReadHedger hedger = newHedger();
+		IllegalStateException primaryFailure = new IllegalStateException("primary");
+		Future<String> result = hedger.read(Operation.GET_BY_ID, primaryDatabase, db -> failed(db == primaryDatabase ? primaryFailure : new IllegalStateException("alternate")));
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+		assertSame(primaryFailure, e.getCause());
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	/**
+	 * Creates a hedger whose latency window is warmed up, so that reads are
+	 * hedged after its minimum delay.
+	 */
+	private ReadHedger newHedger() {
+		ReadHedger hedger = new ReadHedger(() -> alternateDatabase, 95, 10);
+		for(int i = 0; i < ReadHedger.MIN_SAMPLES; i++) {
+			hedger.read(Operation.GET_BY_ID, primaryDatabase, db -> CompletableFuture.completedFuture("warmup"));
+		}
+		return hedger;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		result.completeExceptionally(t);
+		return result;
+	}
+
+	private static void waitFor(Future<?> future) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(!future.isDone()) {
+			assertTrue(System.nanoTime() < deadline, "Read did not complete in time");
+			TimeUnit.MILLISECONDS.sleep(5);
+		}
+	}
+}
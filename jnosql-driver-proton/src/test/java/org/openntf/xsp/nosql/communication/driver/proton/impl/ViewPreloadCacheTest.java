@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+import org.openntf.xsp.nosql.communication.driver.impl.DQL;
+
+@SuppressWarnings("nls")
+public class ViewPreloadCacheTest {
+	@Test
+	public void testViewDqlMatchesForm() {
+		String form = DQL.item(DominoConstants.FIELD_NAME).isEqualTo("Person").toString();
+		assertEquals(form + " and in ('People')", ViewQueryConverter.toDql("Person", "People", null, null));
+	}
+
+	@Test
+	public void testInvalidateDiscardsAllScopes() {
+		ViewPreloadCache cache = new ViewPreloadCache(60000);
+		ViewPreloadCache shard = cache.forScope("shard1");
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get("Person", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		shard.get("Person", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		cache.get("Other", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		assertEquals(3, loads.get());
+		cache.get("Person", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		assertEquals(3, loads.get());
+
+		shard.invalidate("Person");
+		cache.get("Person", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		shard.get("Person", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		cache.get("Other", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet())));
+		assertEquals(5, loads.get());
+	}
+
+	@Test
+	public void testLoadOverlappingWriteIsNotKept() {
+		ViewPreloadCache cache = new ViewPreloadCache(60000);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get("Person", "dql", null, () -> {
+			loads.incrementAndGet();
+			cache.invalidate("Person");
+			return Collections.emptyList();
+		});
+		assertTrue(cache.get("Person", "dql", null, () -> Arrays.asList(String.valueOf(loads.incrementAndGet()))).contains("2"));
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2022 Jesse Gallagher
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openntf.xsp.nosql.communication.driver.proton.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.openntf.xsp.nosql.communication.driver.DominoConstants;
+import org.openntf.xsp.nosql.communication.driver.proton.ProtonBulkOperationException;
+
+import com.hcl.domino.db.model.Database;
+
+import jakarta.nosql.document.Document;
+import jakarta.nosql.document.DocumentEntity;
+
+@SuppressWarnings("nls")
+public class WriteBehindQueueTest {
+	private static final String ENTITY_NAME = "Person";
+
+	/**
+	 * Records the entities written through it, assigning UNIDs to inserts.
+	 */
+	private static class RecordingWriter implements WriteBehindQueue.Writer {
+		private final List<DocumentEntity> inserted = Collections.synchronizedList(new ArrayList<>());
+		private final List<DocumentEntity> updated = Collections.synchronizedList(new ArrayList<>());
+		private final AtomicBoolean failNext = new AtomicBoolean();
+		private final AtomicInteger opened = new AtomicInteger();
+
+		@Override
+		public ProtonDocumentCollectionManager open(Database database, String token, ProtonEntityConverter entityConverter) {
+			opened.incrementAndGet();
+			if(failNext.getAndSet(false)) {
+				// Not a RuntimeException, which the queue used to let escape its flusher
+				throw new AssertionError("Open failed");
+			}
+			return new ProtonDocumentCollectionManager(() -> database, () -> token, new ProtonDriverOptions()) {
+				@Override
+				public Iterable<DocumentEntity> insert(Iterable<DocumentEntity> entities) {
+					for(DocumentEntity entity : entities) {
+						entity.add(Document.of(DominoConstants.FIELD_ID, String.format("%032X", inserted.size() + 1)));
+						inserted.add(entity);
+					}
+					return entities;
+				}
+
+				@Override
+				public Iterable<DocumentEntity> update(Iterable<DocumentEntity> entities) {
+					entities.forEach(updated::add);
+					return entities;
+				}
+			};
+		}
+	}
+
+	@Test
+	public void testInsertReceivesIdAfterFlush() {
+		RecordingWriter writer = new RecordingWriter();
+		try(WriteBehindQueue queue = newQueue(writer, 60000)) {
+			DocumentEntity entity = DocumentEntity.of(ENTITY_NAME);
+			entity.add(Document.of("Name", "first"));
+			queue.insert(null, null, null, null, entity);
+			// An update before the ID is known replaces the queued insert
+			entity.remove("Name");
+			entity.add(Document.of("Name", "second"));
+			queue.insert(null, null, null, null, entity);
+
+			queue.flush();
+
+			assertEquals(1, writer.inserted.size());
+			assertEquals("second", writer.inserted.get(0).find("Name").get().get(String.class));
+			String unid = entity.find(DominoConstants.FIELD_ID).map(doc -> doc.get(String.class)).orElse(null);
+			assertEquals(writer.inserted.get(0).find(DominoConstants.FIELD_ID).get().get(String.class), unid);
+
+			// Once the ID is known, inserting the entity again updates it
+			queue.insert(null, null, null, null, entity);
+			queue.flush();
+			assertEquals(1, writer.inserted.size());
+			assertEquals(1, writer.updated.size());
+		}
+	}
+
+	@Test
+	public void testWritesToSameDatabaseKeyAreBatched() {
+		RecordingWriter writer = new RecordingWriter();
+		Object databaseKey = new Object();
+		try(WriteBehindQueue queue = newQueue(writer, 60000)) {
+			// Each request resolves its own Database for the same file
+			for(int i = 0; i < 3; i++) {
+				queue.insert(databaseKey, mock(Database.class), "token", null, DocumentEntity.of(ENTITY_NAME));
+			}
+			queue.flush();
+
+			assertEquals(3, writer.inserted.size());
+			assertEquals(1, writer.opened.get());
+		}
+	}
+
+	@Test
+	public void testFlusherSurvivesErrors() throws InterruptedException {
+		RecordingWriter writer = new RecordingWriter();
+		try(WriteBehindQueue queue = newQueue(writer, 10)) {
+			writer.failNext.set(true);
+			DocumentEntity failed = DocumentEntity.of(ENTITY_NAME);
+			queue.insert(null, null, null, null, failed);
+			waitFor(() -> !writer.failNext.get());
+
+			DocumentEntity written = DocumentEntity.of(ENTITY_NAME);
+			queue.insert(null, null, null, null, written);
+			waitFor(() -> written.find(DominoConstants.FIELD_ID).isPresent());
+
+			ProtonBulkOperationException e = assertThrows(ProtonBulkOperationException.class, queue::flush);
+			assertEquals(1, e.getFailures().size());
+			assertTrue(e.getFailures().get(0).getCause() instanceof AssertionError);
+			assertFalse(failed.find(DominoConstants.FIELD_ID).isPresent());
+		}
+	}
+
+	// *******************************************************************************
+	// * Internal utility methods
+	// *******************************************************************************
+
+	private static WriteBehindQueue newQueue(WriteBehindQueue.Writer writer, long flushInterval) {
+		ProtonDriverOptions options = new ProtonDriverOptions();
+		options.addWriteBehindType(ENTITY_NAME);
+		options.setWriteBehindFlushInterval(flushInterval);
+		return new WriteBehindQueue(options, writer);
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "Condition not met in time");
+			TimeUnit.MILLISECONDS.sleep(5);
+		}
+	}
+}